@@ -0,0 +1,60 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import x2java.*;
+
+/** Measures Binder.buildHandlerChain() against a varying number of
+ *  bindings, either all on the bare event type or each filtered on a
+ *  distinct property value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinderBenchmark {
+    @Param({ "1", "16", "256" })
+    public int bindings;
+
+    @Param({ "false", "true" })
+    public boolean filtered;
+
+    private Binder binder;
+    private Event.Equivalent equivalent;
+    private List<Handler> handlers;
+    private SmallEvent e;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        binder = new Binder();
+        equivalent = new Event.Equivalent();
+        handlers = new ArrayList<Handler>();
+        for (int i = 0; i < bindings; ++i) {
+            SmallEvent key = new SmallEvent();
+            if (filtered) {
+                key.setId(i);
+            }
+            binder.bind(key, new Handler() {
+                public void invoke(Event e) { }
+            });
+        }
+        e = new SmallEvent().setId(bindings / 2).setX(1.0f).setY(2.0f);
+    }
+
+    @Benchmark
+    public int buildHandlerChain(Blackhole blackhole) {
+        handlers.clear();
+        int n = binder.buildHandlerChain(e, equivalent, handlers);
+        blackhole.consume(handlers);
+        return n;
+    }
+}
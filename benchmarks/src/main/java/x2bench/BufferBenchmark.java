@@ -0,0 +1,49 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import x2java.*;
+
+/** Measures Buffer growing over blocks as it is written, and trimming the
+ *  consumed blocks back to the pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BufferBenchmark {
+    @Param({ "64", "4096", "65536" })
+    public int length;
+
+    private byte[] chunk;
+    private Buffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chunk = new byte[256];
+        buffer = new Buffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        buffer.close();
+    }
+
+    @Benchmark
+    public int growAndTrim() {
+        for (int n = 0; n < length; n += chunk.length) {
+            buffer.put(chunk, 0, Math.min(chunk.length, length - n));
+        }
+        int result = buffer.length();
+        // All consumed, as the position is left at the end.
+        buffer.trim();
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import x2java.util.*;
+
+/** Measures ByteBufferPool acquire/release pairs under contention. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ByteBufferPoolBenchmark {
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer acquireRelease1() {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteBuffer acquireRelease4() {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ByteBuffer acquireRelease16() {
+        return acquireRelease();
+    }
+
+    private static ByteBuffer acquireRelease() {
+        ByteBuffer byteBuffer = ByteBufferPool.acquire();
+        ByteBufferPool.release(byteBuffer);
+        return byteBuffer;
+    }
+}
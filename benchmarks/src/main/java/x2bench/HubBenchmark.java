@@ -0,0 +1,78 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import x2java.*;
+import x2java.flows.*;
+
+/** Measures the sustained throughput of Hub.post() into a SingleThreadFlow
+ *  dispatching to a single handler, with 1 to 4 producer threads. The flow
+ *  queue is bounded with the Block policy, so that the producers are held
+ *  back to the dispatch rate instead of filling up the heap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HubBenchmark {
+    @Param({ "1024", "65536" })
+    public int capacity;
+
+    private SingleThreadFlow flow;
+    // Touched only by the flow thread
+    private long dispatched;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        flow = new SingleThreadFlow("HubBenchmark");
+        flow.capacity(capacity);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new SmallEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        ++dispatched;
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        Hub.shutdown();
+        Hub.instance().detach(flow);
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        final SmallEvent e = new SmallEvent().setId(1).setX(1.0f).setY(2.0f);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void post1(Producer producer) {
+        Hub.post(producer.e);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void post2(Producer producer) {
+        Hub.post(producer.e);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void post4(Producer producer) {
+        Hub.post(producer.e);
+    }
+}
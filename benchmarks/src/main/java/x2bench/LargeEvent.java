@@ -0,0 +1,287 @@
+// auto-generated by x2java xpiler
+
+package x2bench;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class LargeEvent extends Event {
+    protected static Tag tag;
+
+    private int id_;
+    private long timestamp_;
+    private double value_;
+    private boolean flag_;
+    private String name_;
+    private byte[] payload_;
+
+    public int getId() {
+        return id_;
+    }
+    public LargeEvent setId(int value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        id_ = value;
+        return this;
+    }
+
+    public long getTimestamp() {
+        return timestamp_;
+    }
+    public LargeEvent setTimestamp(long value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        timestamp_ = value;
+        return this;
+    }
+
+    public double getValue() {
+        return value_;
+    }
+    public LargeEvent setValue(double value) {
+        fingerprint.touch(tag.getOffset() + 2);
+        value_ = value;
+        return this;
+    }
+
+    public boolean getFlag() {
+        return flag_;
+    }
+    public LargeEvent setFlag(boolean value) {
+        fingerprint.touch(tag.getOffset() + 3);
+        flag_ = value;
+        return this;
+    }
+
+    public String getName() {
+        return name_;
+    }
+    public LargeEvent setName(String value) {
+        fingerprint.touch(tag.getOffset() + 4);
+        name_ = value;
+        return this;
+    }
+
+    public byte[] getPayload() {
+        return payload_;
+    }
+    public LargeEvent setPayload(byte[] value) {
+        fingerprint.touch(tag.getOffset() + 5);
+        payload_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, LargeEvent.class, 6, 1002);
+    }
+
+    public LargeEvent() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected LargeEvent(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        id_ = 0;
+        timestamp_ = 0;
+        value_ = .0;
+        flag_ = false;
+        name_ = "";
+        payload_ = null;
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        LargeEvent o = (LargeEvent)other;
+        if (id_ != o.id_) {
+            return false;
+        }
+        if (timestamp_ != o.timestamp_) {
+            return false;
+        }
+        if (value_ != o.value_) {
+            return false;
+        }
+        if (flag_ != o.flag_) {
+            return false;
+        }
+        if (!Objects.equals(name_, o.name_)) {
+            return false;
+        }
+        if (!Arrays.equals(payload_, o.payload_)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(id_);
+        }
+        if (touched.get(1)) {
+            hash.update(timestamp_);
+        }
+        if (touched.get(2)) {
+            hash.update(value_);
+        }
+        if (touched.get(3)) {
+            hash.update(flag_);
+        }
+        if (touched.get(4)) {
+            hash.update(name_);
+        }
+        if (touched.get(5)) {
+            hash.update(payload_);
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        LargeEvent o = (LargeEvent)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (id_ != o.id_) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (timestamp_ != o.timestamp_) {
+                return false;
+            }
+        }
+        if (touched.get(2)) {
+            if (value_ != o.value_) {
+                return false;
+            }
+        }
+        if (touched.get(3)) {
+            if (flag_ != o.flag_) {
+                return false;
+            }
+        }
+        if (touched.get(4)) {
+            if (!Objects.equals(name_, o.name_)) {
+                return false;
+            }
+        }
+        if (touched.get(5)) {
+            if (!Arrays.equals(payload_, o.payload_)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" Id: ");
+        sb.append(id_);
+        sb.append(", Timestamp: ");
+        sb.append(timestamp_);
+        sb.append(", Value: ");
+        sb.append(value_);
+        sb.append(", Flag: ");
+        sb.append(flag_);
+        sb.append(", Name: ");
+        sb.append(name_);
+        sb.append(", Payload: ");
+        sb.append(payload_);
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            id_ = deserializer.readInt();
+        }
+        if (touched.get(1)) {
+            timestamp_ = deserializer.readLong();
+        }
+        if (touched.get(2)) {
+            value_ = deserializer.readDouble();
+        }
+        if (touched.get(3)) {
+            flag_ = deserializer.readBoolean();
+        }
+        if (touched.get(4)) {
+            name_ = deserializer.readString();
+        }
+        if (touched.get(5)) {
+            payload_ = deserializer.readBytes();
+        }
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthInt(id_);
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthLong(timestamp_);
+        }
+        if (touched.get(2)) {
+            length += Serializer.lengthDouble(value_);
+        }
+        if (touched.get(3)) {
+            length += Serializer.lengthBoolean(flag_);
+        }
+        if (touched.get(4)) {
+            length += Serializer.lengthString(name_);
+        }
+        if (touched.get(5)) {
+            length += Serializer.lengthBytes(payload_);
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeInt(id_);
+        }
+        if (touched.get(1)) {
+            serializer.writeLong(timestamp_);
+        }
+        if (touched.get(2)) {
+            serializer.writeDouble(value_);
+        }
+        if (touched.get(3)) {
+            serializer.writeBoolean(flag_);
+        }
+        if (touched.get(4)) {
+            serializer.writeString(name_);
+        }
+        if (touched.get(5)) {
+            serializer.writeBytes(payload_);
+        }
+    }
+}
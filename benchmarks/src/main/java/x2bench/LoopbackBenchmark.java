@@ -0,0 +1,263 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.links.socket.*;
+import x2java.metrics.*;
+
+/** End-to-end load generator over TCP loopback.
+ *  <p>
+ *  Starts a TcpServer echoing every request back as its response, and N
+ *  TcpClients each sending requests of the given payload size at a fixed
+ *  rate. Round-trip latencies are measured from the time each request was
+ *  scheduled to be sent rather than from the time it was actually sent, so
+ *  that a stalled sender does not hide the queuing delay it causes
+ *  (coordinated omission). A rate of 0 sends as fast as possible with up to
+ *  the given number of outstanding requests per client, measuring from the
+ *  actual send times.
+ *  <p>
+ *  Usage: LoopbackBenchmark [-c clients] [-s payload bytes]
+ *      [-r requests per second per client] [-o outstanding requests]
+ *      [-d seconds] [-w warmup seconds] [-p port]
+ */
+public class LoopbackBenchmark {
+    private int clients = 4;
+    private int size = 64;
+    private int rate = 10000;
+    private int outstanding = 1000;
+    private int duration = 10;
+    private int warmup = 3;
+    private int port = 17000;
+
+    // Set once the warmup period is over
+    private volatile boolean measuring;
+
+    private final Histogram latencies = new Histogram();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoopbackBenchmark benchmark = new LoopbackBenchmark();
+        if (!benchmark.parse(args)) {
+            System.err.println("usage: LoopbackBenchmark [-c clients] " +
+                "[-s payload bytes] [-r requests/s per client] " +
+                "[-o outstanding requests] " +
+                "[-d seconds] [-w warmup seconds] [-p port]");
+            System.exit(2);
+        }
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private boolean parse(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                int value = Integer.parseInt(args[i + 1]);
+                if (value < 0) {
+                    return false;
+                }
+                if (args[i].equals("-c")) {
+                    clients = value;
+                }
+                else if (args[i].equals("-s")) {
+                    size = value;
+                }
+                else if (args[i].equals("-r")) {
+                    rate = value;
+                }
+                else if (args[i].equals("-o")) {
+                    outstanding = value;
+                }
+                else if (args[i].equals("-d")) {
+                    duration = value;
+                }
+                else if (args[i].equals("-w")) {
+                    warmup = value;
+                }
+                else if (args[i].equals("-p")) {
+                    port = value;
+                }
+                else {
+                    return false;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            return false;
+        }
+        return (clients > 0 && duration > 0 && outstanding > 0);
+    }
+
+    private void run() throws Exception {
+        EventFactory.register(LargeEvent.class);
+
+        final TcpServer server = new TcpServer("LoopbackServer");
+        SingleThreadFlow serverFlow = new SingleThreadFlow("LoopbackServerFlow");
+        serverFlow.add(server);
+        serverFlow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new LargeEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        server.respond(e, e);
+                    }
+                });
+            }
+        });
+
+        SingleThreadFlow clientFlow = new SingleThreadFlow("LoopbackClientFlow");
+        List<TcpClient> links = new ArrayList<TcpClient>();
+        for (int i = 0; i < clients; ++i) {
+            TcpClient client = new TcpClient("LoopbackClient" + i);
+            clientFlow.add(client);
+            links.add(client);
+        }
+
+        Hub.instance().attach(serverFlow).attach(clientFlow);
+        Hub.startup();
+        try {
+            server.listen(port);
+            // The server binds on its own thread.
+            Thread.sleep(200);
+            for (int i = 0; i < clients; ++i) {
+                links.get(i).connect("127.0.0.1", port);
+            }
+            for (int i = 0; i < clients; ++i) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (links.get(i).session() == null) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IllegalStateException("connection timed out");
+                    }
+                    Thread.sleep(10);
+                }
+            }
+
+            System.out.printf("%d client(s), %d-byte payload, %s, %ds (+%ds warmup)%n",
+                clients, size,
+                (rate > 0 ? rate + " req/s per client" : "unpaced"),
+                duration, warmup);
+
+            long start = System.nanoTime();
+            long measureStart = start + TimeUnit.SECONDS.toNanos(warmup);
+            long end = measureStart + TimeUnit.SECONDS.toNanos(duration);
+
+            List<Thread> senders = new ArrayList<Thread>();
+            for (int i = 0; i < clients; ++i) {
+                Thread thread = new Thread(new Sender(links.get(i), i, start, end));
+                thread.setName("LoopbackSender" + i);
+                thread.start();
+                senders.add(thread);
+            }
+
+            LockSupport.parkNanos(measureStart - System.nanoTime());
+            measuring = true;
+            for (int i = 0; i < senders.size(); ++i) {
+                senders.get(i).join();
+            }
+            // Let the last responses arrive.
+            Thread.sleep(1000);
+            measuring = false;
+
+            report(server.metrics());
+        }
+        finally {
+            Hub.shutdown();
+        }
+    }
+
+    private void report(LinkMetrics metrics) {
+        double seconds = duration;
+        long n = received.get();
+        System.out.printf("sent %d, received %d, failed %d%n",
+            sent.get(), n, failed.get());
+        System.out.printf("throughput %.0f req/s, %.1f MB/s payload%n",
+            n / seconds, (n * (double)size) / seconds / (1024 * 1024));
+        System.out.printf("latency (us) p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+            latencies.percentile(50.0) / 1e3,
+            latencies.percentile(99.0) / 1e3,
+            latencies.percentile(99.9) / 1e3,
+            latencies.max() / 1e3);
+        System.out.printf("server batches %d, avg %.2f events/batch, " +
+            "partial writes %d%n",
+            metrics.getSendBatches(), metrics.averageBatchSize(),
+            metrics.getPartialWrites());
+    }
+
+    // Sends requests through a client link on schedule.
+    private final class Sender implements Runnable {
+        private final TcpClient client;
+        private final int id;
+        private final long start;
+        private final long end;
+
+        Sender(TcpClient client, int id, long start, long end) {
+            this.client = client;
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        public void run() {
+            byte[] payload = new byte[size];
+            long interval = (rate > 0 ? 1000000000L / rate : 0);
+            final Semaphore window = (interval > 0 ? null : new Semaphore(outstanding));
+            long scheduled = start;
+            while (true) {
+                long now = System.nanoTime();
+                if (interval > 0) {
+                    if (now < scheduled) {
+                        LockSupport.parkNanos(scheduled - now);
+                        continue;
+                    }
+                }
+                else {
+                    window.acquireUninterruptibly();
+                    scheduled = System.nanoTime();
+                }
+                if (scheduled >= end) {
+                    break;
+                }
+
+                final long intended = scheduled;
+                final boolean counted = measuring;
+                LargeEvent request = new LargeEvent()
+                    .setId(id)
+                    .setTimestamp(intended)
+                    .setPayload(payload);
+                CompletableFuture<Event> future = client.send(request, 10000);
+                if (counted) {
+                    sent.incrementAndGet();
+                }
+                future.whenComplete(new BiConsumer<Event, Throwable>() {
+                    public void accept(Event response, Throwable error) {
+                        if (window != null) {
+                            window.release();
+                        }
+                        if (!counted || !measuring) {
+                            return;
+                        }
+                        if (error != null) {
+                            failed.incrementAndGet();
+                            return;
+                        }
+                        latencies.record(System.nanoTime() - intended);
+                        received.incrementAndGet();
+                    }
+                });
+                scheduled += interval;
+            }
+        }
+    }
+}
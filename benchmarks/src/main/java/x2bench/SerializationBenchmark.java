@@ -0,0 +1,68 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import x2java.*;
+
+/** Measures the serialization and the round trip of generated events. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    @Param({ "small", "large" })
+    public String type;
+
+    private Event e;
+    private Buffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        EventFactory.register(SmallEvent.class);
+        EventFactory.register(LargeEvent.class);
+        if (type.equals("small")) {
+            e = new SmallEvent().setId(1).setX(1.0f).setY(2.0f);
+        }
+        else {
+            e = new LargeEvent()
+                .setId(1)
+                .setTimestamp(System.currentTimeMillis())
+                .setValue(3.14)
+                .setFlag(true)
+                .setName("benchmark")
+                .setPayload(new byte[256]);
+        }
+        buffer = new Buffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        buffer.close();
+    }
+
+    @Benchmark
+    public int serialize() {
+        buffer.reset();
+        e.serialize(new Serializer(buffer));
+        return buffer.length();
+    }
+
+    @Benchmark
+    public Event roundTrip() throws IOException {
+        buffer.reset();
+        e.serialize(new Serializer(buffer));
+        buffer.rewind();
+        Deserializer deserializer = new Deserializer(buffer);
+        Event retrieved = deserializer.create();
+        retrieved.deserialize(deserializer);
+        return retrieved;
+    }
+}
@@ -0,0 +1,188 @@
+// auto-generated by x2java xpiler
+
+package x2bench;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class SmallEvent extends Event {
+    protected static Tag tag;
+
+    private int id_;
+    private float x_;
+    private float y_;
+
+    public int getId() {
+        return id_;
+    }
+    public SmallEvent setId(int value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        id_ = value;
+        return this;
+    }
+
+    public float getX() {
+        return x_;
+    }
+    public SmallEvent setX(float value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        x_ = value;
+        return this;
+    }
+
+    public float getY() {
+        return y_;
+    }
+    public SmallEvent setY(float value) {
+        fingerprint.touch(tag.getOffset() + 2);
+        y_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, SmallEvent.class, 3, 1001);
+    }
+
+    public SmallEvent() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected SmallEvent(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        id_ = 0;
+        x_ = .0f;
+        y_ = .0f;
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        SmallEvent o = (SmallEvent)other;
+        if (id_ != o.id_) {
+            return false;
+        }
+        if (x_ != o.x_) {
+            return false;
+        }
+        if (y_ != o.y_) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(id_);
+        }
+        if (touched.get(1)) {
+            hash.update(x_);
+        }
+        if (touched.get(2)) {
+            hash.update(y_);
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        SmallEvent o = (SmallEvent)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (id_ != o.id_) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (x_ != o.x_) {
+                return false;
+            }
+        }
+        if (touched.get(2)) {
+            if (y_ != o.y_) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" Id: ");
+        sb.append(id_);
+        sb.append(", X: ");
+        sb.append(x_);
+        sb.append(", Y: ");
+        sb.append(y_);
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            id_ = deserializer.readInt();
+        }
+        if (touched.get(1)) {
+            x_ = deserializer.readFloat();
+        }
+        if (touched.get(2)) {
+            y_ = deserializer.readFloat();
+        }
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthInt(id_);
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthFloat(x_);
+        }
+        if (touched.get(2)) {
+            length += Serializer.lengthFloat(y_);
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeInt(id_);
+        }
+        if (touched.get(1)) {
+            serializer.writeFloat(x_);
+        }
+        if (touched.get(2)) {
+            serializer.writeFloat(y_);
+        }
+    }
+}
@@ -46,7 +46,7 @@ public class HelloReq extends Event {
             return false;
         }
         HelloReq o = (HelloReq)other;
-        if (name_ != o.name_) {
+        if (!Objects.equals(name_, o.name_)) {
             return false;
         }
         return true;
@@ -70,7 +70,7 @@ public class HelloReq extends Event {
         HelloReq o = (HelloReq)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (name_ != o.name_) {
+            if (!Objects.equals(name_, o.name_)) {
                 return false;
             }
         }
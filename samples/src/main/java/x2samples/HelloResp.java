@@ -46,7 +46,7 @@ public class HelloResp extends Event {
             return false;
         }
         HelloResp o = (HelloResp)other;
-        if (greeting_ != o.greeting_) {
+        if (!Objects.equals(greeting_, o.greeting_)) {
             return false;
         }
         return true;
@@ -70,7 +70,7 @@ public class HelloResp extends Event {
         HelloResp o = (HelloResp)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (greeting_ != o.greeting_) {
+            if (!Objects.equals(greeting_, o.greeting_)) {
                 return false;
             }
         }
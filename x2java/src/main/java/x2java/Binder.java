@@ -108,6 +108,36 @@ public class Binder {
         }
     }
 
+    /** Removes all the bindings of the specified handler, returning the
+     *  number of them.
+     */
+    public int unbind(Handler handler) {
+        Lock wlock = rwlock.writeLock();
+        wlock.lock();
+        try {
+            int count = 0;
+            Iterator<Map.Entry<Event, HandlerSet>> it =
+                handlerMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Event, HandlerSet> entry = it.next();
+                HandlerSet handlers = entry.getValue();
+                if (!handlers.remove(handler)) {
+                    continue;
+                }
+                if (handlers.size() == 0) {
+                    it.remove();
+                }
+                Event e = entry.getKey();
+                filter.remove(e._getTypeId(), e._getFingerprint());
+                ++count;
+            }
+            return count;
+        }
+        finally {
+            wlock.unlock();
+        }
+    }
+
     // Static nested classes
 
     public static class Token {
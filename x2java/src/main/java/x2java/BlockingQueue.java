@@ -3,16 +3,144 @@
 
 package x2java;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
 import java.util.LinkedList;
 
+/** Blocking queue made up of one or more FIFO lanes, which drain in the
+ *  order of their indexes. The methods without a lane argument work on
+ *  lane 0.
+ *  <p>
+ *  With timestamps enabled, the queue records the System.nanoTime() at
+ *  which each item is enqueued, and the consumer can look up the times of
+ *  the items it has just taken out with enqueueTime().
+ */
 public class BlockingQueue<T> {
-    private Queue<T> queue;
+    private Queue<T>[] lanes;
+    // Enqueue times parallel to the lanes, null unless timestamps enabled
+    private TimeLane[] times;
+    // Enqueue times of the items taken out by the last dequeue call
+    private long[] dequeuedTimes = new long[0];
+    // Maximum number of items taken out of each lane at once, 0 for all
+    private int[] weights;
+    private int size;
+    private int maxSize;
     private boolean closing;
 
+    private int capacity;
+    private int waitingProducers;
+
+    // Monitor shared by the consumer and the producers
+    private final Object syncRoot = new Object();
+
     public BlockingQueue() {
-        queue = new LinkedList<T>();
+        this(1);
+    }
+
+    /** Constructs a new queue with the specified number of lanes. */
+    @SuppressWarnings("unchecked")
+    public BlockingQueue(int numLanes) {
+        if (numLanes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        lanes = new Queue[numLanes];
+        for (int i = 0; i < numLanes; ++i) {
+            lanes[i] = new LinkedList<T>();
+        }
+        weights = new int[numLanes];
+    }
+
+    /** Gets the number of lanes. */
+    public int lanes() {
+        return lanes.length;
+    }
+
+    /** Sets the maximum number of items that a single dequeue(List) call
+     *  takes out of the specified lane, or 0 for no limit. Limiting the bulk
+     *  lanes bounds how long an item in a preceding lane may wait.
+     */
+    public void weight(int lane, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (syncRoot) {
+            weights[lane] = value;
+        }
+    }
+
+    /** Enables or disables recording the enqueue times of the items. The
+     *  items already queued when enabled are taken out with 0 as their
+     *  enqueue times.
+     */
+    public void timestamps(boolean enabled) {
+        synchronized (syncRoot) {
+            if (enabled && times == null) {
+                times = new TimeLane[lanes.length];
+                for (int i = 0; i < lanes.length; ++i) {
+                    times[i] = new TimeLane();
+                    for (int j = 0, n = lanes[i].size(); j < n; ++j) {
+                        times[i].offer(0);
+                    }
+                }
+            }
+            else if (!enabled) {
+                times = null;
+            }
+        }
+    }
+
+    /** Gets the enqueue time of the item at the specified index among those
+     *  taken out by the last dequeue call, or 0 if unknown. Only to be called
+     *  by the consumer thread.
+     */
+    public long enqueueTime(int index) {
+        return (index < dequeuedTimes.length ? dequeuedTimes[index] : 0);
+    }
+
+    /** Gets the capacity observed by the bounded enqueue operations. */
+    public int capacity() {
+        synchronized (syncRoot) {
+            return capacity;
+        }
+    }
+
+    /** Sets the capacity observed by the bounded enqueue operations, or 0
+     *  for no limit. The plain enqueue() ignores it.
+     */
+    public void capacity(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        synchronized (syncRoot) {
+            capacity = value;
+            if (waitingProducers != 0) {
+                syncRoot.notifyAll();
+            }
+        }
+    }
+
+    /** Gets the number of the queued items. */
+    public int size() {
+        synchronized (syncRoot) {
+            return size;
+        }
+    }
+
+    /** Gets the maximum number of the items queued at once since the last
+     *  resetMaxSize() call.
+     */
+    public int maxSize() {
+        synchronized (syncRoot) {
+            return maxSize;
+        }
+    }
+
+    /** Resets the maximum size to the current size. */
+    public void resetMaxSize() {
+        synchronized (syncRoot) {
+            maxSize = size;
+        }
     }
 
     public void close() {
@@ -20,85 +148,271 @@ public class BlockingQueue<T> {
     }
 
     public void close(T finalItem) {
-        synchronized (queue) {
+        synchronized (syncRoot) {
             if (finalItem != null) {
-                queue.offer(finalItem);
+                lanes[lanes.length - 1].offer(finalItem);
+                if (times != null) {
+                    times[lanes.length - 1].offer(System.nanoTime());
+                }
+                ++size;
             }
             closing = true;
-            queue.notifyAll();
+            syncRoot.notifyAll();
         }
     }
 
     public T dequeue() {
-        synchronized (queue) {
-            while (queue.size() == 0) {
+        synchronized (syncRoot) {
+            while (size == 0) {
                 if (closing) {
                     return null;
                 }
                 try {
-                    queue.wait();
+                    syncRoot.wait();
                 }
                 catch (InterruptedException ie) {
                     return null;
                 }
             }
-            return queue.poll();
+            return poll();
         }
     }
 
     public int dequeue(List<T> values) {
-        synchronized (queue) {
-            while (queue.size() == 0) {
+        synchronized (syncRoot) {
+            while (size == 0) {
                 if (closing) {
                     return 0;
                 }
                 try {
-                    queue.wait();
+                    syncRoot.wait();
                 }
                 catch (InterruptedException ie) {
                     return 0;
                 }
             }
-            int n = 0;
-            while (queue.size() != 0) {
-                values.add(queue.poll());
-                ++n;
-            }
-            return n;
+            return drain(values);
         }
     }
 
     public void enqueue(T item) {
-        synchronized (queue) {
+        enqueue(item, 0);
+    }
+
+    public void enqueue(T item, int lane) {
+        synchronized (syncRoot) {
             if (!closing) {
-                queue.offer(item);
-                if (queue.size() == 1) {
-                    queue.notify();
+                add(item, lane);
+            }
+        }
+    }
+
+    /** Enqueues the specified item unless the queue is full, returning false
+     *  if it is not enqueued.
+     */
+    public boolean offer(T item) {
+        return offer(item, 0);
+    }
+
+    public boolean offer(T item, int lane) {
+        synchronized (syncRoot) {
+            if (closing || isFull()) {
+                return false;
+            }
+            add(item, lane);
+            return true;
+        }
+    }
+
+    /** Enqueues the specified item, evicting the oldest item of the last
+     *  non-empty lane if the queue is full. Returns the evicted item, or null
+     *  if none.
+     */
+    public T offerEvicting(T item) {
+        return offerEvicting(item, 0);
+    }
+
+    public T offerEvicting(T item, int lane) {
+        synchronized (syncRoot) {
+            if (closing) {
+                return item;
+            }
+            T evicted = null;
+            if (isFull()) {
+                for (int i = lanes.length - 1; i >= 0; --i) {
+                    if (lanes[i].size() != 0) {
+                        evicted = lanes[i].poll();
+                        if (times != null) {
+                            times[i].poll();
+                        }
+                        --size;
+                        break;
+                    }
                 }
             }
+            add(item, lane);
+            return evicted;
+        }
+    }
+
+    /** Enqueues the specified item, waiting while the queue is full. Returns
+     *  false if the queue is closed before the item is enqueued.
+     */
+    public boolean put(T item) {
+        return put(item, 0);
+    }
+
+    public boolean put(T item, int lane) {
+        synchronized (syncRoot) {
+            ++waitingProducers;
+            try {
+                while (!closing && isFull()) {
+                    try {
+                        syncRoot.wait();
+                    }
+                    catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            finally {
+                --waitingProducers;
+            }
+            if (closing) {
+                return false;
+            }
+            add(item, lane);
+            return true;
         }
     }
 
     public T tryDequeue() {
-        synchronized (queue) {
-            if (queue.size() == 0) {
+        synchronized (syncRoot) {
+            if (size == 0) {
                 return null;
             }
-            return queue.poll();
+            return poll();
         }
     }
 
     public int tryDequeue(List<T> values) {
-        synchronized (queue) {
-            if (queue.size() == 0) {
+        synchronized (syncRoot) {
+            if (size == 0) {
                 return 0;
             }
-            int n = 0;
-            while (queue.size() != 0) {
-                values.add(queue.poll());
-                ++n;
+            return drain(values);
+        }
+    }
+
+    // Appends the specified item and wakes up the consumer.
+    private void add(T item, int lane) {
+        lanes[lane].offer(item);
+        if (times != null) {
+            times[lane].offer(System.nanoTime());
+        }
+        if (++size > maxSize) {
+            maxSize = size;
+        }
+        if (size == 1) {
+            if (waitingProducers != 0) {
+                // Producers wait on the same monitor.
+                syncRoot.notifyAll();
+            }
+            else {
+                syncRoot.notify();
             }
-            return n;
+        }
+    }
+
+    // Takes out the first item of the first non-empty lane.
+    private T poll() {
+        T item = null;
+        for (int i = 0; i < lanes.length; ++i) {
+            if (lanes[i].size() != 0) {
+                item = lanes[i].poll();
+                if (times != null) {
+                    ensureDequeuedTimes(1);
+                    dequeuedTimes[0] = times[i].poll();
+                }
+                else if (dequeuedTimes.length != 0) {
+                    dequeuedTimes = new long[0];
+                }
+                --size;
+                break;
+            }
+        }
+        if (waitingProducers != 0) {
+            syncRoot.notifyAll();
+        }
+        return item;
+    }
+
+    // Takes out items lane by lane, up to the weight of each lane.
+    private int drain(List<T> values) {
+        if (times == null && dequeuedTimes.length != 0) {
+            dequeuedTimes = new long[0];
+        }
+        int n = 0;
+        for (int i = 0; i < lanes.length; ++i) {
+            Queue<T> lane = lanes[i];
+            int count = lane.size();
+            if (weights[i] != 0 && count > weights[i]) {
+                count = weights[i];
+            }
+            if (times != null) {
+                ensureDequeuedTimes(n + count);
+            }
+            for (int j = 0; j < count; ++j) {
+                values.add(lane.poll());
+                if (times != null) {
+                    dequeuedTimes[n + j] = times[i].poll();
+                }
+            }
+            n += count;
+        }
+        size -= n;
+        if (waitingProducers != 0) {
+            syncRoot.notifyAll();
+        }
+        return n;
+    }
+
+    private boolean isFull() {
+        return (capacity != 0 && size >= capacity);
+    }
+
+    // Makes room for the specified number of dequeued item times.
+    private void ensureDequeuedTimes(int length) {
+        if (dequeuedTimes.length < length) {
+            dequeuedTimes = Arrays.copyOf(dequeuedTimes,
+                Math.max(length, dequeuedTimes.length << 1));
+        }
+    }
+
+    // Growable FIFO ring of long values
+    private static final class TimeLane {
+        private long[] values = new long[16];
+        private int head;
+        private int count;
+
+        void offer(long value) {
+            if (count == values.length) {
+                long[] grown = new long[values.length << 1];
+                for (int i = 0; i < count; ++i) {
+                    grown[i] = values[(head + i) & (values.length - 1)];
+                }
+                values = grown;
+                head = 0;
+            }
+            values[(head + count++) & (values.length - 1)] = value;
+        }
+
+        long poll() {
+            long value = values[head];
+            head = (head + 1) & (values.length - 1);
+            --count;
+            return value;
         }
     }
 }
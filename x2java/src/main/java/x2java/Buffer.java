@@ -6,6 +6,7 @@ package x2java;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import x2java.util.*;
 
@@ -18,6 +19,9 @@ public class Buffer {
     public static final int REMAINDER_MASK = ~(~0 << SIZE_EXPONENT);
     public static final int BLOCK_SIZE = (1 << SIZE_EXPONENT);
 
+    private static final ByteBuffer EMPTY_BLOCK =
+        ByteBuffer.allocate(0).asReadOnlyBuffer();
+
     private List<ByteBuffer> blocks;
 
     private ByteBuffer current;
@@ -29,6 +33,16 @@ public class Buffer {
 
     private int marker;
 
+    // Whether the blocks are acquired from the pool, not wrapping an array
+    private boolean pooled;
+    // Whether the blocks are the read-only views of a slice, which may only
+    // be read by absolute index
+    private boolean sliceView;
+
+    // Blocks also referenced by outstanding slices, with their reference
+    // counts including the one held by this buffer
+    private IdentityHashMap<ByteBuffer, AtomicInteger> shared;
+
     /** Constructs a new buffer object with a single initial block. */
     public Buffer() {
         blocks = new ArrayList<ByteBuffer>();
@@ -41,6 +55,84 @@ public class Buffer {
         back = 0;
         front = 0;
 
+        marker = -1;
+        pooled = true;
+    }
+
+    /** Constructs a new read-only buffer object wrapping the specified byte
+     *  array without copying.
+     */
+    public Buffer(byte[] array) {
+        blocks = new ArrayList<ByteBuffer>();
+        int offset = 0;
+        do {
+            int length = Math.min(BLOCK_SIZE, array.length - offset);
+            blocks.add(ByteBuffer.wrap(array, offset, length).slice());
+            offset += BLOCK_SIZE;
+        } while (offset < array.length);
+
+        currentIndex = 0;
+        current = blocks.get(currentIndex);
+
+        position = 0;
+        back = array.length;
+        front = 0;
+
+        marker = -1;
+        pooled = false;
+    }
+
+    /** Constructs a new read-only buffer object on the bytes of the specified
+     *  slice without copying. The new buffer must not be used after the slice
+     *  is released.
+     */
+    public Buffer(Slice slice) {
+        blocks = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < slice.blocks.length; ++i) {
+            ByteBuffer block = slice.blocks[i].duplicate();
+            block.clear();
+            blocks.add(block);
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(ByteBuffer.allocate(0));
+        }
+
+        currentIndex = 0;
+        current = blocks.get(currentIndex);
+
+        front = slice.offset;
+        back = front + slice.length;
+        position = front;
+
+        marker = -1;
+        pooled = false;
+    }
+
+    /** Re-points this read-only buffer at the bytes of the specified slice
+     *  without copying or allocating, so that a single buffer can be reused
+     *  to read many slices. The buffer must not be used after the slice is
+     *  released, and only its reading methods may be used.
+     */
+    public void wrap(Slice slice) {
+        if (pooled) {
+            throw new UnsupportedOperationException("pooled buffer");
+        }
+        blocks.clear();
+        for (int i = 0; i < slice.views.length; ++i) {
+            blocks.add(slice.views[i]);
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(EMPTY_BLOCK);
+        }
+        sliceView = true;
+
+        currentIndex = 0;
+        current = blocks.get(currentIndex);
+
+        front = slice.offset;
+        back = front + slice.length;
+        position = front;
+
         marker = -1;
     }
 
@@ -64,7 +156,7 @@ public class Buffer {
         }
         for (int i = 0, size = blocks.size(); i < size; ++i)
         {
-            ByteBufferPool.release(blocks.get(i));
+            release(blocks.get(i));
         }
         blocks.clear();
         current = null;
@@ -79,6 +171,7 @@ public class Buffer {
             bytesToCopy = Math.min(BLOCK_SIZE - dstOffset, length - bytesCopied);
             ByteBuffer block = blocks.get(blockIndex++);
 
+            block.limit(block.capacity());
             block.position(dstOffset);
             block.put(buffer, offset + bytesCopied, bytesToCopy);
 
@@ -89,6 +182,14 @@ public class Buffer {
     }
 
     private void copyTo(byte[] buffer, int offset, int length, int position) {
+        if (sliceView) {
+            // The slice views are shared, so leave their positions alone.
+            for (int i = 0; i < length; ++i, ++position) {
+                buffer[offset + i] = blocks.get(position >> SIZE_EXPONENT)
+                    .get(position & REMAINDER_MASK);
+            }
+            return;
+        }
         int blockIndex = position >> SIZE_EXPONENT;
         int srcOffset = position & REMAINDER_MASK;
         int bytesToCopy, bytesCopied = 0;
@@ -96,6 +197,7 @@ public class Buffer {
             bytesToCopy = Math.min(BLOCK_SIZE - srcOffset, length - bytesCopied);
             ByteBuffer block = blocks.get(blockIndex++);
 
+            block.limit(block.capacity());
             block.position(srcOffset);
             block.get(buffer, offset + bytesCopied, bytesToCopy);
 
@@ -112,6 +214,9 @@ public class Buffer {
     }
 
     public void ensureCapacityToWrite(int numBytes) {
+        if (!pooled) {
+            throw new UnsupportedOperationException("read-only buffer");
+        }
         int required = position + numBytes;
         while (required >= capacity()) {
             blocks.add(ByteBufferPool.acquire());
@@ -152,6 +257,30 @@ public class Buffer {
         copyFrom(src, offset, length);
     }
 
+    /** Relative bulk put method, consuming the remaining bytes of the
+     *  specified byte buffer.
+     */
+    public void put(ByteBuffer src) {
+        int length = src.remaining();
+        ensureCapacityToWrite(length);
+        int blockIndex = position >> SIZE_EXPONENT;
+        int dstOffset = position & REMAINDER_MASK;
+        int limit = src.limit();
+        while (src.hasRemaining()) {
+            int bytesToCopy = Math.min(BLOCK_SIZE - dstOffset, src.remaining());
+            ByteBuffer block = blocks.get(blockIndex++);
+
+            block.limit(block.capacity());
+            block.position(dstOffset);
+            src.limit(src.position() + bytesToCopy);
+            block.put(src);
+            src.limit(limit);
+
+            dstOffset = 0;
+        }
+        setPosition(position() + length);
+    }
+
     /** Absolute put method. */
     public void put(int index, byte b) {
         index += front;
@@ -182,25 +311,28 @@ public class Buffer {
     }
 
     private void listBuffers(List<ByteBuffer> list, int begin, int end) {
+        if (sliceView) {
+            throw new UnsupportedOperationException("slice view");
+        }
         int beginIndex = begin >> SIZE_EXPONENT;
         int beginOffset = begin & REMAINDER_MASK;
         int endIndex = end >> SIZE_EXPONENT;
         int endOffset = end & REMAINDER_MASK;
 
         ByteBuffer block = blocks.get(beginIndex);
+        block.limit(block.capacity());
         block.position(beginOffset);
         if (beginIndex == endIndex) {
             block.limit(endOffset);
             list.add(block);
             return;
         }
-        block.limit(BLOCK_SIZE);
         list.add(block);
 
         for (int i = beginIndex + 1; i < endIndex; ++i) {
             block = blocks.get(i);
             block.rewind();
-            block.limit(BLOCK_SIZE);
+            block.limit(block.capacity());
             list.add(block);
         }
 
@@ -221,14 +353,14 @@ public class Buffer {
         int backIndex = back >> SIZE_EXPONENT;
         int backOffset = back & REMAINDER_MASK;
         ByteBuffer block = blocks.get(backIndex);
+        block.limit(block.capacity());
         block.position(backOffset);
-        block.limit(BLOCK_SIZE);
         list.add(block);
 
         for (int i = backIndex + 1, size = blocks.size(); i < size; ++i) {
             block = blocks.get(i);
             block.rewind();
-            block.limit(BLOCK_SIZE);
+            block.limit(block.capacity());
             list.add(block);
         }
     }
@@ -246,6 +378,7 @@ public class Buffer {
     }
 
     public void reset() {
+        unshare(blocks.size());
         setPosition(0);
         back = front;
     }
@@ -289,6 +422,83 @@ public class Buffer {
         back += numBytes;
     }
 
+    /** Creates a reference-counted read-only view on the specified range of
+     *  this buffer without copying. The underlying blocks are not returned to
+     *  the pool until both this buffer and the slice release them.
+     *  @param offset the zero-based starting index of the range.
+     *  @param length the number of bytes in the range.
+     */
+    public Slice slice(int offset, int length) {
+        int begin = front + offset;
+        int end = begin + length;
+        if (offset < 0 || length < 0 || end > back) {
+            throw new IndexOutOfBoundsException();
+        }
+        List<ByteBuffer> views = new ArrayList<ByteBuffer>();
+        if (length != 0) {
+            listBuffers(views, begin, end);
+        }
+        int count = views.size();
+        int firstIndex = begin >> SIZE_EXPONENT;
+        ByteBuffer[] sliceBlocks = new ByteBuffer[count];
+        AtomicInteger[] refCounts = new AtomicInteger[count];
+        if (shared == null && count != 0) {
+            shared = new IdentityHashMap<ByteBuffer, AtomicInteger>();
+        }
+        for (int i = 0; i < count; ++i) {
+            ByteBuffer block = blocks.get(firstIndex + i);
+            AtomicInteger refCount = shared.get(block);
+            if (refCount == null) {
+                refCount = new AtomicInteger(1);
+                shared.put(block, refCount);
+            }
+            refCount.incrementAndGet();
+            sliceBlocks[i] = block;
+            refCounts[i] = refCount;
+            // Read-only views keeping the block indexes, for absolute reads
+            views.set(i, views.get(i).asReadOnlyBuffer());
+            // Absolute get/put methods rely on the whole block limit.
+            block.limit(block.capacity());
+        }
+        return new Slice(sliceBlocks, refCounts,
+            views.toArray(new ByteBuffer[count]), begin & REMAINDER_MASK, length);
+    }
+
+    // Returns the specified block back to the pool, unless it is still
+    // referenced by any slice.
+    private void release(ByteBuffer block) {
+        if (!pooled) {
+            return;
+        }
+        AtomicInteger refCount = (shared == null ? null : shared.remove(block));
+        if (refCount == null || refCount.decrementAndGet() == 0) {
+            ByteBufferPool.release(block);
+        }
+    }
+
+    // Replaces the leading blocks shared with slices by fresh ones, before
+    // their contents are overwritten.
+    private void unshare(int count) {
+        if (shared == null || shared.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < count; ++i) {
+            ByteBuffer block = blocks.get(i);
+            if (shared.containsKey(block)) {
+                release(block);
+                blocks.set(i, ByteBufferPool.acquire());
+            }
+        }
+        current = blocks.get(currentIndex);
+    }
+
+    /** Copies all the bytes in this buffer into the specified array, which
+     *  must have room for length() bytes from the given offset.
+     */
+    public void copyTo(byte[] dst, int offset) {
+        copyTo(dst, offset, length(), front);
+    }
+
     /** Returns a byte array containing all the bytes in this buffer. */
     public byte[] toArray() {
         byte[] result = new byte[length()];
@@ -306,6 +516,8 @@ public class Buffer {
         }
 
         if (position == back) {
+            // The first block is to be rewritten from the beginning.
+            unshare(1);
             index = 1;
             count = blocks.size() - 1;
             front = back = 0;
@@ -323,10 +535,82 @@ public class Buffer {
         if (count > 0) {
             List<ByteBuffer> blocksToRemove = blocks.subList(index, index + count);
             for (int i = 0; i < blocksToRemove.size(); ++i) {
-                ByteBufferPool.release(blocksToRemove.get(i));
+                release(blocksToRemove.get(i));
             }
             blocksToRemove.clear();
         }
         setPosition(0);
     }
+
+    /** Reference-counted read-only view on a range of buffer blocks. */
+    public static final class Slice {
+        private final ByteBuffer[] blocks;
+        private final AtomicInteger[] blockRefCounts;
+        private final ByteBuffer[] views;
+        // Starting offset in the first block
+        private final int offset;
+        private final int length;
+
+        private final AtomicInteger refCount;
+
+        private Slice(ByteBuffer[] blocks, AtomicInteger[] blockRefCounts,
+                ByteBuffer[] views, int offset, int length) {
+            this.blocks = blocks;
+            this.blockRefCounts = blockRefCounts;
+            this.views = views;
+            this.offset = offset;
+            this.length = length;
+            refCount = new AtomicInteger(1);
+        }
+
+        /** Returns the number of bytes in this slice. */
+        public int length() {
+            return length;
+        }
+
+        /** Appends independent read-only views on the bytes of this slice to
+         *  the specified list, ready for a gathering write.
+         */
+        public void listBuffers(List<ByteBuffer> list) {
+            for (int i = 0; i < views.length; ++i) {
+                list.add(views[i].duplicate());
+            }
+        }
+
+        /** Copies the bytes of this slice into the specified buffer at its
+         *  current position.
+         */
+        public void copyTo(Buffer buffer) {
+            for (int i = 0; i < views.length; ++i) {
+                buffer.put(views[i].duplicate());
+            }
+        }
+
+        /** Increases the reference count of this slice. */
+        public Slice retain() {
+            if (refCount.getAndIncrement() <= 0) {
+                refCount.decrementAndGet();
+                throw new IllegalStateException();
+            }
+            return this;
+        }
+
+        /** Decreases the reference count of this slice, returning the
+         *  underlying blocks when it reaches zero.
+         */
+        public void release() {
+            int n = refCount.decrementAndGet();
+            if (n > 0) {
+                return;
+            }
+            if (n < 0) {
+                throw new IllegalStateException();
+            }
+            for (int i = 0; i < blocks.length; ++i) {
+                if (blockRefCounts[i].decrementAndGet() == 0) {
+                    ByteBufferPool.release(blocks[i]);
+                }
+            }
+        }
+    }
 }
@@ -8,10 +8,15 @@ import java.util.*;
 /** Represents a finite set of application logic. */
 public class CaseStack implements Setupable {
     private ArrayList<Setupable> cases;
+    // Dependencies of the cases, identity-keyed
+    private IdentityHashMap<Setupable, List<Setupable>> dependencies;
     private boolean activated;
+    private volatile int parallelism = 1;
+    private volatile Map<Setupable, Long> setupTimes = Collections.emptyMap();
     
     public CaseStack() {
         cases = new ArrayList<Setupable>();
+        dependencies = new IdentityHashMap<Setupable, List<Setupable>>();
     }
     
     public void add(Setupable o) {
@@ -20,38 +25,77 @@ public class CaseStack implements Setupable {
         }
     }
     
+    /** Adds the specified case, to be set up after the given ones and torn
+     *  down before them.
+     */
+    public void add(Setupable o, Setupable... dependsOn) {
+        synchronized (cases) {
+            cases.add(o);
+            if (dependsOn.length != 0) {
+                dependencies.put(o, new ArrayList<Setupable>(Arrays.asList(dependsOn)));
+            }
+        }
+    }
+    
     public void remove(Setupable o) {
         synchronized (cases) {
             cases.remove(o);
+            dependencies.remove(o);
         }
     }
     
-    public void setup(Flow holder) {
-        ArrayList<Setupable> snapshot;
+    /** Gets the maximum number of cases set up or torn down at once. */
+    public int parallelism() {
+        return parallelism;
+    }
+    
+    /** Sets the maximum number of cases set up or torn down at once. With 1,
+     *  the default, they are set up one by one in the order added, unless
+     *  their dependencies require otherwise, and torn down in reverse.
+     */
+    public void parallelism(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException();
+        }
+        parallelism = value;
+    }
+    
+    /** Gets the time each case took to set up on the last setup, in
+     *  nanoseconds.
+     */
+    public Map<Setupable, Long> setupTimes() {
+        return setupTimes;
+    }
+    
+    public void setup(final Flow holder) {
+        DependencyRunner<Setupable> runner;
         synchronized (cases) {
             if (activated) { return; }
             activated = true;
-            snapshot = new ArrayList<Setupable>(cases);
-        }
-        for (int i = 0, count = snapshot.size(); i < count; ++i) {
-            snapshot.get(i).setup(holder);
+            runner = new DependencyRunner<Setupable>(holder.name(),
+                new ArrayList<Setupable>(cases),
+                new IdentityHashMap<Setupable, List<Setupable>>(dependencies));
         }
+        setupTimes = runner.run(new DependencyRunner.Action<Setupable>() {
+            public void run(Setupable o) {
+                o.setup(holder);
+            }
+        }, parallelism, false, true);
     }
     
-    public void teardown(Flow holder) {
-        ArrayList<Setupable> snapshot;
+    public void teardown(final Flow holder) {
+        DependencyRunner<Setupable> runner;
         synchronized (cases) {
             if (!activated) { return; }
             activated = false;
-            snapshot = new ArrayList<Setupable>(cases);
+            runner = new DependencyRunner<Setupable>(holder.name(),
+                new ArrayList<Setupable>(cases),
+                new IdentityHashMap<Setupable, List<Setupable>>(dependencies));
         }
-        for (int i = snapshot.size() - 1; i >= 0; --i) {
-            try {
-                snapshot.get(i).teardown(holder);
+        runner.run(new DependencyRunner.Action<Setupable>() {
+            public void run(Setupable o) {
+                o.teardown(holder);
             }
-            catch (Exception e) {
-                // TODO: log error
-            }
-        }
+        }, parallelism, true, false);
     }
 }
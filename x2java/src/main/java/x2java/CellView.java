@@ -0,0 +1,66 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.io.IOException;
+
+/** Common base class for read-only flyweight views over serialized cells.
+ *  <p>
+ *  A view reads property values straight out of a buffer without creating
+ *  the cell object, and a single view instance can be rewrapped over every
+ *  message. Wrapping locates the present properties once, and accessors
+ *  decode them in place on each call.
+ */
+public abstract class CellView {
+    protected Buffer buffer;
+    protected Deserializer deserializer;
+
+    // Position and length in bits of the serialized fingerprint
+    private int fingerprintPosition;
+    private int fingerprintLength;
+
+    /** Wraps this view over the serialized cell at the specified zero-based
+     *  position of the given buffer, returning the position where it ends.
+     *  @throws IOException when the cell is malformed or truncated.
+     */
+    public int wrap(Buffer buffer, int position) throws IOException {
+        if (buffer != this.buffer) {
+            this.buffer = buffer;
+            if (deserializer == null) {
+                deserializer = new Deserializer(buffer);
+            }
+            else {
+                deserializer.buffer(buffer);
+            }
+        }
+        deserializer.position(position);
+        wrapInternal();
+        return deserializer.position();
+    }
+
+    /** Reads the cell header, and then locates the properties. */
+    protected void wrapInternal() throws IOException {
+        fingerprintLength = deserializer.readNonnegativeInt();
+        fingerprintPosition = deserializer.position();
+        deserializer.skip(((fingerprintLength - 1) >> 3) + 1);
+        walk();
+    }
+
+    /** Overridden by subclasses to locate their properties in order, skipping
+     *  over the encoded values.
+     */
+    protected void walk() throws IOException {
+    }
+
+    /** Determines whether the fingerprint of the wrapped cell has the bit at
+     *  the specified index set.
+     */
+    protected boolean touched(int index) {
+        if (index < 0 || fingerprintLength <= index) {
+            return false;
+        }
+        int b = buffer.get(fingerprintPosition + (index >> 3));
+        return ((b & (1 << (index & 7))) != 0);
+    }
+}
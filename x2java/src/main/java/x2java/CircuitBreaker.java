@@ -0,0 +1,146 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Per-handler circuit breaker of a flow, cutting off the handlers that keep
+ *  failing so that they stop eating up the dispatch time.
+ *  <p>
+ *  Once a handler throws threshold() times in a row, the breaker opens: the
+ *  flow skips the handler for cooldown() milliseconds, then lets a single
+ *  event through to try it again, closing on success and opening again on
+ *  failure. With a zero cooldown, the flow unbinds the handler for good
+ *  instead. Handlers that have not failed cost a single volatile read.
+ */
+public class CircuitBreaker {
+    /** Default number of consecutive failures that open the breaker. */
+    public static final int DEFAULT_THRESHOLD = 10;
+    /** Default time in milliseconds a handler is skipped for. */
+    public static final int DEFAULT_COOLDOWN = 5000;
+
+    private final int threshold;
+    private final int cooldown;
+
+    // States of the handlers that failed at least once since their last
+    // success
+    private final ConcurrentMap<Handler, State> states =
+        new ConcurrentHashMap<Handler, State>();
+    private volatile boolean failing;
+    private final AtomicLong trips = new AtomicLong();
+
+    private static final class State {
+        final AtomicInteger failures = new AtomicInteger();
+        // nanoTime until which the handler is skipped, or 0 if closed
+        final AtomicLong openUntil = new AtomicLong();
+    }
+
+    /** Constructs a new circuit breaker with the default settings. */
+    public CircuitBreaker() {
+        this(DEFAULT_THRESHOLD, DEFAULT_COOLDOWN);
+    }
+
+    /** Constructs a new circuit breaker opening after the specified number
+     *  of consecutive failures, for the given time in milliseconds, or for
+     *  good if it is zero.
+     */
+    public CircuitBreaker(int threshold, int cooldown) {
+        if (threshold < 1 || cooldown < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.threshold = threshold;
+        this.cooldown = cooldown;
+    }
+
+    /** Gets the number of consecutive failures that open the breaker. */
+    public int threshold() {
+        return threshold;
+    }
+
+    /** Gets the time in milliseconds a handler is skipped for, or 0 if it is
+     *  unbound instead.
+     */
+    public int cooldown() {
+        return cooldown;
+    }
+
+    /** Gets the number of times the breaker opened so far. */
+    public long trips() {
+        return trips.get();
+    }
+
+    /** Determines whether the breaker is open for the specified handler. */
+    public boolean isOpen(Handler handler) {
+        State state = states.get(handler);
+        return (state != null && state.openUntil.get() != 0);
+    }
+
+    /** Determines whether the specified handler may be invoked now. While
+     *  the breaker is open, only the first caller after the cooldown gets
+     *  through.
+     */
+    public boolean allow(Handler handler) {
+        if (!failing) {
+            return true;
+        }
+        State state = states.get(handler);
+        if (state == null) {
+            return true;
+        }
+        long openUntil = state.openUntil.get();
+        if (openUntil == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - openUntil < 0) {
+            return false;
+        }
+        // Half-open: hold the others off for another cooldown meanwhile.
+        return state.openUntil.compareAndSet(openUntil,
+            now + cooldown * 1000000L);
+    }
+
+    /** Records a successful invocation of the specified handler. */
+    public void onSuccess(Handler handler) {
+        if (failing && states.remove(handler) != null && states.isEmpty()) {
+            failing = false;
+        }
+    }
+
+    /** Records a failed invocation of the specified handler, returning true
+     *  if it opens the breaker.
+     */
+    public boolean onFailure(Handler handler) {
+        State state = states.get(handler);
+        if (state == null) {
+            state = new State();
+            State existing = states.putIfAbsent(handler, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        failing = true;
+        if (state.openUntil.get() != 0) {
+            // Failed again on trial
+            state.openUntil.set(System.nanoTime() + cooldown * 1000000L);
+            return false;
+        }
+        if (state.failures.incrementAndGet() < threshold) {
+            return false;
+        }
+        state.failures.set(0);
+        long openUntil = System.nanoTime() + cooldown * 1000000L;
+        state.openUntil.set(openUntil != 0 ? openUntil : 1);
+        trips.incrementAndGet();
+        return true;
+    }
+
+    /** Forgets the state of the specified handler, e.g. once unbound. */
+    public void reset(Handler handler) {
+        states.remove(handler);
+    }
+}
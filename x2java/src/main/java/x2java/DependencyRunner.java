@@ -0,0 +1,268 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x2java.util.*;
+
+/** Runs an action over a list of items in their dependency order, either
+ *  one by one or in parallel on a bounded thread pool, measuring the time
+ *  the action takes for each item.
+ *  <p>
+ *  Run forward, an item waits for all its dependencies; run in reverse, for
+ *  all its dependents. Run serially, the items go in the topological order
+ *  closest to the list order, and in the exact list order, or its reverse,
+ *  without dependencies.
+ */
+final class DependencyRunner<T> {
+    /** Action to be run over each item. */
+    interface Action<T> {
+        void run(T item);
+    }
+
+    private final String name;
+    private final List<T> items;
+    // Indexes of the dependencies and the dependents of each item
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    // Topological order, as item indexes
+    private final int[] order;
+
+    /** Constructs a new runner over the specified items, with the given
+     *  dependencies of them. Dependencies on items not in the list are
+     *  ignored.
+     */
+    DependencyRunner(String name, List<T> items,
+            Map<T, ? extends Collection<T>> dependencyMap) {
+        this.name = name;
+        this.items = items;
+        int count = items.size();
+        IdentityHashMap<T, Integer> indexes = new IdentityHashMap<T, Integer>();
+        for (int i = 0; i < count; ++i) {
+            indexes.put(items.get(i), i);
+        }
+        List<List<Integer>> dependentLists = new ArrayList<List<Integer>>();
+        for (int i = 0; i < count; ++i) {
+            dependentLists.add(new ArrayList<Integer>());
+        }
+        dependencies = new int[count][];
+        for (int i = 0; i < count; ++i) {
+            Collection<T> deps = dependencyMap.get(items.get(i));
+            List<Integer> list = new ArrayList<Integer>();
+            if (deps != null) {
+                for (T dep : deps) {
+                    Integer index = indexes.get(dep);
+                    if (index != null && index != i && !list.contains(index)) {
+                        list.add(index);
+                        dependentLists.get(index).add(i);
+                    }
+                }
+            }
+            dependencies[i] = toArray(list);
+        }
+        dependents = new int[count][];
+        for (int i = 0; i < count; ++i) {
+            dependents[i] = toArray(dependentLists.get(i));
+        }
+        order = sort();
+    }
+
+    /** Runs the action over all the items, returning the time it took for
+     *  each of them in nanoseconds. With stopOnError, the first exception or
+     *  error keeps the items that wait for the failed one from running and is
+     *  rethrown on the calling thread once the running ones complete;
+     *  otherwise they are logged and the run goes on.
+     */
+    Map<T, Long> run(Action<T> action, int parallelism, boolean reverse,
+            boolean stopOnError) {
+        Map<T, Long> times = Collections.synchronizedMap(
+            new IdentityHashMap<T, Long>());
+        if (parallelism <= 1 || items.size() <= 1) {
+            for (int i = 0; i < order.length; ++i) {
+                int index = order[reverse ? order.length - 1 - i : i];
+                runItem(action, index, times, stopOnError);
+            }
+        }
+        else {
+            new ParallelRun(action, reverse, stopOnError, times)
+                .run(Math.min(parallelism, items.size()));
+        }
+        return times;
+    }
+
+    // Runs the action over the item at the specified index.
+    private void runItem(Action<T> action, int index, Map<T, Long> times,
+            boolean stopOnError) {
+        T item = items.get(index);
+        long start = System.nanoTime();
+        try {
+            action.run(item);
+        }
+        catch (Throwable e) {
+            if (stopOnError) {
+                throw e;
+            }
+            Log.error("%s %s error : %s", name, item, e);
+        }
+        finally {
+            times.put(item, System.nanoTime() - start);
+        }
+    }
+
+    // Sorts the items topologically, picking the first ready item in the list
+    // order at each step.
+    private int[] sort() {
+        int count = items.size();
+        int[] pending = new int[count];
+        TreeSet<Integer> ready = new TreeSet<Integer>();
+        for (int i = 0; i < count; ++i) {
+            pending[i] = dependencies[i].length;
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] result = new int[count];
+        int n = 0;
+        while (!ready.isEmpty()) {
+            int index = ready.pollFirst();
+            result[n++] = index;
+            for (int dependent : dependents[index]) {
+                if (--pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (n != count) {
+            throw new IllegalStateException(name + " dependency cycle");
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    // State of a parallel run
+    private final class ParallelRun {
+        private final Action<T> action;
+        private final boolean reverse;
+        private final boolean stopOnError;
+        private final Map<T, Long> times;
+
+        private final Object syncRoot = new Object();
+        private final int[] pending;
+        private int remaining;
+        private int running;
+        private Throwable error;
+        private ExecutorService executor;
+
+        ParallelRun(Action<T> action, boolean reverse, boolean stopOnError,
+                Map<T, Long> times) {
+            this.action = action;
+            this.reverse = reverse;
+            this.stopOnError = stopOnError;
+            this.times = times;
+            pending = new int[items.size()];
+            for (int i = 0; i < pending.length; ++i) {
+                pending[i] = (reverse ? dependents[i] : dependencies[i]).length;
+            }
+            remaining = pending.length;
+        }
+
+        void run(int threads) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable);
+                    // Not a daemon, as the flow threads inherit it
+                    thread.setName(name + "-" + threadCount.incrementAndGet());
+                    return thread;
+                }
+            });
+            try {
+                synchronized (syncRoot) {
+                    for (int i = 0; i < order.length; ++i) {
+                        int index = order[reverse ? order.length - 1 - i : i];
+                        if (pending[index] == 0) {
+                            submit(index);
+                        }
+                    }
+                    while (running != 0) {
+                        try {
+                            syncRoot.wait();
+                        }
+                        catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+            synchronized (syncRoot) {
+                if (error instanceof Error) {
+                    throw (Error)error;
+                }
+                if (error != null) {
+                    throw (RuntimeException)error;
+                }
+                if (remaining != 0) {
+                    throw new IllegalStateException(name + " interrupted");
+                }
+            }
+        }
+
+        // Called with syncRoot held
+        private void submit(final int index) {
+            ++running;
+            executor.execute(new Runnable() {
+                public void run() {
+                    Throwable failure = null;
+                    try {
+                        runItem(action, index, times, stopOnError);
+                    }
+                    catch (Throwable e) {
+                        // Even an error has to count down, or the run hangs.
+                        failure = e;
+                    }
+                    onComplete(index, failure);
+                }
+            });
+        }
+
+        private void onComplete(int index, Throwable failure) {
+            synchronized (syncRoot) {
+                --running;
+                --remaining;
+                if (failure != null) {
+                    if (error == null) {
+                        error = failure;
+                    }
+                }
+                else if (error == null) {
+                    int[] next = (reverse ? dependencies[index] : dependents[index]);
+                    for (int i = 0; i < next.length; ++i) {
+                        if (--pending[next[i]] == 0) {
+                            submit(next[i]);
+                        }
+                    }
+                }
+                if (running == 0) {
+                    syncRoot.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -19,6 +19,27 @@ public final class Deserializer {
         marker = -1;
     }
 
+    /** Gets the underlying buffer. */
+    public Buffer buffer() {
+        return buffer;
+    }
+
+    /** Re-points this deserializer at the specified buffer. */
+    public void buffer(Buffer value) {
+        buffer = value;
+        marker = -1;
+    }
+
+    /** Gets the current zero-based position in the underlying buffer. */
+    public int position() {
+        return buffer.position();
+    }
+
+    /** Sets the current zero-based position in the underlying buffer. */
+    public void position(int value) {
+        buffer.setPosition(value);
+    }
+
     /** Creates a new event instance, retrieving the type identifier from this
      *  deserializer.
      */
@@ -79,8 +100,8 @@ public final class Deserializer {
     /** Decodes a 16-bit signed integer out of the underlying buffer. */
     public short readShort() throws IOException {
         buffer.checkLengthToRead(2);
-        short value = buffer.get();
-        value = (short)((value << 8) | buffer.get());
+        short value = (short)(buffer.get() << 8);
+        value |= (short)(buffer.get() & 0xff);
         return value;
     }
 
@@ -223,29 +244,116 @@ public final class Deserializer {
         return value;
     }
 
+    /** Reads the specified number of bytes verbatim into the given array. */
+    public void read(byte[] dst, int offset, int length) throws IOException {
+        buffer.get(dst, offset, length);
+    }
+
+    // Skip methods, advancing over encoded values without decoding them
+
+    /** Skips over the specified number of bytes. */
+    public void skip(int length) throws IOException {
+        buffer.checkLengthToRead(length);
+        buffer.setPosition(buffer.position() + length);
+    }
+
+    /** Skips over an encoded boolean value. */
+    public void skipBoolean() throws IOException {
+        skip(1);
+    }
+
+    /** Skips over an encoded single byte. */
+    public void skipByte() throws IOException {
+        skip(1);
+    }
+
+    /** Skips over an encoded 16-bit signed integer. */
+    public void skipShort() throws IOException {
+        skip(2);
+    }
+
+    /** Skips over an encoded 32-bit signed integer. */
+    public void skipInt() throws IOException {
+        skipVariable(5);
+    }
+
+    /** Skips over an encoded 64-bit signed integer. */
+    public void skipLong() throws IOException {
+        skipVariable(10);
+    }
+
+    /** Skips over an encoded 32-bit floating-point number. */
+    public void skipFloat() throws IOException {
+        skip(4);
+    }
+
+    /** Skips over an encoded 64-bit floating-point number. */
+    public void skipDouble() throws IOException {
+        skip(8);
+    }
+
+    /** Skips over an encoded text string. */
+    public void skipString() throws IOException {
+        skip(readNonnegativeInt());
+    }
+
+    /** Skips over an encoded datetime value. */
+    public void skipCalendar() throws IOException {
+        skip(8);
+    }
+
+    /** Skips over an encoded byte array. */
+    public void skipBytes() throws IOException {
+        skip(readNonnegativeInt());
+    }
+
+    /** Skips over an encoded cell-derived object. */
+    public void skipCell() throws IOException {
+        skip(readNonnegativeInt());
+    }
+
+    /** Skips over an encoded ordered list of 32-bit integer values. */
+    public void skipList() throws IOException {
+        int length = readNonnegativeInt();
+        for (int i = 0; i < length; ++i) {
+            skipInt();
+        }
+    }
+
+    // Skips over a variable-length integer of up to the specified bytes.
+    private void skipVariable(int maxLength) throws IOException {
+        for (int i = 0; i < maxLength; ++i) {
+            buffer.checkLengthToRead(1);
+            if ((buffer.get() & 0x80) == 0) {
+                return;
+            }
+        }
+        throw new IOException("malformed variable-length integer");
+    }
+
     // Read helper methods
 
     /** Decodes a 32-bit signed integer by fixed-width big-endian byte order. */
     public int readFixedInt() throws IOException {
         buffer.checkLengthToRead(4);
-        int value = buffer.get();
-        value |= buffer.get() << 8;
-        value |= buffer.get() << 16;
-        value |= buffer.get() << 24;
+        int value = (buffer.get() & 0xff) << 24;
+        value |= (buffer.get() & 0xff) << 16;
+        value |= (buffer.get() & 0xff) << 8;
+        value |= (buffer.get() & 0xff);
         return value;
     }
 
     /** Decodes a 64-bit signed integer by fixed-width big-endian byte order. */
     public long readFixedLong() throws IOException {
         buffer.checkLengthToRead(8);
-        long value = buffer.get();
-        value |= (long)buffer.get() << 8;
-        value |= (long)buffer.get() << 16;
-        value |= (long)buffer.get() << 24;
-        value |= (long)buffer.get() << 32;
-        value |= (long)buffer.get() << 40;
-        value |= (long)buffer.get() << 48;
-        value |= (long)buffer.get() << 56;
+        long value = (long)(buffer.get() & 0xff) << 56;
+        value |= (long)(buffer.get() & 0xff) << 48;
+        value |= (long)(buffer.get() & 0xff) << 40;
+        value |= (long)(buffer.get() & 0xff) << 32;
+        value |= (long)(buffer.get() & 0xff) << 24;
+        value |= (long)(buffer.get() & 0xff) << 16;
+        value |= (long)(buffer.get() & 0xff) << 8;
+        value |= (long)(buffer.get() & 0xff);
         return value;
     }
 
@@ -0,0 +1,15 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+/** The ErrorHandler interface should be implemented by any class whose
+ *  instances are intended to be notified of the exceptions thrown by the
+ *  handlers a flow dispatches events to.
+ *  <p>
+ *  It is called on the dispatching thread, so it should return quickly,
+ *  e.g. by counting the error or posting an event describing it.
+ */
+public interface ErrorHandler {
+    void onError(Flow flow, Event e, Handler handler, Exception ex);
+}
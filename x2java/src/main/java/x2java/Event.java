@@ -9,9 +9,10 @@ import x2java.util.*;
 
 /** Common base class for all events. */
 public class Event extends Cell {
-    protected static final Tag tag = new Tag(null, Event.class, 1, 0);
+    protected static final Tag tag = new Tag(null, Event.class, 2, 0);
 
     private int handle;
+    private int waitHandle;
 
     /** Constructs a new event object. */
     public Event() {
@@ -46,6 +47,9 @@ public class Event extends Cell {
         if (handle != o.handle) {
             return false;
         }
+        if (waitHandle != o.waitHandle) {
+            return false;
+        }
         return true;
     }
 
@@ -74,6 +78,10 @@ public class Event extends Cell {
             result = Hash.update(result, tag.getOffset() + 0);
             result = Hash.update(result, handle);
         }
+        if (touched.get(1)) {
+            result = Hash.update(result, tag.getOffset() + 1);
+            result = Hash.update(result, waitHandle);
+        }
         return result;
     }
 
@@ -89,6 +97,11 @@ public class Event extends Cell {
                 return false;
             }
         }
+        if (touched.get(1)) {
+            if (waitHandle != o.waitHandle) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -101,12 +114,20 @@ public class Event extends Cell {
     @Override
     public void deserialize(Deserializer deserializer) throws IOException {
         super.deserialize(deserializer);
+        Capo touched = new Capo(fingerprint, tag.getOffset());
+        if (touched.get(1)) {
+            waitHandle = deserializer.readInt();
+        }
     }
 
     @Override
     public int length() {
         int length = Serializer.lengthInt(_getTypeId());
         length += super.length();
+        Capo touched = new Capo(fingerprint, tag.getOffset());
+        if (touched.get(1)) {
+            length += Serializer.lengthInt(waitHandle);
+        }
         return length;
     }
 
@@ -114,6 +135,10 @@ public class Event extends Cell {
     public void serialize(Serializer serializer) {
         serializer.writeInt(_getTypeId());
         super.serialize(serializer);
+        Capo touched = new Capo(fingerprint, tag.getOffset());
+        if (touched.get(1)) {
+            serializer.writeInt(waitHandle);
+        }
     }
 
     // Built-in accessors and mutators
@@ -123,24 +148,61 @@ public class Event extends Cell {
     /** Sets the link session handle associated with this event. */
     public void _setHandle(int value) { handle = value; }
 
+    /** Gets the request/response correlation identifier of this event, or 0
+     *  for none.
+     */
+    public int _getWaitHandle() { return waitHandle; }
+    /** Sets the request/response correlation identifier of this event, which
+     *  is carried over the wire along with it.
+     */
+    public void _setWaitHandle(int value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        waitHandle = value;
+    }
+
     /** Returns the type identifier of this event. */
     public int _getTypeId() { return tag.getTypeId(); }
     /** Returns the custom type tag of this event. */
     @Override
     public Cell.Tag _getTypeTag() { return tag; }
 
+    /** Dispatch priority of an event type, which selects the queue lane it
+     *  takes in event-based flows.
+     */
+    public static enum Priority {
+        High,
+        Normal,
+        Low
+    }
+
     /** Supports light-weight custom type hierarchy for Event and its subclasses. */
     public static class Tag extends Cell.Tag {
         private int typeId;
+        private Priority priority;
 
         /** Constructs a new tag object. */
         public Tag(Tag base, Class<?> runtimeType, int numProps, int typeId) {
+            this(base, runtimeType, numProps, typeId, null);
+        }
+
+        /** Constructs a new tag object with the specified priority, or with
+         *  the priority of the base type if null.
+         */
+        public Tag(Tag base, Class<?> runtimeType, int numProps, int typeId,
+                Priority priority) {
             super(base, runtimeType, numProps);
             this.typeId = typeId;
+            if (priority == null) {
+                priority = (base != null ? base.getPriority() : Priority.Normal);
+            }
+            this.priority = priority;
         }
 
         /** Gets the type identifier of this event type. */
         public int getTypeId() { return typeId; }
+
+        /** Gets the dispatch priority of this event type. */
+        public Priority getPriority() { return priority; }
     }
 
     public static class Equivalent extends Event {
@@ -0,0 +1,48 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.io.IOException;
+
+/** Common base class for read-only flyweight views over serialized events. */
+public class EventView extends CellView {
+    private int typeId;
+    private int waitHandle;
+
+    // Buffer re-pointed at the raw events wrapped
+    private Buffer sliceBuffer;
+
+    /** Wraps this view over the serialized event held by the specified raw
+     *  event, without allocating. The view must not be used after the raw
+     *  event is released.
+     */
+    public int wrap(RawEvent e) throws IOException {
+        if (sliceBuffer == null) {
+            sliceBuffer = new Buffer(new byte[0]);
+        }
+        sliceBuffer.wrap(e.slice());
+        return wrap(sliceBuffer, 0);
+    }
+
+    /** Reads the event type identifier ahead of the cell header. */
+    @Override
+    protected void wrapInternal() throws IOException {
+        typeId = deserializer.readInt();
+        super.wrapInternal();
+    }
+
+    /** Skips over the built-in event properties. */
+    @Override
+    protected void walk() throws IOException {
+        super.walk();
+        waitHandle = (touched(Event.tag.getOffset() + 1) ?
+            deserializer.readInt() : 0);
+    }
+
+    /** Returns the type identifier of the wrapped event. */
+    public int _getTypeId() { return typeId; }
+
+    /** Returns the correlation identifier of the wrapped event, or 0. */
+    public int _getWaitHandle() { return waitHandle; }
+}
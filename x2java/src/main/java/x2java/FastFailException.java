@@ -0,0 +1,22 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+/** Exception without a stack trace, for handlers to reject events cheaply.
+ *  <p>
+ *  Filling in the stack trace is the most expensive part of throwing, which
+ *  matters when a poison event makes a handler fail over and over. Flows
+ *  treat it like any other handler exception.
+ */
+public class FastFailException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public FastFailException(String message) {
+        super(message, null, false, false);
+    }
+
+    public FastFailException(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
@@ -249,6 +249,7 @@ public class Fingerprint implements Comparable<Fingerprint> {
         if ((index & (-1 << 5)) != 0) {  // index >= 32
             index -= 32;
             blocks[index >> 5] |= (1 << index);
+            return;
         }
         block |= (1 << index);
     }
@@ -266,6 +267,7 @@ public class Fingerprint implements Comparable<Fingerprint> {
         if ((index & (-1 << 5)) != 0) {  // index >= 32
             index -= 32;
             blocks[index >> 5] &= ~(1 << index);
+            return;
         }
         block &= ~(1 << index);
     }
@@ -283,7 +285,7 @@ public class Fingerprint implements Comparable<Fingerprint> {
         for (int i = 0; (i < 4) && (count < lengthInBytes); ++i, ++count) {
             byte b = deserializer.readByte();
             if (count < effectiveBytes) {
-                block |= (b << (i << 3));
+                block |= ((b & 0xff) << (i << 3));
             }
         }
         for (int i = 0; i < lengthInBlocks; ++i) {
@@ -291,7 +293,7 @@ public class Fingerprint implements Comparable<Fingerprint> {
             for (int j = 0; (j < 4) && (count < lengthInBytes); ++j, ++count) {
                 byte b = deserializer.readByte();
                 if (count < effectiveBytes) {
-                    word |= (b << (j << 3));
+                    word |= ((b & 0xff) << (j << 3));
                 }
             }
             if (blocks != null && i < blocks.length) {
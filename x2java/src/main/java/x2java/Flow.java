@@ -4,6 +4,10 @@
 package x2java;
 
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
+
+import x2java.metrics.*;
+import x2java.util.*;
 
 /** Represents a logically independent execution flow. */
 public abstract class Flow {
@@ -15,6 +19,12 @@ public abstract class Flow {
     protected Binder binder;
     protected CaseStack caseStack;
     protected String name;
+    protected volatile ThreadFactory threadFactory;
+    protected volatile FlowMetrics metrics;
+    protected volatile ErrorHandler errorHandler;
+    protected volatile CircuitBreaker breaker;
+    // Flows to be started before this one, copied on write
+    protected volatile List<Flow> dependencies = Collections.emptyList();
 
     static {
         current = new ThreadLocal<Flow>();
@@ -35,6 +45,14 @@ public abstract class Flow {
         return this;
     }
 
+    /** Adds the specified case to this flow, to be set up after the given
+     *  ones and torn down before them.
+     */
+    public Flow add(Setupable o, Setupable... dependsOn) {
+        caseStack.add(o, dependsOn);
+        return this;
+    }
+
     public static Binder.Token bind(Event e, Handler handler) {
         return current().subscribe(e, handler);
     }
@@ -51,6 +69,75 @@ public abstract class Flow {
 
     public abstract void feed(Event e);
 
+    /** Gets the circuit breaker of the handlers of this flow, or null if
+     *  none.
+     */
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    /** Sets the circuit breaker of the handlers of this flow, or null to
+     *  keep invoking the failing handlers.
+     */
+    public Flow breaker(CircuitBreaker value) {
+        breaker = value;
+        return this;
+    }
+
+    /** Gets the handler of the exceptions thrown by the handlers of this
+     *  flow, or null if they are just logged.
+     */
+    public ErrorHandler errorHandler() {
+        return errorHandler;
+    }
+
+    /** Sets the handler of the exceptions thrown by the handlers of this
+     *  flow, or null to just log them.
+     */
+    public Flow errorHandler(ErrorHandler value) {
+        errorHandler = value;
+        return this;
+    }
+
+    /** Gets the flows to be started before this one and stopped after it. */
+    public List<Flow> dependencies() {
+        return dependencies;
+    }
+
+    /** Makes the hub start this flow after the specified ones, and stop it
+     *  before them.
+     */
+    public Flow dependsOn(Flow... flows) {
+        synchronized (this) {
+            List<Flow> list = new ArrayList<Flow>(dependencies);
+            list.addAll(Arrays.asList(flows));
+            dependencies = Collections.unmodifiableList(list);
+        }
+        return this;
+    }
+
+    /** Gets the dispatch metrics of this flow, or null if not enabled. */
+    public FlowMetrics metrics() {
+        return metrics;
+    }
+
+    /** Enables or disables the dispatch metrics of this flow, registering
+     *  them to or unregistering them from the MetricsRegistry.
+     */
+    public Flow metrics(boolean enabled) {
+        synchronized (this) {
+            if (enabled && metrics == null) {
+                metrics = new FlowMetrics(this);
+                MetricsRegistry.register(metrics);
+            }
+            else if (!enabled && metrics != null) {
+                MetricsRegistry.unregister(metrics);
+                metrics = null;
+            }
+        }
+        return this;
+    }
+
     /** Gets the name of this flow. */
     public String name() {
         return name;
@@ -62,8 +149,60 @@ public abstract class Flow {
         return this;
     }
 
+    /** Gets the number of the events currently queued in this flow. */
+    public int queueDepth() {
+        return 0;
+    }
+
+    /** Gets the maximum number of the events queued in this flow at once
+     *  since the last reset.
+     */
+    public int maxQueueDepth() {
+        return 0;
+    }
+
+    /** Resets the maximum queue depth to the current queue depth. */
+    public void resetMaxQueueDepth() {
+    }
+
     public abstract void shutdown();
 
+    /** Gets the maximum number of cases of this flow set up at once. */
+    public int setupParallelism() {
+        return caseStack.parallelism();
+    }
+
+    /** Sets the maximum number of cases of this flow set up or torn down at
+     *  once, on a temporary thread pool. With 1, the default, they are set
+     *  up one by one in the order added, unless their dependencies require
+     *  otherwise.
+     */
+    public Flow setupParallelism(int value) {
+        caseStack.parallelism(value);
+        return this;
+    }
+
+    /** Gets the time each case of this flow took to set up on the last
+     *  startup, in nanoseconds.
+     */
+    public Map<Setupable, Long> setupTimes() {
+        return caseStack.setupTimes();
+    }
+
+    /** Gets the factory of the threads this flow creates. */
+    public ThreadFactory threadFactory() {
+        return threadFactory;
+    }
+
+    /** Sets the factory of the threads this flow creates, e.g. to set their
+     *  priority or CPU affinity, or null for plain threads. Takes effect on
+     *  the next startup.
+     */
+    public Flow threadFactory(ThreadFactory value) {
+        threadFactory = value;
+        return this;
+    }
+
     public abstract Flow startup();
 
     public Binder.Token subscribe(Event e, Handler handler) {
@@ -81,10 +220,64 @@ public abstract class Flow {
     protected void setup() {
     }
 
+    /** Creates a new thread through the thread factory of this flow, named
+     *  after the flow unless the factory has named it.
+     */
+    protected Thread newThread(Runnable runnable) {
+        ThreadFactory factory = threadFactory;
+        Thread thread = (factory != null ?
+            factory.newThread(runnable) : new Thread(runnable));
+        // Unnamed threads get "Thread-N", or "" if virtual.
+        String threadName = thread.getName();
+        if (factory == null || threadName.isEmpty() ||
+                threadName.startsWith("Thread-")) {
+            thread.setName(name);
+        }
+        return thread;
+    }
+
+    /** Called by subclasses when the queue of this flow becomes full, so that
+     *  links stop reading until it drains.
+     */
+    protected final void signalSaturated() {
+        Hub.instance().onFlowSaturated();
+    }
+
+    /** Called by subclasses when the queue of this flow, previously signaled
+     *  to be saturated, drains.
+     */
+    protected final void signalDrained() {
+        Hub.instance().onFlowDrained();
+    }
+
     protected void teardown() {
     }
 
     protected void dispatch(Event e) {
+        dispatch(e, 0);
+    }
+
+    /** Dispatches the specified event, which was queued at the given
+     *  System.nanoTime(), or 0 if unknown.
+     */
+    protected void dispatch(Event e, long enqueueTime) {
+        try {
+            dispatchInternal(e, enqueueTime);
+        }
+        finally {
+            if (e instanceof RawEvent) {
+                // Release the reference retained by the hub.
+                ((RawEvent)e).release();
+            }
+        }
+    }
+
+    private void dispatchInternal(Event e, long enqueueTime) {
+        FlowMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onDispatch(e, enqueueTime);
+        }
+
         List<Handler> handlers = handlerChain.get();
         if (handlers.size() != 0) {
             handlers.clear();
@@ -95,16 +288,60 @@ public abstract class Flow {
             return;
         }
 
+        CircuitBreaker breaker = this.breaker;
         for (int i = 0, count = handlers.size(); i < count; ++i) {
             Handler handler = handlers.get(i);
+            if (breaker != null && !breaker.allow(handler)) {
+                continue;
+            }
+            long start = (metrics != null ? System.nanoTime() : 0);
+            boolean failed = false;
             try {
                 handler.invoke(e);
             }
             catch (Exception ex) {
-                // TODO: handle exception
+                failed = true;
+                onError(e, handler, ex, breaker);
+            }
+            if (metrics != null) {
+                metrics.onHandled(handler, System.nanoTime() - start, failed);
+            }
+            if (breaker != null && !failed) {
+                breaker.onSuccess(handler);
             }
         }
 
         handlers.clear();
     }
+
+    // Reports the specified handler exception, and trips the breaker if it
+    // is due.
+    private void onError(Event e, Handler handler, Exception ex,
+            CircuitBreaker breaker) {
+        ErrorHandler errorHandler = this.errorHandler;
+        if (errorHandler != null) {
+            try {
+                errorHandler.onError(this, e, handler, ex);
+            }
+            catch (Exception ex2) {
+                Log.error("%s error handler error : %s", name, ex2);
+            }
+        }
+        else {
+            Log.error("%s handler %s error on %s : %s",
+                name, handler, e, ex);
+        }
+        if (breaker != null && breaker.onFailure(handler)) {
+            if (breaker.cooldown() == 0) {
+                int unbound = binder.unbind(handler);
+                breaker.reset(handler);
+                Log.warn("%s unbound failing handler %s from %d bindings",
+                    name, handler, unbound);
+            }
+            else {
+                Log.warn("%s suspended failing handler %s for %d ms",
+                    name, handler, breaker.cooldown());
+            }
+        }
+    }
 }
@@ -4,8 +4,12 @@
 package x2java;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.*;
 
+import x2java.flows.TimeFlow;
+import x2java.util.*;
+
 /** Represents the singleton event distribution bus. */
 public final class Hub {
     // List of all the flows attached to this hub
@@ -13,7 +17,22 @@ public final class Hub {
     
     private ReadWriteLock rwlock;
     
+    // Number of the flows whose queues are full
+    private final AtomicInteger saturatedFlows;
+    // Actions to be run once no flow is saturated
+    private final ArrayList<Runnable> drainActions;
+
+    // Maximum number of flows started or stopped at once
+    private volatile int parallelism = 1;
+    private volatile Map<Flow, Long> startupTimes = Collections.emptyMap();
+
+    // Heartbeat interval in milliseconds, or 0 for none
+    private int heartbeatInterval;
+    private long heartbeatToken;
+
     private static Hub instance;
+    // Single immutable heartbeat event shared by every tick
+    private static final HeartbeatEvent heartbeat = new HeartbeatEvent();
     
     static {
         // Initialize the singleton instance.
@@ -25,6 +44,9 @@ public final class Hub {
         flows = new ArrayList<Flow>();
         
         rwlock = new ReentrantReadWriteLock();
+
+        saturatedFlows = new AtomicInteger();
+        drainActions = new ArrayList<Runnable>();
     }
     
     /** Attaches the specified flow to the hub. */
@@ -78,10 +100,17 @@ public final class Hub {
             throw new IllegalArgumentException();
         }
         
+        // Each flow releases its own reference to a raw event after
+        // dispatching it.
+        RawEvent raw = (e instanceof RawEvent) ? (RawEvent)e : null;
+
         Lock rlock = rwlock.readLock();
         rlock.lock();
         try {
             for (int i = 0, count = flows.size(); i < count; ++i) {
+                if (raw != null) {
+                    raw.retain();
+                }
                 flows.get(i).feed(e);
             }
         }
@@ -90,6 +119,95 @@ public final class Hub {
         }
     }
     
+    /** Gets the heartbeat interval in milliseconds. */
+    public int heartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /** Sets the interval in milliseconds at which a HeartbeatEvent is posted
+     *  up to all the flows while the hub is running, or 0 for none. Takes
+     *  effect on the next startup.
+     */
+    public Hub heartbeatInterval(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        heartbeatInterval = value;
+        return this;
+    }
+
+    /** Gets the maximum number of flows started or stopped at once. */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /** Sets the maximum number of flows started or stopped at once, on a
+     *  temporary thread pool. A flow starts only after the flows it depends
+     *  on, and stops before them; see Flow.dependsOn(). With 1, the default,
+     *  the flows start one by one in the attach order, unless their
+     *  dependencies require otherwise, and stop in reverse.
+     */
+    public Hub parallelism(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException();
+        }
+        parallelism = value;
+        return this;
+    }
+
+    /** Gets the time each flow took to start up on the last startup, in
+     *  nanoseconds, including the setup of its cases.
+     */
+    public Map<Flow, Long> startupTimes() {
+        return startupTimes;
+    }
+
+    /** Determines whether any flow has its queue full, in which case links
+     *  should stop reading until the flows drain.
+     */
+    public boolean saturated() {
+        return (saturatedFlows.get() != 0);
+    }
+
+    /** Runs the specified action once no flow is saturated, or immediately if
+     *  none is.
+     */
+    public void whenDrained(Runnable action) {
+        synchronized (drainActions) {
+            if (saturatedFlows.get() != 0) {
+                drainActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    void onFlowSaturated() {
+        saturatedFlows.incrementAndGet();
+    }
+
+    void onFlowDrained() {
+        if (saturatedFlows.decrementAndGet() != 0) {
+            return;
+        }
+        ArrayList<Runnable> actions;
+        synchronized (drainActions) {
+            if (drainActions.isEmpty()) {
+                return;
+            }
+            actions = new ArrayList<Runnable>(drainActions);
+            drainActions.clear();
+        }
+        for (int i = 0, count = actions.size(); i < count; ++i) {
+            try {
+                actions.get(i).run();
+            }
+            catch (Exception e) {
+                Log.error("Hub.onFlowDrained : %s", e.toString());
+            }
+        }
+    }
+
     /** Gets the singleton instance of the hub. */
     public static Hub instance() {
         return instance;
@@ -101,6 +219,23 @@ public final class Hub {
     }
     
     private void startFlows() {
+        long start = System.nanoTime();
+        DependencyRunner<Flow> runner = newRunner("Hub.startup");
+        startupTimes = runner.run(new DependencyRunner.Action<Flow>() {
+            public void run(Flow flow) {
+                flow.startup();
+            }
+        }, parallelism, false, true);
+        Log.info("Hub started %d flows in %d ms", startupTimes.size(),
+            (System.nanoTime() - start) / 1000000);
+        if (heartbeatInterval > 0 && heartbeatToken == 0) {
+            heartbeatToken = TimeFlow.instance().reserveRepetition(
+                null, heartbeat, heartbeatInterval);
+        }
+    }
+
+    // Creates a new runner over the attached flows and their dependencies.
+    private DependencyRunner<Flow> newRunner(String name) {
         ArrayList<Flow> snapshot;
         Lock rlock = rwlock.readLock();
         rlock.lock();
@@ -110,9 +245,13 @@ public final class Hub {
         finally {
             rlock.unlock();
         }
+        IdentityHashMap<Flow, List<Flow>> dependencies =
+            new IdentityHashMap<Flow, List<Flow>>();
         for (int i = 0, count = snapshot.size(); i < count; ++i) {
-            snapshot.get(i).startup();
+            Flow flow = snapshot.get(i);
+            dependencies.put(flow, flow.dependencies());
         }
+        return new DependencyRunner<Flow>(name, snapshot, dependencies);
     }
     
     /** Starts all the flows attached to the hub. */
@@ -131,22 +270,14 @@ public final class Hub {
     }
     
     private void stopFlows() {
-        ArrayList<Flow> snapshot;
-        Lock rlock = rwlock.readLock();
-        rlock.lock();
-        try {
-            snapshot = new ArrayList<Flow>(flows);
+        if (heartbeatToken != 0) {
+            TimeFlow.instance().cancel(heartbeatToken);
+            heartbeatToken = 0;
         }
-        finally {
-            rlock.unlock();
-        }
-        for (int i = snapshot.size() - 1; i >= 0; --i) {
-            try {
-                snapshot.get(i).shutdown();
+        newRunner("Hub.shutdown").run(new DependencyRunner.Action<Flow>() {
+            public void run(Flow flow) {
+                flow.shutdown();
             }
-            catch (Exception e) {
-                // log error
-            }
-        }
+        }, parallelism, true, false);
     }
 }
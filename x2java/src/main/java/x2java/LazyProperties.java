@@ -0,0 +1,72 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.io.IOException;
+
+/** Retains the encoded properties of a lazily deserialized cell, so that each
+ *  of them is decoded only on its first access.
+ *  <p>
+ *  On deserialization, generated lazy cells mark the offset of every present
+ *  property while skipping over it, and then capture the whole encoded range.
+ */
+public final class LazyProperties {
+    private final Deserializer source;
+    private final int begin;
+    // Offsets of the pending properties relative to begin, or -1 for none
+    private final int[] offsets;
+
+    private Deserializer deserializer;
+
+    /** Constructs a new lazy properties object for the specified number of
+     *  properties, starting at the current position of the given deserializer.
+     */
+    public LazyProperties(Deserializer source, int numProps) {
+        this.source = source;
+        begin = source.position();
+        offsets = new int[numProps];
+        for (int i = 0; i < numProps; ++i) {
+            offsets[i] = -1;
+        }
+    }
+
+    /** Marks the specified property to be found at the current position of
+     *  the source deserializer.
+     */
+    public void mark(int index) {
+        offsets[index] = source.position() - begin;
+    }
+
+    /** Copies out the encoded properties up to the current position of the
+     *  source deserializer.
+     */
+    public void capture() throws IOException {
+        int end = source.position();
+        byte[] bytes = new byte[end - begin];
+        source.position(begin);
+        source.read(bytes, 0, bytes.length);
+        deserializer = new Deserializer(new Buffer(bytes));
+    }
+
+    /** Determines whether the specified property is yet to be decoded. */
+    public boolean isPending(int index) {
+        return (offsets[index] >= 0);
+    }
+
+    /** Drops the encoded value of the specified property, as it is assigned
+     *  a new value or decoded.
+     */
+    public void discard(int index) {
+        offsets[index] = -1;
+    }
+
+    /** Returns a deserializer positioned at the encoded value of the specified
+     *  pending property, marking it as decoded.
+     */
+    public Deserializer seek(int index) {
+        deserializer.position(offsets[index]);
+        offsets[index] = -1;
+        return deserializer;
+    }
+}
@@ -4,11 +4,13 @@
 package x2java;
 
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
 
 public abstract class Link extends Case {
     private static HashSet<String> names;
 
     private String name;
+    private volatile ThreadFactory threadFactory;
 
     static {
         names = new HashSet<String>();
@@ -42,6 +44,35 @@ public abstract class Link extends Case {
         return name;
     }
 
+    /** Gets the factory of the threads this link creates. */
+    public ThreadFactory threadFactory() {
+        return threadFactory;
+    }
+
+    /** Sets the factory of the threads this link creates, e.g. to set their
+     *  priority or CPU affinity, or null for plain threads.
+     */
+    public Link threadFactory(ThreadFactory value) {
+        threadFactory = value;
+        return this;
+    }
+
+    /** Creates a new thread through the thread factory of this link, named
+     *  after the link unless the factory has named it.
+     */
+    protected Thread newThread(Runnable runnable) {
+        ThreadFactory factory = threadFactory;
+        Thread thread = (factory != null ?
+            factory.newThread(runnable) : new Thread(runnable));
+        // Unnamed threads get "Thread-N", or "" if virtual.
+        String threadName = thread.getName();
+        if (factory == null || threadName.isEmpty() ||
+                threadName.startsWith("Thread-")) {
+            thread.setName(name);
+        }
+        return thread;
+    }
+
     /** Sends out the specified event through this link channel. */
     public abstract void send(Event e);
 
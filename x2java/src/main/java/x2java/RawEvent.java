@@ -0,0 +1,150 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java;
+
+import java.io.IOException;
+
+import x2java.util.*;
+
+/** Opaque event holding the undecoded serialized form of a received event,
+ *  which links send out as-is without copying.
+ *  <p>
+ *  The underlying buffer slice is reference-counted. The hub retains it once
+ *  for each flow it is fed into, and the flow releases it after dispatching.
+ *  Handlers keeping a raw event beyond their invocation must retain it, and
+ *  release it when done.
+ */
+public final class RawEvent extends Event {
+    protected static Tag tag;
+
+    private int rawTypeId_;
+
+    private Buffer.Slice slice;
+
+    /** Gets the type identifier of the wrapped event. */
+    public int getRawTypeId() {
+        return rawTypeId_;
+    }
+    /** Sets the type identifier of the wrapped event, for binding. */
+    public RawEvent setRawTypeId(int value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        rawTypeId_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, RawEvent.class, 1, BuiltinEventType.RawEvent);
+    }
+
+    /** Constructs a new raw event object for binding. */
+    public RawEvent() {
+        super(tag.getNumProps());
+    }
+
+    /** Constructs a new raw event object wrapping the specified slice, which
+     *  holds a whole serialized event starting with its type identifier. The
+     *  new event takes over the caller's reference to the slice.
+     */
+    public RawEvent(int rawTypeId, Buffer.Slice slice) {
+        this();
+        setRawTypeId(rawTypeId);
+        this.slice = slice;
+    }
+
+    /** Gets the underlying buffer slice. */
+    public Buffer.Slice slice() {
+        return slice;
+    }
+
+    /** Increases the reference count of the underlying slice. */
+    public RawEvent retain() {
+        if (slice != null) {
+            slice.retain();
+        }
+        return this;
+    }
+
+    /** Decreases the reference count of the underlying slice. */
+    public void release() {
+        if (slice != null) {
+            slice.release();
+        }
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        RawEvent o = (RawEvent)other;
+        if (rawTypeId_ != o.rawTypeId_) {
+            return false;
+        }
+        if (slice != o.slice) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(rawTypeId_);
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        RawEvent o = (RawEvent)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (rawTypeId_ != o.rawTypeId_) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" RawTypeId: ");
+        sb.append(rawTypeId_);
+        sb.append(", Length: ");
+        sb.append(length());
+    }
+
+    // Serialization
+
+    /** Raw events are never decoded from the wire. */
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        throw new IOException("RawEvent is not retrievable");
+    }
+
+    @Override
+    public int length() {
+        return (slice == null ? 0 : slice.length());
+    }
+
+    /** Writes out the wrapped serialized event verbatim. */
+    @Override
+    public void serialize(Serializer serializer) {
+        if (slice != null) {
+            serializer.writeSlice(slice);
+        }
+    }
+}
@@ -195,6 +195,13 @@ public final class Serializer {
         }
     }
 
+    /** Copies the bytes of the specified buffer slice verbatim into the
+     *  underlying buffer.
+     */
+    public void writeSlice(Buffer.Slice value) {
+        value.copyTo(buffer);
+    }
+
     /** Returns the number of bytes required to encode a cell-derived object. */
     public static <T extends Cell> int lengthCell(T value) {
         int length = (value == null) ? 0 : value.length();
@@ -304,7 +311,7 @@ public final class Serializer {
         do {
             buffer.ensureCapacityToWrite(1);
             byte b = (byte)(value & 0x7f);
-            value >>= 7;
+            value >>>= 7;
             if (value != 0) {
                 b |= 0x80;
             }
@@ -318,7 +325,7 @@ public final class Serializer {
         int i = 0;
         do {
             byte b = (byte)(value & 0x7f);
-            value >>= 7;
+            value >>>= 7;
             if (value != 0) {
                 b |= 0x80;
             }
@@ -347,7 +354,7 @@ public final class Serializer {
         do {
             buffer.ensureCapacityToWrite(1);
             byte b = (byte)(value & 0x7f);
-            value >>= 7;
+            value >>>= 7;
             if (value != 0) {
                 b |= 0x80;
             }
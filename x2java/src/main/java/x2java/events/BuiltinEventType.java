@@ -15,4 +15,6 @@ public final class BuiltinEventType {
     public static final int FlowStart = -2;
     public static final int FlowStop = -3;
     public static final int TimeoutEvent = -4;
+    public static final int RawEvent = -5;
+    public static final int SnapshotEvent = -6;
 }
@@ -12,7 +12,7 @@ public class FlowStart extends Event {
     protected static Tag tag;
 
     static {
-        tag = new Tag(Event.tag, FlowStart.class, 0, BuiltinEventType.FlowStart);
+        tag = new Tag(Event.tag, FlowStart.class, 0, BuiltinEventType.FlowStart, Event.Priority.High);
     }
 
     public FlowStart() {
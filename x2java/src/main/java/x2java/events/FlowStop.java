@@ -12,7 +12,7 @@ public class FlowStop extends Event {
     protected static Tag tag;
 
     static {
-        tag = new Tag(Event.tag, FlowStop.class, 0, BuiltinEventType.FlowStop);
+        tag = new Tag(Event.tag, FlowStop.class, 0, BuiltinEventType.FlowStop, Event.Priority.High);
     }
 
     public FlowStop() {
@@ -12,7 +12,7 @@ public class HeartbeatEvent extends Event {
     protected static Tag tag;
 
     static {
-        tag = new Tag(Event.tag, HeartbeatEvent.class, 0, BuiltinEventType.HeartbeatEvent);
+        tag = new Tag(Event.tag, HeartbeatEvent.class, 0, BuiltinEventType.HeartbeatEvent, Event.Priority.High);
     }
 
     public HeartbeatEvent() {
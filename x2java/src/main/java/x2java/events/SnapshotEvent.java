@@ -0,0 +1,188 @@
+// auto-generated by x2java xpiler
+
+package x2java;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class SnapshotEvent extends Event {
+    protected static Tag tag;
+
+    private String name_;
+    private long id_;
+    private long journalSequence_;
+
+    public String getName() {
+        return name_;
+    }
+    public SnapshotEvent setName(String value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        name_ = value;
+        return this;
+    }
+
+    public long getId() {
+        return id_;
+    }
+    public SnapshotEvent setId(long value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        id_ = value;
+        return this;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence_;
+    }
+    public SnapshotEvent setJournalSequence(long value) {
+        fingerprint.touch(tag.getOffset() + 2);
+        journalSequence_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, SnapshotEvent.class, 3, BuiltinEventType.SnapshotEvent);
+    }
+
+    public SnapshotEvent() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected SnapshotEvent(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        name_ = "";
+        id_ = 0;
+        journalSequence_ = 0;
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        SnapshotEvent o = (SnapshotEvent)other;
+        if (!Objects.equals(name_, o.name_)) {
+            return false;
+        }
+        if (id_ != o.id_) {
+            return false;
+        }
+        if (journalSequence_ != o.journalSequence_) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(name_);
+        }
+        if (touched.get(1)) {
+            hash.update(id_);
+        }
+        if (touched.get(2)) {
+            hash.update(journalSequence_);
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        SnapshotEvent o = (SnapshotEvent)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (!Objects.equals(name_, o.name_)) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (id_ != o.id_) {
+                return false;
+            }
+        }
+        if (touched.get(2)) {
+            if (journalSequence_ != o.journalSequence_) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" Name: ");
+        sb.append(name_);
+        sb.append(", Id: ");
+        sb.append(id_);
+        sb.append(", JournalSequence: ");
+        sb.append(journalSequence_);
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            name_ = deserializer.readString();
+        }
+        if (touched.get(1)) {
+            id_ = deserializer.readLong();
+        }
+        if (touched.get(2)) {
+            journalSequence_ = deserializer.readLong();
+        }
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthString(name_);
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthLong(id_);
+        }
+        if (touched.get(2)) {
+            length += Serializer.lengthLong(journalSequence_);
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeString(name_);
+        }
+        if (touched.get(1)) {
+            serializer.writeLong(id_);
+        }
+        if (touched.get(2)) {
+            serializer.writeLong(journalSequence_);
+        }
+    }
+}
@@ -50,7 +50,7 @@ public class TimeoutEvent extends Event {
             return false;
         }
         TimeoutEvent o = (TimeoutEvent)other;
-        if (key_ != o.key_) {
+        if (!Objects.equals(key_, o.key_)) {
             return false;
         }
         if (intParam_ != o.intParam_) {
@@ -80,7 +80,7 @@ public class TimeoutEvent extends Event {
         TimeoutEvent o = (TimeoutEvent)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (key_ != o.key_) {
+            if (!Objects.equals(key_, o.key_)) {
                 return false;
             }
         }
@@ -46,7 +46,7 @@ public class HandshakeReq extends Event {
             return false;
         }
         HandshakeReq o = (HandshakeReq)other;
-        if (data_ != o.data_) {
+        if (!Arrays.equals(data_, o.data_)) {
             return false;
         }
         return true;
@@ -70,7 +70,7 @@ public class HandshakeReq extends Event {
         HandshakeReq o = (HandshakeReq)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (data_ != o.data_) {
+            if (!Arrays.equals(data_, o.data_)) {
                 return false;
             }
         }
@@ -43,7 +43,7 @@ public class LinkSessionConnected extends Event {
     }
 
     static {
-        tag = new Tag(Event.tag, LinkSessionConnected.class, 3, LinkEventType.LinkSessionConnected);
+        tag = new Tag(Event.tag, LinkSessionConnected.class, 3, LinkEventType.LinkSessionConnected, Event.Priority.High);
     }
 
     public LinkSessionConnected() {
@@ -60,13 +60,13 @@ public class LinkSessionConnected extends Event {
             return false;
         }
         LinkSessionConnected o = (LinkSessionConnected)other;
-        if (linkName_ != o.linkName_) {
+        if (!Objects.equals(linkName_, o.linkName_)) {
             return false;
         }
         if (result_ != o.result_) {
             return false;
         }
-        if (context_ != o.context_) {
+        if (!Objects.equals(context_, o.context_)) {
             return false;
         }
         return true;
@@ -96,7 +96,7 @@ public class LinkSessionConnected extends Event {
         LinkSessionConnected o = (LinkSessionConnected)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (linkName_ != o.linkName_) {
+            if (!Objects.equals(linkName_, o.linkName_)) {
                 return false;
             }
         }
@@ -106,7 +106,7 @@ public class LinkSessionConnected extends Event {
             }
         }
         if (touched.get(2)) {
-            if (context_ != o.context_) {
+            if (!Objects.equals(context_, o.context_)) {
                 return false;
             }
         }
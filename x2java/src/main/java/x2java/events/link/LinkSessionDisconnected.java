@@ -43,7 +43,7 @@ public class LinkSessionDisconnected extends Event {
     }
 
     static {
-        tag = new Tag(Event.tag, LinkSessionDisconnected.class, 3, LinkEventType.LinkSessionDisconnected);
+        tag = new Tag(Event.tag, LinkSessionDisconnected.class, 3, LinkEventType.LinkSessionDisconnected, Event.Priority.High);
     }
 
     public LinkSessionDisconnected() {
@@ -60,13 +60,13 @@ public class LinkSessionDisconnected extends Event {
             return false;
         }
         LinkSessionDisconnected o = (LinkSessionDisconnected)other;
-        if (linkName_ != o.linkName_) {
+        if (!Objects.equals(linkName_, o.linkName_)) {
             return false;
         }
         if (handle_ != o.handle_) {
             return false;
         }
-        if (context_ != o.context_) {
+        if (!Objects.equals(context_, o.context_)) {
             return false;
         }
         return true;
@@ -96,7 +96,7 @@ public class LinkSessionDisconnected extends Event {
         LinkSessionDisconnected o = (LinkSessionDisconnected)other;
         Capo touched = fingerprint.capo(tag.getOffset());
         if (touched.get(0)) {
-            if (linkName_ != o.linkName_) {
+            if (!Objects.equals(linkName_, o.linkName_)) {
                 return false;
             }
         }
@@ -106,7 +106,7 @@ public class LinkSessionDisconnected extends Event {
             }
         }
         if (touched.get(2)) {
-            if (context_ != o.context_) {
+            if (!Objects.equals(context_, o.context_)) {
                 return false;
             }
         }
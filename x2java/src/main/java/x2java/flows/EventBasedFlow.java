@@ -3,18 +3,286 @@
 
 package x2java.flows;
 
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import x2java.*;
 
 /**  */
 public abstract class EventBasedFlow extends Flow {
+    /** What to do with an event fed into a flow whose queue is full. */
+    public static enum OverflowPolicy {
+        /** Blocks the feeding thread until the queue has room. */
+        Block,
+        /** Drops the incoming event. */
+        DropNewest,
+        /** Drops the oldest queued event to make room. */
+        DropOldest,
+        /** Drops the incoming event only if it is of a droppable type, while
+         *  any other events are queued beyond the capacity.
+         */
+        DropByType,
+        /** Drops the incoming event and notifies the overflow handler. */
+        Reject
+    }
+
+    /** Notified of the events rejected by a flow whose queue is full. */
+    public static interface OverflowHandler {
+        void onOverflow(Flow flow, Event e);
+    }
+
     protected BlockingQueue<Event> queue;
     protected final Object syncRoot = new Object();
+
+    // Whether a heartbeat event is queued but not yet dispatched
+    private final AtomicBoolean heartbeatPending = new AtomicBoolean();
+
+    private volatile int capacity;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.Block;
+    private volatile OverflowHandler overflowHandler;
+    // Type ids of the events droppable under DropByType, copied on write
+    private volatile Set<Integer> droppableTypes = Collections.emptySet();
+    // Priorities overriding those of the event types, copied on write
+    private volatile Map<Integer, Event.Priority> priorities =
+        Collections.emptyMap();
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean saturated = new AtomicBoolean();
     
     protected EventBasedFlow() {
-        queue = new BlockingQueue<Event>();
+        queue = new BlockingQueue<Event>(Event.Priority.values().length);
+        queue.weight(Event.Priority.Normal.ordinal(), 256);
+        queue.weight(Event.Priority.Low.ordinal(), 64);
+    }
+
+    /** Sets the dispatch priority of the events of the specified type in
+     *  this flow, overriding the one declared for the type.
+     */
+    public EventBasedFlow priority(int typeId, Event.Priority priority) {
+        synchronized (syncRoot) {
+            Map<Integer, Event.Priority> map =
+                new HashMap<Integer, Event.Priority>(priorities);
+            map.put(typeId, priority);
+            priorities = map;
+        }
+        return this;
+    }
+
+    /** Sets the maximum number of the events of the specified priority to be
+     *  dispatched before the flow checks back for events of higher priority,
+     *  or 0 for no limit. Defaults to none for High, 256 for Normal and 64
+     *  for Low.
+     */
+    public EventBasedFlow weight(Event.Priority priority, int value) {
+        queue.weight(priority.ordinal(), value);
+        return this;
+    }
+
+    /** Gets the queue capacity of this flow. */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Sets the maximum number of the events queued in this flow, or 0 for no
+     *  limit. A flow reaching its capacity applies its overflow policy to the
+     *  events fed meanwhile; under Block, it also makes links stop reading
+     *  until it drains, while the other policies shed load instead.
+     */
+    public EventBasedFlow capacity(int value) {
+        queue.capacity(value);
+        capacity = value;
+        return this;
+    }
+
+    /** Gets the overflow policy of this flow. */
+    public OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /** Sets the overflow policy of this flow. Block never applies to the
+     *  events fed by the flow's own thread, which are always queued.
+     */
+    public EventBasedFlow overflowPolicy(OverflowPolicy value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        overflowPolicy = value;
+        return this;
+    }
+
+    /** Sets the handler to be notified of the events rejected under the
+     *  Reject policy. Raw events are released after it returns.
+     */
+    public EventBasedFlow overflowHandler(OverflowHandler value) {
+        overflowHandler = value;
+        return this;
+    }
+
+    /** Makes the events of the specified type droppable under DropByType. */
+    public EventBasedFlow droppable(int typeId) {
+        synchronized (syncRoot) {
+            Set<Integer> types = new HashSet<Integer>(droppableTypes);
+            types.add(typeId);
+            droppableTypes = types;
+        }
+        return this;
+    }
+
+    /** Gets the number of the events dropped so far on overflow. */
+    public long dropped() {
+        return dropped.get();
     }
     
+    /** Enables or disables the dispatch metrics of this flow, along with the
+     *  enqueue times recorded by its queue.
+     */
+    @Override
+    public Flow metrics(boolean enabled) {
+        synchronized (this) {
+            queue.timestamps(enabled);
+            return super.metrics(enabled);
+        }
+    }
+
+    @Override
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int maxQueueDepth() {
+        return queue.maxSize();
+    }
+
+    @Override
+    public void resetMaxQueueDepth() {
+        queue.resetMaxSize();
+    }
+
+    /** Enqueues the specified event. A heartbeat event is dropped while
+     *  another one is still waiting in the queue, so that a busy flow never
+     *  piles up heartbeats.
+     */
     public void feed(Event e) {
-        queue.enqueue(e);
+        if (e instanceof HeartbeatEvent &&
+                !heartbeatPending.compareAndSet(false, true)) {
+            return;
+        }
+        int lane = laneOf(e);
+        if (capacity == 0) {
+            queue.enqueue(e, lane);
+            return;
+        }
+
+        boolean queued = true;
+        switch (overflowPolicy) {
+            case Block:
+                if (Flow.current() == this) {
+                    queue.enqueue(e, lane);
+                }
+                else {
+                    queued = queue.put(e, lane);
+                }
+                break;
+            case DropOldest:
+                Event evicted = queue.offerEvicting(e, lane);
+                if (evicted == e) {
+                    queued = false;
+                }
+                else if (evicted != null) {
+                    drop(evicted);
+                }
+                break;
+            case DropByType:
+                if (droppableTypes.contains(e._getTypeId())) {
+                    queued = queue.offer(e, lane);
+                }
+                else {
+                    queue.enqueue(e, lane);
+                }
+                break;
+            default:
+                queued = queue.offer(e, lane);
+                break;
+        }
+
+        if (!queued) {
+            if (overflowPolicy == OverflowPolicy.Reject) {
+                OverflowHandler handler = overflowHandler;
+                if (handler != null) {
+                    handler.onOverflow(this, e);
+                }
+            }
+            drop(e);
+        }
+        if (overflowPolicy == OverflowPolicy.Block &&
+                queue.size() >= capacity && saturated.compareAndSet(false, true)) {
+            signalSaturated();
+            // The consumer may have drained the queue before the flag was
+            // set, finding nothing to clear.
+            if (queue.size() < capacity && saturated.compareAndSet(true, false)) {
+                signalDrained();
+            }
+        }
+    }
+
+    /** Enqueues the specified event regardless of the capacity and the
+     *  overflow policy, without signaling saturation, so that recorded events
+     *  replayed before the flow starts dispatching are neither dropped nor
+     *  waited on.
+     */
+    public void replay(Event e) {
+        queue.enqueue(e, laneOf(e));
+    }
+
+    /** Takes out all the queued events into the specified list, waiting for
+     *  one if there is none. Returns 0 when the queue is closed.
+     */
+    protected int dequeue(List<Event> events) {
+        int n = queue.dequeue(events);
+        if (saturated.compareAndSet(true, false)) {
+            signalDrained();
+        }
+        return n;
+    }
+
+    /** Gets the enqueue time of the event at the specified index among those
+     *  taken out by the last dequeue() call, or 0 if unknown.
+     */
+    protected long enqueueTime(int index) {
+        return (metrics != null ? queue.enqueueTime(index) : 0);
+    }
+
+    @Override
+    protected void dispatch(Event e, long enqueueTime) {
+        if (e instanceof HeartbeatEvent) {
+            heartbeatPending.set(false);
+        }
+        super.dispatch(e, enqueueTime);
+    }
+
+    // Gets the queue lane of the specified event.
+    private int laneOf(Event e) {
+        Map<Integer, Event.Priority> map = priorities;
+        if (!map.isEmpty()) {
+            Event.Priority priority = map.get(e._getTypeId());
+            if (priority != null) {
+                return priority.ordinal();
+            }
+        }
+        return ((Event.Tag)e._getTypeTag()).getPriority().ordinal();
+    }
+
+    // Discards the specified event that is not to be dispatched.
+    private void drop(Event e) {
+        dropped.incrementAndGet();
+        if (e instanceof HeartbeatEvent) {
+            heartbeatPending.set(false);
+        }
+        else if (e instanceof RawEvent) {
+            // Release the reference retained by the hub.
+            ((RawEvent)e).release();
+        }
     }
 }
@@ -24,7 +24,7 @@ public class SingleThreadFlow extends EventBasedFlow implements Runnable {
             if (thread == null) {
                 setup();
                 caseStack.setup(this);
-                thread = new Thread(this);
+                thread = newThread(this);
                 thread.start();
                 // enqueue FlowStart
             }
@@ -61,11 +61,11 @@ public class SingleThreadFlow extends EventBasedFlow implements Runnable {
         List<Event> dequeued = events.get();
 
         while (true) {
-            if (queue.dequeue(dequeued) == 0) {
+            if (dequeue(dequeued) == 0) {
                 break;
             }
             for (int i = 0, count = dequeued.size(); i < count; ++i) {
-                dispatch(dequeued.get(i));
+                dispatch(dequeued.get(i), enqueueTime(i));
             }
             dequeued.clear();
         }
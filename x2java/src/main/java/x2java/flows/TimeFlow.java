@@ -0,0 +1,342 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.flows;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+import x2java.*;
+import x2java.util.*;
+
+/** Time-based event reservation flow, built on a hashed timing wheel.
+ *  <p>
+ *  Reserved events, typically TimeoutEvent, are fed back into the flow that
+ *  reserved them (or posted up to the hub when reserved outside any flow)
+ *  once they are due. Reservation and cancellation take constant time and
+ *  allocate nothing in the steady state, as timer entries are pooled and
+ *  identified by plain long tokens. A single ticker thread drives the wheel
+ *  with the resolution of one tick.
+ */
+public class TimeFlow extends Flow implements Runnable {
+    /** Default tick duration in milliseconds. */
+    public static final int DEFAULT_TICK_MILLIS = 10;
+    /** Default number of wheel slots. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static TimeFlow instance;
+
+    private final Object syncRoot = new Object();
+
+    private final long tickNanos;
+    private final int mask;
+    // Head entries of the doubly-linked slot lists
+    private final Entry[] wheel;
+
+    // Pooled timer entries, indexed by the lower half of tokens
+    private Entry[] entries;
+    private Entry free;
+    private int numEntries;
+    private int numReserved;
+
+    // Number of ticks processed so far
+    private long tick;
+    private Thread thread;
+    private volatile boolean running;
+
+    // Due events and their targets, reused on every tick
+    private final List<Event> dueEvents = new ArrayList<Event>();
+    private final List<Flow> dueTargets = new ArrayList<Flow>();
+
+    private static final class Entry {
+        final int index;
+        int generation;
+        Event event;
+        Flow target;
+        long deadline;  // in ticks
+        long period;  // in ticks, or 0 for one-shot
+        Entry prev;
+        Entry next;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        long token() {
+            return (((long)generation << 32) | index);
+        }
+    }
+
+    public TimeFlow() {
+        this(TimeFlow.class.getName());
+    }
+
+    public TimeFlow(String name) {
+        this(name, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /** Constructs a new time flow with the specified tick duration in
+     *  milliseconds, and the number of wheel slots rounded up to a power of 2.
+     */
+    public TimeFlow(String name, int tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        tickNanos = tickMillis * 1000000L;
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        wheel = new Entry[size];
+        entries = new Entry[64];
+    }
+
+    /** Gets the default time flow, starting it up on the first call. */
+    public static TimeFlow instance() {
+        synchronized (TimeFlow.class) {
+            if (instance == null) {
+                instance = new TimeFlow("TimeFlow.Default");
+                instance.startup();
+            }
+            return instance;
+        }
+    }
+
+    /** Time flows take no events from the hub. */
+    @Override
+    public void feed(Event e) {
+    }
+
+    /** Gets the number of the currently reserved events. */
+    public int reserved() {
+        synchronized (syncRoot) {
+            return numReserved;
+        }
+    }
+
+    /** Reserves the specified event to be fed into the current flow after the
+     *  given delay in milliseconds, returning a token to cancel it.
+     */
+    public long reserve(Event e, long delayMillis) {
+        return reserve(Flow.current(), e, delayMillis, 0);
+    }
+
+    /** Reserves the specified event to be fed into the given flow after the
+     *  given delay in milliseconds, returning a token to cancel it.
+     */
+    public long reserve(Flow target, Event e, long delayMillis) {
+        return reserve(target, e, delayMillis, 0);
+    }
+
+    /** Reserves the specified event to be fed into the current flow
+     *  repeatedly at the given interval in milliseconds, until cancelled.
+     */
+    public long reserveRepetition(Event e, long intervalMillis) {
+        return reserve(Flow.current(), e, intervalMillis, intervalMillis);
+    }
+
+    /** Reserves the specified event to be fed into the given flow repeatedly
+     *  at the given interval in milliseconds, until cancelled.
+     */
+    public long reserveRepetition(Flow target, Event e, long intervalMillis) {
+        return reserve(target, e, intervalMillis, intervalMillis);
+    }
+
+    /** Cancels the reservation identified by the specified token, returning
+     *  false if it has already fired or been cancelled.
+     */
+    public boolean cancel(long token) {
+        int index = (int)token;
+        int generation = (int)(token >>> 32);
+        synchronized (syncRoot) {
+            if (index < 0 || index >= numEntries) {
+                return false;
+            }
+            Entry entry = entries[index];
+            if (entry.generation != generation || entry.event == null) {
+                return false;
+            }
+            unlink(entry);
+            recycle(entry);
+            return true;
+        }
+    }
+
+    private long reserve(Flow target, Event e, long delayMillis, long periodMillis) {
+        if (e == null) {
+            throw new IllegalArgumentException();
+        }
+        long ticks = toTicks(delayMillis);
+        long period = (periodMillis > 0 ? toTicks(periodMillis) : 0);
+        synchronized (syncRoot) {
+            Entry entry = allocate();
+            entry.event = e;
+            entry.target = target;
+            entry.deadline = tick + ticks;
+            entry.period = period;
+            link(entry);
+            ++numReserved;
+            return entry.token();
+        }
+    }
+
+    // Converts the specified milliseconds into ticks, rounding up.
+    private long toTicks(long millis) {
+        long ticks = ((millis * 1000000L) + tickNanos - 1) / tickNanos;
+        return (ticks < 1 ? 1 : ticks);
+    }
+
+    private Entry allocate() {
+        Entry entry = free;
+        if (entry != null) {
+            free = entry.next;
+            entry.next = null;
+            return entry;
+        }
+        if (numEntries == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length << 1);
+        }
+        entry = new Entry(numEntries);
+        entry.generation = 1;
+        entries[numEntries++] = entry;
+        return entry;
+    }
+
+    private void recycle(Entry entry) {
+        entry.event = null;
+        entry.target = null;
+        ++entry.generation;
+        entry.prev = null;
+        entry.next = free;
+        free = entry;
+        --numReserved;
+    }
+
+    private void link(Entry entry) {
+        int slot = (int)(entry.deadline & mask);
+        Entry head = wheel[slot];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        wheel[slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        }
+        else {
+            wheel[(int)(entry.deadline & mask)] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    // Advances the wheel by one tick, collecting the due events.
+    private void advance() {
+        ++tick;
+        Entry entry = wheel[(int)(tick & mask)];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.deadline <= tick) {
+                unlink(entry);
+                dueEvents.add(entry.event);
+                dueTargets.add(entry.target);
+                if (entry.period > 0) {
+                    entry.deadline = tick + entry.period;
+                    link(entry);
+                }
+                else {
+                    recycle(entry);
+                }
+            }
+            entry = next;
+        }
+    }
+
+    @Override
+    public Flow startup() {
+        synchronized (syncRoot) {
+            if (thread == null) {
+                setup();
+                running = true;
+                thread = newThread(this);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void shutdown() {
+        Thread t;
+        synchronized (syncRoot) {
+            if (thread == null) {
+                return;
+            }
+            t = thread;
+            running = false;
+        }
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        }
+        catch (InterruptedException ie) { }
+        synchronized (syncRoot) {
+            thread = null;
+            for (int i = 0; i < wheel.length; ++i) {
+                Entry entry = wheel[i];
+                while (entry != null) {
+                    Entry next = entry.next;
+                    recycle(entry);
+                    entry = next;
+                }
+                wheel[i] = null;
+            }
+            teardown();
+        }
+    }
+
+    public void run() {
+        long start = System.nanoTime();
+        long ticks = 0;
+        while (running) {
+            long wait = start + (ticks + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            long elapsed = (System.nanoTime() - start) / tickNanos;
+            synchronized (syncRoot) {
+                for (; ticks < elapsed; ++ticks) {
+                    advance();
+                }
+            }
+            for (int i = 0, count = dueEvents.size(); i < count; ++i) {
+                Flow target = dueTargets.get(i);
+                Event e = dueEvents.get(i);
+                try {
+                    if (target != null) {
+                        target.feed(e);
+                    }
+                    else {
+                        Hub.post(e);
+                    }
+                }
+                catch (Exception ex) {
+                    Log.error("TimeFlow.run : error feeding %s : %s", e, ex);
+                }
+            }
+            dueEvents.clear();
+            dueTargets.clear();
+        }
+    }
+}
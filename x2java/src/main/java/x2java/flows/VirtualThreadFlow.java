@@ -0,0 +1,190 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.flows;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import x2java.*;
+import x2java.util.*;
+
+/** Flow that dispatches each event on a thread of its own, so that handlers
+ *  may block without holding up the flow.
+ *  <p>
+ *  Events are dispatched one at a time in their queued order, as a handler
+ *  holds the sequencing gate of the flow until it returns. A handler about
+ *  to block calls await() or blocking(), which lets the next events through
+ *  while it waits, and then rejoins the sequence. Handlers therefore never
+ *  run concurrently with each other, and cases need no extra locking.
+ *  <p>
+ *  Dispatch threads are virtual threads on JDK 21 and later, and pooled
+ *  platform threads otherwise.
+ */
+public class VirtualThreadFlow extends EventBasedFlow implements Runnable {
+    // The flow whose gate is held by the current dispatch thread
+    private static ThreadLocal<VirtualThreadFlow> gateHolder =
+        new ThreadLocal<VirtualThreadFlow>();
+
+    protected Thread thread;
+
+    private ExecutorService executor;
+    private final Semaphore gate = new Semaphore(1, true);
+
+    public VirtualThreadFlow() {
+    }
+
+    public VirtualThreadFlow(String name) {
+        this.name = name;
+    }
+
+    /** Waits for the specified future to complete, letting other events of
+     *  the current flow be dispatched in the meantime.
+     */
+    public static <T> T await(Future<T> future)
+            throws InterruptedException, ExecutionException {
+        VirtualThreadFlow flow = gateHolder.get();
+        if (flow == null) {
+            return future.get();
+        }
+        flow.gate.release();
+        try {
+            return future.get();
+        }
+        finally {
+            flow.gate.acquireUninterruptibly();
+        }
+    }
+
+    /** Runs the specified blocking action, letting other events of the
+     *  current flow be dispatched in the meantime.
+     */
+    public static <T> T blocking(Callable<T> action) throws Exception {
+        VirtualThreadFlow flow = gateHolder.get();
+        if (flow == null) {
+            return action.call();
+        }
+        flow.gate.release();
+        try {
+            return action.call();
+        }
+        finally {
+            flow.gate.acquireUninterruptibly();
+        }
+    }
+
+    @Override
+    public Flow startup() {
+        synchronized (syncRoot) {
+            if (thread == null) {
+                setup();
+                caseStack.setup(this);
+                executor = newExecutor();
+                thread = newThread(this);
+                thread.start();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (syncRoot) {
+            if (thread == null) {
+                return;
+            }
+            queue.close();
+            try {
+                thread.join();
+            }
+            catch (InterruptedException ie) { }
+            thread = null;
+
+            // Let the in-flight handlers finish.
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie) { }
+            executor = null;
+
+            caseStack.teardown(this);
+            teardown();
+        }
+    }
+
+    public void run() {
+        List<Event> dequeued = new ArrayList<Event>();
+
+        while (true) {
+            if (dequeue(dequeued) == 0) {
+                break;
+            }
+            for (int i = 0, count = dequeued.size(); i < count; ++i) {
+                // Each event waits its turn to be dispatched.
+                gate.acquireUninterruptibly();
+                try {
+                    executor.execute(
+                        new Dispatch(dequeued.get(i), enqueueTime(i)));
+                }
+                catch (RejectedExecutionException ree) {
+                    gate.release();
+                    Log.error("%s dispatch rejected", name);
+                }
+            }
+            dequeued.clear();
+        }
+    }
+
+    // Dispatches a single event on its own thread, holding the gate.
+    private final class Dispatch implements Runnable {
+        private final Event e;
+        private final long enqueueTime;
+
+        Dispatch(Event e, long enqueueTime) {
+            this.e = e;
+            this.enqueueTime = enqueueTime;
+        }
+
+        public void run() {
+            current.set(VirtualThreadFlow.this);
+            equivalent.set(new Event.Equivalent());
+            handlerChain.set(new ArrayList<Handler>());
+            gateHolder.set(VirtualThreadFlow.this);
+            try {
+                dispatch(e, enqueueTime);
+            }
+            finally {
+                gateHolder.set(null);
+                handlerChain.set(null);
+                equivalent.set(null);
+                current.set(null);
+
+                gate.release();
+            }
+        }
+    }
+
+    // Creates a virtual thread per task executor if the runtime supports it,
+    // or falls back to a cached platform thread pool.
+    private ExecutorService newExecutor() {
+        try {
+            Method method = Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        }
+        catch (Exception e) {
+            Log.info("%s virtual threads not available, using platform threads",
+                name);
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,555 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.Checksum;
+
+import x2java.*;
+import x2java.util.*;
+
+import static x2java.journal.JournalFormat.*;
+
+/** Flow that appends the events posted to the hub to an append-only journal
+ *  of memory-mapped segment files, for durability and replay.
+ *  <p>
+ *  Feeding an event serializes it into the current batch with its timestamp,
+ *  so that the record holds the event as it was posted, whatever happens to
+ *  the event object afterward, and the posting threads never wait for the
+ *  disk. The journal thread copies the batched records into the current
+ *  segment, rolling over to a new one once it is full, and forces the
+ *  written records out to the storage device every syncEvery() records or
+ *  syncInterval() milliseconds. Without either, they reach the device
+ *  whenever the operating system writes them back, which survives a process
+ *  crash but not a power loss.
+ *  <p>
+ *  On startup the journal recovers the end of the last segment, discarding
+ *  any torn record, and goes on appending to it. Heartbeats and the events
+ *  replayed by a JournalReader are not journaled.
+ *  <p>
+ *  A flow whose state must match the journal record for record, such as one
+ *  taking snapshots, can be left out of the hub and fed by the journal
+ *  instead; see forward().
+ */
+public class Journal extends Flow implements Runnable {
+    /** Default segment file size in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    /** Default interval in milliseconds between forced writes. */
+    public static final int DEFAULT_SYNC_INTERVAL = 1000;
+
+    // Set on the threads replaying a journal into the hub
+    static final ThreadLocal<Boolean> replaying = new ThreadLocal<Boolean>();
+    // Timestamp marking a batched event only to be forwarded
+    private static final long NOT_JOURNALED = -1;
+
+    private final File directory;
+
+    private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile int syncInterval = DEFAULT_SYNC_INTERVAL;
+    private volatile int syncEvery;
+    // Type ids of the events to journal, copied on write, or empty for all
+    private volatile Set<Integer> typeIds = Collections.emptySet();
+
+    private final Object syncRoot = new Object();
+    private Batch batchToWrite;
+    private Batch batchWriting;
+    private boolean waiting;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile Flow forward;
+
+    // Writer state, touched only by the journal thread once started
+    private MappedByteBuffer segment;
+    private ByteBuffer segmentView;
+    private int segmentIndex;
+    private volatile long nextSequence;
+    private int syncedPosition;
+    private int unsynced;
+    private long lastSync;
+    private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    private final Checksum crc = newChecksum();
+
+    /** Constructs a new journal with the specified name, which also prefixes
+     *  its segment files in the given directory.
+     */
+    public Journal(String name, File directory) {
+        this.name = name;
+        this.directory = directory;
+    }
+
+    /** Gets the directory of the segment files. */
+    public File directory() {
+        return directory;
+    }
+
+    /** Gets the segment file size in bytes. */
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /** Sets the segment file size in bytes, for the segments created
+     *  afterward.
+     */
+    public Journal segmentSize(int value) {
+        if (value < 4096) {
+            throw new IllegalArgumentException();
+        }
+        segmentSize = value;
+        return this;
+    }
+
+    /** Gets the maximum interval in milliseconds between forced writes. */
+    public int syncInterval() {
+        return syncInterval;
+    }
+
+    /** Sets the maximum interval in milliseconds between forced writes, or 0
+     *  for none.
+     */
+    public Journal syncInterval(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        syncInterval = value;
+        return this;
+    }
+
+    /** Gets the maximum number of records written between forced writes. */
+    public int syncEvery() {
+        return syncEvery;
+    }
+
+    /** Sets the maximum number of records written between forced writes, or
+     *  0 for no limit. 1 forces out every batch as soon as it is written.
+     */
+    public Journal syncEvery(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        syncEvery = value;
+        return this;
+    }
+
+    /** Restricts the journal to the events of the specified type, in addition
+     *  to the types added before. Journals all the events by default.
+     */
+    public Journal record(int typeId) {
+        synchronized (syncRoot) {
+            Set<Integer> types = new HashSet<Integer>(typeIds);
+            types.add(typeId);
+            typeIds = types;
+        }
+        return this;
+    }
+
+    /** Gets the flow fed with the events in the journal order, if any. */
+    public Flow forward() {
+        return forward;
+    }
+
+    /** Feeds all the events fed to the journal, journaled or not, on to the
+     *  specified flow, each after its record is written, before the journal
+     *  starts. The flow then sees the events in the same order as the
+     *  journal, which concurrent posters cannot guarantee through the hub, so
+     *  it is to be left out of the hub. The journal starts the flow after
+     *  recovering its segments and before taking in any event, and stops it
+     *  after the last write.
+     */
+    public Journal forward(Flow flow) {
+        forward = flow;
+        return this;
+    }
+
+    /** Gets the sequence number of the next record to be written. */
+    public long sequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public void feed(Event e) {
+        if (!running) {
+            return;
+        }
+        Flow target = forward;
+        if (e instanceof HeartbeatEvent || replaying.get() != null) {
+            // Not journaled, hence in no particular order.
+            if (target != null) {
+                retain(e);
+                target.feed(e);
+            }
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int typeId = typeIdOf(e);
+        Set<Integer> types = typeIds;
+        boolean journaled = (types.isEmpty() || types.contains(typeId));
+        if (!journaled && target == null) {
+            return;
+        }
+        synchronized (syncRoot) {
+            if (!running) {
+                return;
+            }
+            Batch batch = batchToWrite;
+            int length = 0;
+            if (journaled) {
+                int start = batch.buffer.length();
+                try {
+                    e.serialize(new Serializer(batch.buffer));
+                }
+                catch (RuntimeException ex) {
+                    Log.error("%s error journaling %s : %s", name, e, ex);
+                    // The partial bytes are skipped over.
+                    now = NOT_JOURNALED;
+                }
+                length = batch.buffer.length() - start;
+            }
+            else {
+                // Batched only to be forwarded in order.
+                now = NOT_JOURNALED;
+            }
+            if (target != null) {
+                // Keep the slice alive until it is forwarded.
+                retain(e);
+            }
+            batch.add((target != null ? e : null), typeId, length, now);
+            if (waiting) {
+                waiting = false;
+                syncRoot.notify();
+            }
+        }
+    }
+
+    @Override
+    public Flow startup() {
+        synchronized (syncRoot) {
+            if (thread == null) {
+                try {
+                    open();
+                }
+                catch (IOException ioe) {
+                    throw new IllegalStateException(name + " open failed", ioe);
+                }
+                setup();
+                Flow target = forward;
+                if (target != null) {
+                    // Lets it replay the recovered records ahead of the
+                    // events to come.
+                    target.startup();
+                }
+                running = true;
+                thread = newThread(this);
+                thread.start();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void shutdown() {
+        Thread t;
+        synchronized (syncRoot) {
+            if (thread == null) {
+                return;
+            }
+            t = thread;
+            running = false;
+            syncRoot.notify();
+        }
+        try {
+            t.join();
+        }
+        catch (InterruptedException ie) { }
+        Flow target = forward;
+        if (target != null) {
+            target.shutdown();
+        }
+        synchronized (syncRoot) {
+            thread = null;
+            segment = null;
+            segmentView = null;
+            if (batchToWrite != null) {
+                batchToWrite.close();
+                batchWriting.close();
+                batchToWrite = null;
+                batchWriting = null;
+            }
+            teardown();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            boolean stopping;
+            synchronized (syncRoot) {
+                if (batchToWrite.count == 0 && running) {
+                    waiting = true;
+                    try {
+                        syncRoot.wait(syncWait());
+                    }
+                    catch (InterruptedException ie) { }
+                    waiting = false;
+                }
+                stopping = !running;
+                Batch batch = batchWriting;
+                batchWriting = batchToWrite;
+                batchToWrite = batch;
+            }
+
+            Batch batch = batchWriting;
+            Flow target = forward;
+            for (int i = 0; i < batch.count; ++i) {
+                int length = batch.lengths[i];
+                long time = batch.times[i];
+                if (time != NOT_JOURNALED) {
+                    try {
+                        append(batch.buffer, length, batch.typeIds[i], time);
+                    }
+                    catch (Exception ex) {
+                        Log.error("%s error journaling a %d-byte record : %s",
+                            name, length, ex);
+                    }
+                }
+                batch.buffer.shrink(length);
+                Event e = batch.events.get(i);
+                if (e != null) {
+                    // The flow releases the slice after dispatching it.
+                    target.feed(e);
+                }
+            }
+            batch.clear();
+
+            sync(stopping);
+            if (stopping) {
+                // Events fed after the last swap are left out.
+                synchronized (syncRoot) {
+                    release(batchToWrite.events);
+                    batchToWrite.clear();
+                }
+                return;
+            }
+        }
+    }
+
+    // Gets the time in milliseconds to wait for events before the next
+    // forced write is due, or 0 to wait indefinitely.
+    private long syncWait() {
+        int interval = syncInterval;
+        if (interval == 0 || unsynced == 0) {
+            return 0;
+        }
+        long wait = lastSync + interval - System.currentTimeMillis();
+        return Math.max(1, wait);
+    }
+
+    // Forces out the records written since the last forced write, if due.
+    private void sync(boolean force) {
+        if (unsynced == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int every = syncEvery;
+        int interval = syncInterval;
+        if (force || (every > 0 && unsynced >= every) ||
+                (interval > 0 && now - lastSync >= interval)) {
+            // Only the pages dirtied since the last force are written out.
+            segment.force();
+            syncedPosition = segment.position();
+            unsynced = 0;
+            lastSync = now;
+        }
+    }
+
+    // Writes out a record of the specified length at the front of the given
+    // buffer into the current segment.
+    private void append(Buffer buffer, int length, int typeId, long timestamp)
+            throws IOException {
+        int recordLength = RECORD_HEADER_LENGTH + length;
+        if (recordLength > segmentSize - SEGMENT_HEADER_LENGTH) {
+            Log.warn("%s %d-byte event too large, dropped type %d", name,
+                length, typeId);
+            return;
+        }
+        if (segment.remaining() < recordLength) {
+            roll();
+        }
+
+        int start = segment.position();
+        segment.position(start + RECORD_HEADER_LENGTH);
+        if (length != 0) {
+            buffer.listStartingBuffers(blocks, length);
+        }
+        for (int i = 0, count = blocks.size(); i < count; ++i) {
+            ByteBuffer block = blocks.get(i);
+            segment.put(block);
+            block.clear();  // the buffer is reused for the next batch
+        }
+        blocks.clear();
+        segment.putLong(start + TIMESTAMP_OFFSET, timestamp);
+        segment.putInt(start + TYPE_ID_OFFSET, typeId);
+
+        segmentView.limit(start + recordLength);
+        segmentView.position(start + TIMESTAMP_OFFSET);
+        crc.reset();
+        crc.update(segmentView);
+        segment.putInt(start + CRC_OFFSET, (int)crc.getValue());
+        // Written last, so that readers never see a partial record.
+        segment.putInt(start + LENGTH_OFFSET, length);
+
+        ++nextSequence;
+        ++unsynced;
+    }
+
+    // Opens the last segment to append to, or the first one.
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        if (batchToWrite == null) {
+            batchToWrite = new Batch();
+            batchWriting = new Batch();
+        }
+        lastSync = System.currentTimeMillis();
+        unsynced = 0;
+
+        int[] indexes = listSegments(directory, name);
+        if (indexes.length == 0) {
+            segmentIndex = 0;
+            nextSequence = 0;
+            roll();
+            return;
+        }
+        segmentIndex = indexes[indexes.length - 1];
+        File file = segmentFile(directory, name, segmentIndex);
+        segment = map(file, 0);
+        if (!isValid(segment)) {
+            throw new IOException(file + " is not a journal segment");
+        }
+        segmentView = segment.duplicate();
+
+        // Find the end of the intact records.
+        long sequence = segment.getLong(FIRST_SEQUENCE_OFFSET);
+        int position = SEGMENT_HEADER_LENGTH;
+        int recordLength;
+        while ((recordLength = recordLength(segment, segmentView, position, crc)) > 0) {
+            position += recordLength;
+            ++sequence;
+        }
+        if (position + 4 <= segment.limit() && segment.getInt(position) != 0) {
+            Log.warn("%s discarding a torn record at %s:%d", name,
+                file.getName(), position);
+            for (int i = position; i < segment.limit(); ++i) {
+                segment.put(i, (byte)0);
+            }
+            segment.force();
+        }
+        segment.position(position);
+        syncedPosition = position;
+        nextSequence = sequence;
+        Log.info("%s recovered %s at sequence %d", name, file.getName(), sequence);
+    }
+
+    // Moves on to a new segment.
+    private void roll() throws IOException {
+        if (segment != null) {
+            int position = segment.position();
+            if (position > syncedPosition) {
+                segment.force();
+            }
+            unsynced = 0;
+            lastSync = System.currentTimeMillis();
+        }
+        ++segmentIndex;
+        File file = segmentFile(directory, name, segmentIndex);
+        segment = map(file, segmentSize);
+        segment.putLong(FIRST_SEQUENCE_OFFSET, nextSequence);
+        segment.putInt(VERSION_OFFSET, VERSION);
+        segment.putInt(MAGIC_OFFSET, MAGIC);
+        segment.force();
+        segment.position(SEGMENT_HEADER_LENGTH);
+        segmentView = segment.duplicate();
+        syncedPosition = SEGMENT_HEADER_LENGTH;
+    }
+
+    // Maps the specified file, sizing it first if the size is given.
+    static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (size > 0) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                raf.length());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    // Gets the type id of the specified event, as to be recorded.
+    static int typeIdOf(Event e) {
+        if (e instanceof RawEvent) {
+            return ((RawEvent)e).getRawTypeId();
+        }
+        return e._getTypeId();
+    }
+
+    // Retains the specified event, if it is a raw event.
+    private static void retain(Event e) {
+        if (e instanceof RawEvent) {
+            ((RawEvent)e).retain();
+        }
+    }
+
+    // Releases the raw events in the specified list.
+    private static void release(List<Event> events) {
+        for (int i = 0, count = events.size(); i < count; ++i) {
+            Event e = events.get(i);
+            if (e instanceof RawEvent) {
+                ((RawEvent)e).release();
+            }
+        }
+    }
+
+    // Records serialized back to back, with what is needed to write them out
+    // and forward their events
+    private static final class Batch {
+        final Buffer buffer = new Buffer();
+        // Events to forward, or null entries
+        final List<Event> events = new ArrayList<Event>();
+        int[] lengths = new int[64];
+        int[] typeIds = new int[64];
+        long[] times = new long[64];
+        int count;
+
+        void add(Event e, int typeId, int length, long time) {
+            if (count == lengths.length) {
+                lengths = Arrays.copyOf(lengths, count << 1);
+                typeIds = Arrays.copyOf(typeIds, count << 1);
+                times = Arrays.copyOf(times, count << 1);
+            }
+            lengths[count] = length;
+            typeIds[count] = typeId;
+            times[count] = time;
+            events.add(e);
+            ++count;
+        }
+
+        void clear() {
+            // Returns the blocks beyond the first to the pool.
+            buffer.trim();
+            events.clear();
+            count = 0;
+        }
+
+        void close() {
+            buffer.close();
+        }
+    }
+}
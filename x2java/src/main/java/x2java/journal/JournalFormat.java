@@ -0,0 +1,112 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/** Layout of the journal segment files.
+ *  <p>
+ *  A segment starts with a 16-byte header (magic, version and the sequence
+ *  number of its first record), followed by records of a 20-byte header
+ *  (body length, CRC-32C of the rest, timestamp in milliseconds and event
+ *  type id) and the serialized event body. The length is written last, so
+ *  a zero length marks the end of the written records.
+ */
+final class JournalFormat {
+    static final int MAGIC = 0x78324a4c;  // "x2JL"
+    static final int VERSION = 1;
+
+    static final int SEGMENT_HEADER_LENGTH = 16;
+    static final int RECORD_HEADER_LENGTH = 20;
+
+    // Offsets in the segment header
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int FIRST_SEQUENCE_OFFSET = 8;
+
+    // Offsets in the record header
+    static final int LENGTH_OFFSET = 0;
+    static final int CRC_OFFSET = 4;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int TYPE_ID_OFFSET = 16;
+
+    private JournalFormat() {
+    }
+
+    /** Creates a new checksum of the records and snapshots. */
+    static Checksum newChecksum() {
+        return new CRC32C();
+    }
+
+    /** Gets the file of the segment with the specified index. */
+    static File segmentFile(File directory, String name, int index) {
+        return new File(directory, String.format("%s-%010d.journal", name, index));
+    }
+
+    /** Gets the indexes of the existing segments, in ascending order. */
+    static int[] listSegments(File directory, final String name) {
+        String[] names = directory.list(new FilenameFilter() {
+            public boolean accept(File dir, String fileName) {
+                return fileName.startsWith(name + "-") &&
+                    fileName.endsWith(".journal");
+            }
+        });
+        if (names == null) {
+            return new int[0];
+        }
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (String fileName : names) {
+            String digits = fileName.substring(name.length() + 1,
+                fileName.length() - ".journal".length());
+            try {
+                indexes.add(Integer.parseInt(digits));
+            }
+            catch (NumberFormatException nfe) {
+                // not ours
+            }
+        }
+        Collections.sort(indexes);
+        int[] result = new int[indexes.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = indexes.get(i);
+        }
+        return result;
+    }
+
+    /** Determines whether the specified segment has a valid header. */
+    static boolean isValid(ByteBuffer segment) {
+        return (segment.limit() >= SEGMENT_HEADER_LENGTH &&
+            segment.getInt(MAGIC_OFFSET) == MAGIC &&
+            segment.getInt(VERSION_OFFSET) == VERSION);
+    }
+
+    /** Gets the total length of the complete and intact record at the
+     *  specified position of the segment, or 0 if there is none.
+     *  @param view a spare view on the segment, for the CRC computation.
+     */
+    static int recordLength(ByteBuffer segment, ByteBuffer view, int position,
+            Checksum crc) {
+        if (segment.limit() - position < RECORD_HEADER_LENGTH) {
+            return 0;
+        }
+        int length = segment.getInt(position + LENGTH_OFFSET);
+        if (length <= 0 ||
+                length > segment.limit() - position - RECORD_HEADER_LENGTH) {
+            return 0;
+        }
+        int end = position + RECORD_HEADER_LENGTH + length;
+        view.limit(end);
+        view.position(position + TIMESTAMP_OFFSET);
+        crc.reset();
+        crc.update(view);
+        if ((int)crc.getValue() != segment.getInt(position + CRC_OFFSET)) {
+            return 0;
+        }
+        return RECORD_HEADER_LENGTH + length;
+    }
+}
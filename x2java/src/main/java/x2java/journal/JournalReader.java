@@ -0,0 +1,197 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+import x2java.*;
+import x2java.util.*;
+
+import static x2java.journal.JournalFormat.*;
+
+/** Sequential reader of the records of a journal, from its first segment
+ *  on.
+ *  <p>
+ *  The reader may follow a journal being written: next() returns false at
+ *  the current end of the journal, and true again once more records have
+ *  been written. Events are decoded through the EventFactory, so their
+ *  types must have been registered.
+ */
+public class JournalReader implements Closeable {
+    private final File directory;
+    private final String name;
+
+    private MappedByteBuffer segment;
+    private ByteBuffer segmentView;
+    private int segmentIndex;
+    private int position;
+    private final Checksum crc = newChecksum();
+
+    // Current record
+    private long sequence = -1;
+    private long timestamp;
+    private int typeId;
+    private int bodyPosition;
+    private int bodyLength;
+
+    /** Constructs a new reader of the journal with the specified name in the
+     *  given directory.
+     */
+    public JournalReader(File directory, String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    /** Gets the sequence number of the current record. */
+    public long sequence() {
+        return sequence;
+    }
+
+    /** Gets the timestamp of the current record, in milliseconds since the
+     *  epoch.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /** Gets the event type id of the current record. */
+    public int typeId() {
+        return typeId;
+    }
+
+    /** Moves on to the next record, returning false if there is none yet. */
+    public boolean next() throws IOException {
+        if (segment == null && !openSegment(firstSegmentIndex())) {
+            return false;
+        }
+        while (true) {
+            int recordLength = recordLength(segment, segmentView, position, crc);
+            if (recordLength > 0) {
+                if (sequence < 0) {
+                    sequence = segment.getLong(FIRST_SEQUENCE_OFFSET);
+                }
+                else {
+                    ++sequence;
+                }
+                timestamp = segment.getLong(position + TIMESTAMP_OFFSET);
+                typeId = segment.getInt(position + TYPE_ID_OFFSET);
+                bodyPosition = position + RECORD_HEADER_LENGTH;
+                bodyLength = recordLength - RECORD_HEADER_LENGTH;
+                position += recordLength;
+                return true;
+            }
+            // The writer rolls over only after the last record of a segment.
+            if (!segmentFile(directory, name, segmentIndex + 1).exists() ||
+                    !openSegment(segmentIndex + 1)) {
+                return false;
+            }
+        }
+    }
+
+    /** Skips the records before the specified sequence number, returning
+     *  false if the journal ends before it.
+     */
+    public boolean seek(long target) throws IOException {
+        while (sequence + 1 < target) {
+            if (!next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Decodes the event of the current record, or returns null if its type
+     *  is unknown.
+     */
+    public Event event() throws IOException {
+        if (bodyLength == 0) {
+            throw new IllegalStateException();
+        }
+        byte[] bytes = new byte[bodyLength];
+        ByteBuffer body = segment.duplicate();
+        body.position(bodyPosition);
+        body.get(bytes);
+        Deserializer deserializer = new Deserializer(new Buffer(bytes));
+        Event e = deserializer.create();
+        if (e != null) {
+            e.deserialize(deserializer);
+        }
+        return e;
+    }
+
+    /** Posts the events of the remaining records up to the hub, in order,
+     *  and returns the number of them. Events of unknown types are skipped.
+     *  The replayed events are not journaled again.
+     */
+    public long replay() throws IOException {
+        long count = 0;
+        Journal.replaying.set(Boolean.TRUE);
+        try {
+            while (next()) {
+                Event e = event();
+                if (e == null) {
+                    Log.warn("%s unknown event type %d at sequence %d",
+                        name, typeId, sequence);
+                    continue;
+                }
+                Hub.post(e);
+                ++count;
+            }
+        }
+        finally {
+            Journal.replaying.remove();
+        }
+        return count;
+    }
+
+    public void close() {
+        segment = null;
+        segmentView = null;
+    }
+
+    private int firstSegmentIndex() {
+        int[] indexes = listSegments(directory, name);
+        return (indexes.length != 0 ? indexes[0] : -1);
+    }
+
+    // Maps the segment with the specified index, returning false if it is
+    // not available or valid yet.
+    private boolean openSegment(int index) throws IOException {
+        if (index < 0) {
+            return false;
+        }
+        File file = segmentFile(directory, name, index);
+        MappedByteBuffer mapped;
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        }
+        catch (FileNotFoundException fnfe) {
+            return false;
+        }
+        try {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                raf.length());
+        }
+        finally {
+            raf.close();
+        }
+        if (!isValid(mapped)) {
+            return false;  // being created
+        }
+        segment = mapped;
+        segmentView = mapped.duplicate();
+        segmentIndex = index;
+        position = SEGMENT_HEADER_LENGTH;
+        if (sequence >= 0) {
+            // Continue from the first record of the new segment.
+            sequence = mapped.getLong(FIRST_SEQUENCE_OFFSET) - 1;
+        }
+        return true;
+    }
+}
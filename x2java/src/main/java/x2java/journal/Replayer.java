@@ -0,0 +1,162 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import java.io.*;
+import java.util.concurrent.locks.LockSupport;
+
+import x2java.*;
+import x2java.util.*;
+
+/** Replays an event stream captured by a journal into the hub, or a single
+ *  flow, either at its original timing, scaled by a speed factor, or as
+ *  fast as possible.
+ *  <p>
+ *  To capture the production traffic, attach a Journal to its hub, with
+ *  syncInterval(0) so that capturing never waits for the storage device, and
+ *  record() to narrow down the captured event types if need be. Replaying
+ *  the captured journal into a test hub reproduces the traffic shape for
+ *  benchmarking handlers offline. The replayed events are not journaled
+ *  again.
+ */
+public class Replayer {
+    private final File directory;
+    private final String name;
+
+    private volatile double speed = 1.0;
+    private volatile long from;
+    private volatile long to = Long.MAX_VALUE;
+    private volatile Flow target;
+
+    private volatile long count;
+    private volatile long maxLagNanos;
+    private volatile long elapsedNanos;
+
+    /** Constructs a new replayer of the journal with the specified name in
+     *  the given directory.
+     */
+    public Replayer(File directory, String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    /** Gets the replay speed factor. */
+    public double speed() {
+        return speed;
+    }
+
+    /** Sets the replay speed factor: 1 for the original timing, N for N times
+     *  as fast, or 0 for as fast as possible.
+     */
+    public Replayer speed(double value) {
+        if (value < 0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException();
+        }
+        speed = value;
+        return this;
+    }
+
+    /** Sets the sequence number range of the records to be replayed, from
+     *  the first inclusive to the last exclusive.
+     */
+    public Replayer range(long first, long last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException();
+        }
+        from = first;
+        to = last;
+        return this;
+    }
+
+    /** Gets the flow to feed the events into, or null for the hub. */
+    public Flow target() {
+        return target;
+    }
+
+    /** Sets the flow to feed the events into, or null to post them up to the
+     *  hub.
+     */
+    public Replayer target(Flow value) {
+        target = value;
+        return this;
+    }
+
+    /** Gets the number of events replayed by the last run. */
+    public long count() {
+        return count;
+    }
+
+    /** Gets the wall-clock time the last run took, in nanoseconds. */
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** Gets the largest delay of the last run behind the scaled original
+     *  timing, in nanoseconds. A large lag means the replaying thread, or the
+     *  hub, could not keep up with the requested speed.
+     */
+    public long maxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /** Replays the selected records on the current thread, blocking until
+     *  done, and returns the number of events replayed. Events of unknown
+     *  types are skipped.
+     */
+    public long run() throws IOException {
+        double factor = speed;
+        Flow flow = target;
+        long replayed = 0;
+        long maxLag = 0;
+        long firstTimestamp = -1;
+        long start = System.nanoTime();
+
+        JournalReader reader = new JournalReader(directory, name);
+        Journal.replaying.set(Boolean.TRUE);
+        try {
+            if (!reader.seek(from)) {
+                return 0;
+            }
+            while (reader.next() && reader.sequence() < to) {
+                Event e = reader.event();
+                if (e == null) {
+                    Log.warn("%s unknown event type %d at sequence %d",
+                        name, reader.typeId(), reader.sequence());
+                    continue;
+                }
+                if (factor > 0) {
+                    if (firstTimestamp < 0) {
+                        firstTimestamp = reader.timestamp();
+                    }
+                    long due = start + (long)
+                        ((reader.timestamp() - firstTimestamp) * 1000000L / factor);
+                    long now;
+                    while ((now = System.nanoTime()) < due) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                    if (now - due > maxLag) {
+                        maxLag = now - due;
+                    }
+                }
+                if (flow != null) {
+                    flow.feed(e);
+                }
+                else {
+                    Hub.post(e);
+                }
+                ++replayed;
+            }
+        }
+        finally {
+            Journal.replaying.remove();
+            reader.close();
+            count = replayed;
+            maxLagNanos = maxLag;
+            elapsedNanos = System.nanoTime() - start;
+        }
+        Log.info("%s replayed %d events in %d ms", name, replayed,
+            elapsedNanos / 1000000);
+        return replayed;
+    }
+}
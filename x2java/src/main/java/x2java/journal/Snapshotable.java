@@ -0,0 +1,21 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import x2java.*;
+
+/** Stateful case whose state a Snapshotter saves and restores as a cell. */
+public interface Snapshotable {
+    /** Gets the class of the state cells. */
+    Class<? extends Cell> stateClass();
+
+    /** Captures the current state into a cell. Called on the dispatch thread,
+     *  and the cell is serialized later on another thread, so the case must
+     *  not modify the returned cell afterward.
+     */
+    Cell captureState();
+
+    /** Restores the state out of the specified cell, on startup. */
+    void restoreState(Cell state);
+}
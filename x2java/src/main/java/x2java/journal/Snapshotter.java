@@ -0,0 +1,401 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.journal;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Checksum;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.util.*;
+
+/** Case taking snapshots of the state of the stateful cases in its flow, so
+ *  that a restart only replays the tail of the journal instead of all of it.
+ *  <p>
+ *  A snapshot starts by posting a SnapshotEvent, which the journal records
+ *  like any other event. Once the flow dispatches it, after all the events
+ *  posted before it, each case captures its state as a cell on the dispatch
+ *  thread, and the cells are serialized and written out to a snapshot file
+ *  on a background thread.
+ *  <p>
+ *  On startup, the snapshotter restores the cases out of the latest intact
+ *  snapshot and feeds the events journaled after its SnapshotEvent into the
+ *  flow, ahead of any live event, or the whole journal if there is no
+ *  snapshot yet. The snapshot is only consistent with the journal if the
+ *  flow sees the events in the journal order, so the flow is to be fed by
+ *  the journal, through Journal.forward(), instead of being attached to the
+ *  hub, and the snapshotter added after the cases it snapshots. Events of
+ *  priorities other than normal may overtake the SnapshotEvent in the flow
+ *  queue, so the state captured should depend on normal-priority events
+ *  only.
+ */
+public class Snapshotter extends Case {
+    /** Default number of snapshot files kept. */
+    public static final int DEFAULT_RETAIN = 2;
+
+    private static final int MAGIC = 0x7832534e;  // "x2SN"
+    private static final int VERSION = 1;
+
+    private final String name;
+    private final File directory;
+    private final Journal journal;
+    private final Map<String, Snapshotable> cases =
+        new LinkedHashMap<String, Snapshotable>();
+
+    private volatile int interval;
+    private volatile int retain = DEFAULT_RETAIN;
+
+    private ExecutorService writer;
+    private long timerToken;
+    private volatile long replayed;
+    private volatile int saved;
+
+    /** Constructs a new snapshotter with the specified name, which also
+     *  prefixes its snapshot files in the given directory, restoring the
+     *  events recorded by the given journal, or null for none.
+     */
+    public Snapshotter(String name, File directory, Journal journal) {
+        this.name = name;
+        this.directory = directory;
+        this.journal = journal;
+    }
+
+    /** Adds the specified stateful case under the given key, which
+     *  identifies its state in the snapshots.
+     */
+    public Snapshotter add(String key, Snapshotable snapshotable) {
+        synchronized (cases) {
+            cases.put(key, snapshotable);
+        }
+        return this;
+    }
+
+    /** Gets the interval in milliseconds between periodic snapshots. */
+    public int interval() {
+        return interval;
+    }
+
+    /** Sets the interval in milliseconds between periodic snapshots, or 0 for
+     *  none, before the flow starts.
+     */
+    public Snapshotter interval(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        interval = value;
+        return this;
+    }
+
+    /** Gets the number of snapshot files kept. */
+    public int retain() {
+        return retain;
+    }
+
+    /** Sets the number of snapshot files kept, the older ones being deleted
+     *  as new ones are written.
+     */
+    public Snapshotter retain(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException();
+        }
+        retain = value;
+        return this;
+    }
+
+    /** Gets the number of events replayed out of the journal on startup. */
+    public long replayed() {
+        return replayed;
+    }
+
+    /** Gets the number of snapshots written out so far. */
+    public int saved() {
+        return saved;
+    }
+
+    /** Starts taking a snapshot, returning its identifier. */
+    public long snapshot() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (id == 0);
+        Hub.post(new SnapshotEvent()
+            .setName(name)
+            .setId(id)
+            .setJournalSequence(journal != null ? journal.sequence() : -1));
+        return id;
+    }
+
+    @Override
+    protected void setup() {
+        EventFactory.register(SnapshotEvent.class);
+        if (journal != null && journal.forward() != flow()) {
+            Log.warn("%s flow not fed by the journal, snapshots may miss events",
+                name);
+        }
+
+        bind(new SnapshotEvent().setName(name), new Handler() {
+            public void invoke(Event e) {
+                onSnapshot((SnapshotEvent)e);
+            }
+        });
+        bind(new TimeoutEvent().setKey(this), new Handler() {
+            public void invoke(Event e) {
+                snapshot();
+            }
+        });
+
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setName(name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            restore();
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException(name + " restore failed", ioe);
+        }
+
+        if (interval > 0) {
+            timerToken = TimeFlow.instance().reserveRepetition(flow(),
+                new TimeoutEvent().setKey(this), interval);
+        }
+    }
+
+    @Override
+    protected void teardown() {
+        if (timerToken != 0) {
+            TimeFlow.instance().cancel(timerToken);
+            timerToken = 0;
+        }
+        if (writer != null) {
+            // Let the snapshot being written complete.
+            writer.shutdown();
+            try {
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie) { }
+            writer = null;
+        }
+    }
+
+    // SnapshotEvent handler, capturing the states to be written out.
+    private void onSnapshot(final SnapshotEvent e) {
+        final Map<String, Cell> states = new LinkedHashMap<String, Cell>();
+        synchronized (cases) {
+            for (Map.Entry<String, Snapshotable> entry : cases.entrySet()) {
+                states.put(entry.getKey(), entry.getValue().captureState());
+            }
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                try {
+                    save(e.getId(), e.getJournalSequence(), states);
+                    ++saved;
+                }
+                catch (IOException ioe) {
+                    Log.error("%s error saving snapshot : %s", name, ioe);
+                }
+            }
+        });
+    }
+
+    // Writes out a snapshot file atomically, and deletes the old ones.
+    private void save(long id, long journalSequence, Map<String, Cell> states)
+            throws IOException {
+        long timestamp = System.currentTimeMillis();
+        byte[] bytes;
+        Buffer buffer = new Buffer();
+        try {
+            Serializer serializer = new Serializer(buffer);
+            serializer.writeFixedInt(MAGIC);
+            serializer.writeFixedInt(VERSION);
+            serializer.writeFixedLong(id);
+            serializer.writeFixedLong(journalSequence);
+            serializer.writeFixedLong(timestamp);
+            serializer.writeInt(states.size());
+            for (Map.Entry<String, Cell> entry : states.entrySet()) {
+                serializer.writeString(entry.getKey());
+                serializer.writeCell(entry.getValue());
+            }
+            bytes = buffer.toArray();
+        }
+        finally {
+            buffer.close();
+        }
+        Checksum crc = JournalFormat.newChecksum();
+        crc.update(bytes, 0, bytes.length);
+        int checksum = (int)crc.getValue();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        File file = new File(directory,
+            String.format("%s-%015d-%016x.snapshot", name, timestamp, id));
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(bytes);
+            out.write(new byte[] { (byte)(checksum >> 24),
+                (byte)(checksum >> 16), (byte)(checksum >> 8), (byte)checksum });
+            out.getChannel().force(true);
+        }
+        finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        Log.info("%s saved %s", name, file.getName());
+
+        File[] files = listSnapshots();
+        for (int i = retain; i < files.length; ++i) {
+            files[i].delete();
+        }
+    }
+
+    // Gets the snapshot files, the latest first.
+    private File[] listSnapshots() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String fileName) {
+                return fileName.startsWith(name + "-") &&
+                    fileName.endsWith(".snapshot");
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Collections.reverseOrder());
+        return files;
+    }
+
+    // Restores the cases out of the latest intact snapshot, and feeds the
+    // events journaled after it into the flow.
+    private void restore() throws IOException {
+        long start = System.currentTimeMillis();
+        long id = 0;
+        long journalSequence = 0;
+        File restored = null;
+        File[] files = listSnapshots();
+        for (int i = 0; i < files.length && restored == null; ++i) {
+            try {
+                Deserializer deserializer = load(files[i]);
+                id = deserializer.readFixedLong();
+                journalSequence = deserializer.readFixedLong();
+                deserializer.readFixedLong();  // timestamp
+                int count = deserializer.readInt();
+                Map<String, Cell> states = new HashMap<String, Cell>();
+                for (int j = 0; j < count; ++j) {
+                    String key = deserializer.readString();
+                    Snapshotable snapshotable = cases.get(key);
+                    if (snapshotable == null) {
+                        throw new IOException("unknown case " + key);
+                    }
+                    states.put(key, deserializer.readCell(
+                        snapshotable.stateClass()));
+                }
+                for (Map.Entry<String, Cell> entry : states.entrySet()) {
+                    cases.get(entry.getKey()).restoreState(entry.getValue());
+                }
+                restored = files[i];
+            }
+            catch (IOException ioe) {
+                Log.warn("%s skipping snapshot %s : %s", name,
+                    files[i].getName(), ioe);
+            }
+        }
+
+        replayed = 0;
+        if (journal != null) {
+            JournalReader reader = new JournalReader(journal.directory(),
+                journal.name());
+            try {
+                if (restored == null || seekSnapshotEvent(reader, id,
+                        journalSequence)) {
+                    Flow flow = flow();
+                    while (reader.next()) {
+                        Event e = reader.event();
+                        if (e == null) {
+                            continue;
+                        }
+                        // The flow is not dispatching yet, so bypass its
+                        // capacity and overflow policy.
+                        if (flow instanceof EventBasedFlow) {
+                            ((EventBasedFlow)flow).replay(e);
+                        }
+                        else {
+                            flow.feed(e);
+                        }
+                        ++replayed;
+                    }
+                }
+                else {
+                    Log.warn("%s snapshot event not in the journal", name);
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        Log.info("%s restored %s and replayed %d events in %d ms", name,
+            (restored != null ? restored.getName() : "no snapshot"),
+            replayed, System.currentTimeMillis() - start);
+    }
+
+    // Moves the reader past the SnapshotEvent with the specified id, starting
+    // from the given sequence number.
+    private boolean seekSnapshotEvent(JournalReader reader, long id,
+            long journalSequence) throws IOException {
+        if (journalSequence > 0 && !reader.seek(journalSequence)) {
+            return false;
+        }
+        while (reader.next()) {
+            if (reader.typeId() != BuiltinEventType.SnapshotEvent) {
+                continue;
+            }
+            Event e = reader.event();
+            if (e instanceof SnapshotEvent &&
+                    ((SnapshotEvent)e).getId() == id &&
+                    name.equals(((SnapshotEvent)e).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Reads in and verifies the specified snapshot file, returning a
+    // deserializer positioned past its magic and version.
+    private static Deserializer load(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < 4 + 32) {
+            throw new IOException("truncated");
+        }
+        int length = bytes.length - 4;
+        Checksum crc = JournalFormat.newChecksum();
+        crc.update(bytes, 0, length);
+        int checksum = ((bytes[length] & 0xff) << 24) |
+            ((bytes[length + 1] & 0xff) << 16) |
+            ((bytes[length + 2] & 0xff) << 8) | (bytes[length + 3] & 0xff);
+        if ((int)crc.getValue() != checksum) {
+            throw new IOException("checksum mismatch");
+        }
+        Deserializer deserializer = new Deserializer(
+            new Buffer(Arrays.copyOf(bytes, length)));
+        if (deserializer.readFixedInt() != MAGIC ||
+                deserializer.readFixedInt() != VERSION) {
+            throw new IOException("not a snapshot");
+        }
+        return deserializer;
+    }
+}
@@ -3,6 +3,8 @@
 
 package x2java.links;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.*;
 
 import x2java.*;
@@ -12,6 +14,8 @@ import x2java.util.*;
 public abstract class ClientLink extends SessionBasedLink {
     protected LinkSession session;  // current link session
 
+    private final PendingRequests pendingRequests = new PendingRequests();
+
     protected ClientLink(String name) {
         super(name);
     }
@@ -37,6 +41,8 @@ public abstract class ClientLink extends SessionBasedLink {
             session.close();
         }
 
+        pendingRequests.failAll(new IOException(name() + " closed"));
+
         super.close();
     }
 
@@ -59,6 +65,35 @@ public abstract class ClientLink extends SessionBasedLink {
         }
     }
 
+    @Override
+    protected void onSessionDisconnectedInternal(int handle, Object context) {
+        Lock wlock = rwlock.writeLock();
+        wlock.lock();
+        try {
+            if (session == context) {
+                session = null;
+            }
+        }
+        finally {
+            wlock.unlock();
+        }
+
+        pendingRequests.failAll(new IOException(name() + " disconnected"));
+    }
+
+    @Override
+    protected boolean onResponse(Event e) {
+        return pendingRequests.complete(e);
+    }
+
+    @Override
+    protected void onHeartbeat() {
+        LinkSession currentSession = session();
+        if (currentSession != null) {
+            currentSession.onHeartbeat();
+        }
+    }
+
     @Override
     public void send(Event e) {
         LinkSession currentSession = session();
@@ -69,6 +104,43 @@ public abstract class ClientLink extends SessionBasedLink {
         currentSession.send(e);
     }
 
+    @Override
+    protected void sendResponse(Event e) {
+        LinkSession currentSession = session();
+        if (currentSession == null) {
+            Log.warn("%s dropped response %s", name(), e.toString());
+            return;
+        }
+        currentSession.respond(e);
+    }
+
+    /** Sends out the specified request event with a new wait handle, and
+     *  returns a future to be completed with the response event carrying the
+     *  same wait handle, or failed on timeout (in milliseconds, 0 for none)
+     *  or disconnection.
+     *  <p>
+     *  Responses are handed to the future on the link I/O thread instead of
+     *  being posted up to the hub, so dependent actions that may block should
+     *  be run asynchronously.
+     *  <p>
+     *  The wait handle is set on the specified event itself, overwriting any
+     *  previous one, so the same instance must not be sent again until the
+     *  future completes.
+     */
+    public CompletableFuture<Event> send(Event e, long timeoutMillis) {
+        CompletableFuture<Event> future = new CompletableFuture<Event>();
+        LinkSession currentSession = session();
+        if (currentSession == null) {
+            Log.warn("%s dropped request %s", name(), e.toString());
+            future.completeExceptionally(
+                new IOException(name() + " not connected"));
+            return future;
+        }
+        e._setWaitHandle(pendingRequests.add(future, timeoutMillis));
+        currentSession.send(e);
+        return future;
+    }
+
     public LinkSession session() {
         Lock rlock = rwlock.readLock();
         rlock.lock();
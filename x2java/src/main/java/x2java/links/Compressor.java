@@ -0,0 +1,37 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links;
+
+import java.io.IOException;
+
+/** The Compressor interface should be implemented by any class whose instances
+ *  are intended to compress link frame bodies. Implementations must be safe to
+ *  be called concurrently from multiple link sessions.
+ */
+public interface Compressor {
+    /** Returns the maximum number of bytes that compressing the specified
+     *  number of bytes may produce.
+     */
+    int maxCompressedLength(int length);
+
+    /** Returns the maximum number of bytes that decompressing the specified
+     *  number of bytes may produce, so that receivers can reject bogus
+     *  lengths before allocating for them.
+     */
+    int maxDecompressedLength(int length);
+
+    /** Compresses the specified range of bytes into the destination array,
+     *  returning the number of bytes written.
+     */
+    int compress(byte[] src, int srcOffset, int length,
+        byte[] dst, int dstOffset);
+
+    /** Decompresses the specified range of bytes into the destination array,
+     *  which must hold exactly <code>dstLength</code> bytes of output,
+     *  returning the number of bytes written.
+     *  @throws IOException when the input is malformed.
+     */
+    int decompress(byte[] src, int srcOffset, int length,
+        byte[] dst, int dstOffset, int dstLength) throws IOException;
+}
@@ -0,0 +1,324 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+/** Encodes events of registered types against the last instance of the same
+ *  type and key sent through a link session, writing only the properties
+ *  whose values have changed, and reconstructs the full events on the
+ *  receiving side.
+ *  <p>
+ *  Both ends of a link session must be configured with the same set of event
+ *  types and the same maxSeries(), since every frame is prefixed with an
+ *  encoding flag byte while delta encoding is enabled, and both ends evict
+ *  the least recently used series in lockstep.
+ *  <p>
+ *  Sending and receiving may run concurrently on different threads; each
+ *  direction has its own cache and scratch buffer.
+ */
+public class DeltaEncoding {
+    /** Default maximum number of series cached in each direction. */
+    public static final int DEFAULT_MAX_SERIES = 8192;
+
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+
+    // Type id -> fingerprint of the key properties
+    private HashMap<Integer, Fingerprint> keys;
+    private int maxSeries = DEFAULT_MAX_SERIES;
+
+    // Send side state, guarded by itself
+    private final Map<Key, Event> sent;
+    private Buffer sendScratch;
+    // Receive side state, guarded by itself
+    private final Map<Key, Event> received;
+    private Buffer receiveScratch;
+
+    private volatile boolean closed;
+
+    /** Constructs a new delta encoding object without registered types. */
+    public DeltaEncoding() {
+        keys = new HashMap<Integer, Fingerprint>();
+        sent = newSeriesMap();
+        received = newSeriesMap();
+    }
+
+    /** Constructs a new delta encoding object with the type registrations
+     *  and the series limit copied from the specified one.
+     */
+    public DeltaEncoding(DeltaEncoding other) {
+        this();
+        keys.putAll(other.keys);
+        maxSeries = other.maxSeries;
+    }
+
+    /** Gets the maximum number of series cached in each direction. */
+    public int maxSeries() {
+        return maxSeries;
+    }
+
+    /** Sets the maximum number of series cached in each direction, beyond
+     *  which the least recently used one is evicted and sent in full the
+     *  next time. Both ends of a session must use the same value.
+     */
+    public DeltaEncoding maxSeries(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException();
+        }
+        maxSeries = value;
+        return this;
+    }
+
+    /** Enables delta encoding for the type of the specified prototype event.
+     *  The properties touched in the prototype form the key which identifies
+     *  a series of events, and they are always written out.
+     */
+    public DeltaEncoding add(Event prototype) {
+        keys.put(prototype._getTypeId(),
+            new Fingerprint(prototype._getFingerprint()));
+        return this;
+    }
+
+    /** Releases the cached instances and the scratch buffers, once the
+     *  sending and receiving in progress complete. Events sent afterward
+     *  are encoded in full.
+     */
+    public void close() {
+        closed = true;
+        synchronized (sent) {
+            sent.clear();
+            if (sendScratch != null) {
+                sendScratch.close();
+                sendScratch = null;
+            }
+        }
+        synchronized (received) {
+            received.clear();
+            if (receiveScratch != null) {
+                receiveScratch.close();
+                receiveScratch = null;
+            }
+        }
+    }
+
+    /** Encodes the specified event into the given serializer. */
+    public void serialize(Event e, Serializer serializer) {
+        Fingerprint mask = keys.get(e._getTypeId());
+        if (mask == null || !mask.equivalent(e._getFingerprint())) {
+            serializer.writeByte(FULL);
+            e.serialize(serializer);
+            return;
+        }
+        synchronized (sent) {
+            if (!closed) {
+                serializeDelta(e, mask, serializer);
+                return;
+            }
+        }
+        serializer.writeByte(FULL);
+        e.serialize(serializer);
+    }
+
+    // Encodes the specified event of a registered type, with the send side
+    // lock held.
+    private void serializeDelta(Event e, Fingerprint mask,
+            Serializer serializer) {
+        if (sendScratch == null) {
+            sendScratch = new Buffer();
+        }
+
+        // Take a private copy, since the original may be modified and reused
+        // by the application after being sent.
+        Event copy = copy(e, sendScratch);
+        if (copy == null) {
+            serializer.writeByte(FULL);
+            e.serialize(serializer);
+            return;
+        }
+
+        Key key = new Key(copy, mask);
+        Event last = sent.put(key, copy);
+
+        Fingerprint fingerprint = copy._getFingerprint();
+        if (last == null || !last._getFingerprint().equivalent(fingerprint)) {
+            // No base instance, or some properties are no longer present.
+            serializer.writeByte(FULL);
+            copy.serialize(serializer);
+            return;
+        }
+
+        // Temporarily wipe the unchanged non-key properties out of the
+        // private copy's fingerprint. A property newly touched must go out
+        // even with the same value, as the base instance lacks it.
+        Fingerprint lastFingerprint = last._getFingerprint();
+        Fingerprint probe = new Fingerprint(fingerprint.getLength());
+        Fingerprint unchanged = new Fingerprint(fingerprint.getLength());
+        for (int i = 0, length = fingerprint.getLength(); i < length; ++i) {
+            if (!fingerprint.get(i) || mask.get(i) || !lastFingerprint.get(i)) {
+                continue;
+            }
+            probe.touch(i);
+            if (last.equivalent(copy, probe)) {
+                unchanged.touch(i);
+            }
+            probe.wipe(i);
+        }
+        for (int i = 0, length = unchanged.getLength(); i < length; ++i) {
+            if (unchanged.get(i)) {
+                fingerprint.wipe(i);
+            }
+        }
+
+        serializer.writeByte(DELTA);
+        copy.serialize(serializer);
+
+        for (int i = 0, length = unchanged.getLength(); i < length; ++i) {
+            if (unchanged.get(i)) {
+                fingerprint.touch(i);
+            }
+        }
+    }
+
+    /** Decodes a new event out of the given deserializer, reconstructing the
+     *  full event if it was delta-encoded.
+     */
+    public Event deserialize(Deserializer deserializer) throws IOException {
+        byte flag = deserializer.readByte();
+
+        Event retrieved = deserializer.create();
+        if (retrieved == null) {
+            return null;
+        }
+        retrieved.deserialize(deserializer);
+
+        Fingerprint mask = keys.get(retrieved._getTypeId());
+        if (mask == null || !mask.equivalent(retrieved._getFingerprint())) {
+            return retrieved;
+        }
+
+        synchronized (received) {
+            if (closed) {
+                return retrieved;
+            }
+            if (receiveScratch == null) {
+                receiveScratch = new Buffer();
+            }
+            return deserializeDelta(flag, retrieved, mask);
+        }
+    }
+
+    // Records or applies the specified decoded event of a registered type,
+    // with the receive side lock held.
+    private Event deserializeDelta(byte flag, Event retrieved, Fingerprint mask)
+            throws IOException {
+        if (flag == FULL) {
+            Event mirror = copy(retrieved, receiveScratch);
+            if (mirror != null) {
+                received.put(new Key(mirror, mask), mirror);
+            }
+            return retrieved;
+        }
+
+        Event mirror = received.get(new Key(retrieved, mask));
+        if (mirror == null) {
+            Log.warn("DeltaEncoding : no base instance for %s", retrieved.toString());
+            return retrieved;
+        }
+
+        // Apply the changed properties onto the mirror instance, and then
+        // hand out a fresh copy of it.
+        Fingerprint fingerprint = mirror._getFingerprint();
+        Fingerprint saved = new Fingerprint(fingerprint);
+
+        Buffer buffer = receiveScratch;
+        buffer.reset();
+        retrieved.serialize(new Serializer(buffer));
+        buffer.rewind();
+        Deserializer scratchDeserializer = new Deserializer(buffer);
+        scratchDeserializer.readInt();  // type id
+        mirror.deserialize(scratchDeserializer);
+
+        for (int i = 0, length = saved.getLength(); i < length; ++i) {
+            if (saved.get(i)) {
+                fingerprint.touch(i);
+            }
+        }
+
+        Event result = copy(mirror, receiveScratch);
+        if (result == null) {
+            return retrieved;
+        }
+        result._setHandle(retrieved._getHandle());
+        return result;
+    }
+
+    // Makes a deep copy of the specified event through a serialization round
+    // trip in the given scratch buffer.
+    private static Event copy(Event e, Buffer buffer) {
+        buffer.reset();
+        e.serialize(new Serializer(buffer));
+        buffer.rewind();
+        Deserializer deserializer = new Deserializer(buffer);
+        Event result = deserializer.create();
+        if (result == null) {
+            return null;
+        }
+        try {
+            result.deserialize(deserializer);
+        }
+        catch (IOException ioe) {
+            Log.error("DeltaEncoding : error copying %s", e.toString());
+            return null;
+        }
+        return result;
+    }
+
+    // Creates a new series map evicting the least recently used series
+    // beyond the limit, so that both ends evict the same ones.
+    private Map<Key, Event> newSeriesMap() {
+        return new LinkedHashMap<Key, Event>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Event> eldest) {
+                return size() > maxSeries;
+            }
+        };
+    }
+
+    // Identifies a series of events by their type and key properties.
+    private static class Key {
+        private final Event event;
+        private final Fingerprint mask;
+        private final int hash;
+
+        public Key(Event event, Fingerprint mask) {
+            this.event = event;
+            this.mask = mask;
+            hash = event.hashCode(mask, event._getTypeId());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            if (event._getTypeId() != other.event._getTypeId()) {
+                return false;
+            }
+            return event.equivalent(other.event, mask);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -3,14 +3,19 @@
 
 package x2java.links;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import x2java.*;
-
+import x2java.metrics.*;
+import x2java.metrics.LinkMetrics.Counter;
 import x2java.util.*;
 
 public abstract class LinkSession {
+    private static final AtomicInteger nextHandle = new AtomicInteger();
+
     protected int handle;
     protected SessionBasedLink link;
     protected volatile boolean closed;
@@ -21,49 +26,150 @@ public abstract class LinkSession {
 
     protected List<Event> eventsSending;
     protected List<Event> eventsToSend;
+    // Indexes of the responses in the lists above
+    private BitSet responsesSending;
+    private BitSet responsesToSend;
+    protected List<SendBuffer> buffersSending;
 
     protected int lengthToReceive;
+    protected boolean rxBeginning;
+    protected boolean rxCompressed;
+    protected boolean rxResponse;
 
     protected boolean txFlag;
 
+    protected DeltaEncoding deltaEncoding;
+
+    // Compression scratch arrays, reused across frames in each direction
+    private byte[] txPlain;
+    private byte[] txCompressed;
+    private byte[] rxCompressedBody;
+    private byte[] rxPlain;
+
+    // Wall-clock times in milliseconds of the last receive and send
+    protected volatile long lastReceived;
+    protected volatile long lastSent;
+
+    protected final LinkMetrics metrics;
+
     protected final Object syncRoot = new Object();
 
+    // Heartbeat event shared by all the keepalive sends
+    private static final HeartbeatEvent heartbeat = new HeartbeatEvent();
+
     protected LinkSession(SessionBasedLink link) {
         this.link = link;
+        handle = nextHandle.incrementAndGet();
 
         rxBuffer = new Buffer();
+        rxBeginning = true;
 
         rxBufferList = new ArrayList<ByteBuffer>();
         txBufferList = new ArrayList<ByteBuffer>();
 
         eventsSending = new ArrayList<Event>();
         eventsToSend = new ArrayList<Event>();
+        responsesSending = new BitSet();
+        responsesToSend = new BitSet();
+        buffersSending = new ArrayList<SendBuffer>();
+
+        DeltaEncoding template = link.deltaEncoding();
+        if (template != null) {
+            deltaEncoding = new DeltaEncoding(template);
+        }
+
+        lastReceived = lastSent = System.currentTimeMillis();
+
+        metrics = new LinkMetrics(link.metrics(), handle);
+        if (link.sessionMetrics()) {
+            MetricsRegistry.register(metrics);
+        }
     }
 
     public int handle() {
         return handle;
     }
 
+    /** Gets the I/O metrics of this session. */
+    public LinkMetrics metrics() {
+        return metrics;
+    }
+
     public void close() {
         if (closed) { return; }
 
         closed = true;
 
         // buffer clearing
-    }
+        synchronized (syncRoot) {
+            release(eventsToSend);
+            eventsToSend.clear();
+            responsesToSend.clear();
+        }
 
-    /** Sends out the specified event through this link session. */
-    public void send(Event e) {
-        Log.debug("%s send()", link.name());
+        if (deltaEncoding != null) {
+            deltaEncoding.close();
+        }
 
+        MetricsRegistry.unregister(metrics);
+
+        link.onLinkSessionDisconnectedInternal(handle, this);
+    }
+
+    /** Called on each HeartbeatEvent to close this session if it has been
+     *  silent too long, or to send out a keepalive heartbeat if it has been
+     *  idle.
+     */
+    public void onHeartbeat() {
         if (closed) {
             return;
         }
+        long now = System.currentTimeMillis();
+        int idleTimeout = link.idleTimeout();
+        if (idleTimeout > 0 && (now - lastReceived) > idleTimeout) {
+            Log.warn("%s %d idle timeout", link.name(), handle);
+            close();
+            return;
+        }
+        int keepaliveInterval = link.keepaliveInterval();
+        if (keepaliveInterval > 0 && (now - lastSent) >= keepaliveInterval) {
+            send(heartbeat);
+        }
+    }
+
+    /** Sends out the specified event through this link session. */
+    public void send(Event e) {
+        send(e, false);
+    }
+
+    /** Sends out the specified event flagged as a response, to be matched
+     *  against the pending requests of the other end.
+     */
+    public void respond(Event e) {
+        send(e, true);
+    }
+
+    private void send(Event e, boolean response) {
+        Log.debug("%s send()", link.name());
 
         synchronized (syncRoot) {
+            // Checked under the lock, so that close() releases whatever is
+            // added before it.
+            if (closed) {
+                return;
+            }
+
+            if (e instanceof RawEvent) {
+                // Keep the slice alive until it is written out.
+                ((RawEvent)e).retain();
+            }
+
+            if (response) {
+                responsesToSend.set(eventsToSend.size());
+            }
             eventsToSend.add(e);
 
-            if (txFlag || closed) {
+            if (txFlag) {
                 return;
             }
 
@@ -80,75 +186,319 @@ public abstract class LinkSession {
             return;
         }
 
+        lastReceived = System.currentTimeMillis();
+        if (bytesTransferred > 0) {
+            metrics.add(Counter.RxBytes, bytesTransferred);
+        }
+
         rxBuffer.stretch(bytesTransferred);
 
-        //
-        rxBuffer.rewind();
-        parseHeader();  // xxx
-        //
+        while (true) {
+            if (rxBeginning) {
+                rxBuffer.rewind();
+                if (!parseHeader()) {
+                    return;  // need more to start
+                }
+                rxBeginning = false;
+            }
+
+            if (rxBuffer.length() < lengthToReceive) {
+                return;  // need more
+            }
+
+            rxBuffer.rewind();
+            rxBuffer.markToRead(lengthToReceive);
+            metrics.increment(Counter.RxFrames);
+
+            Event retrieved = null;
+            Buffer buffer = rxBuffer;
+            try {
+                int length = lengthToReceive;
+                if (rxCompressed) {
+                    buffer = decompress(rxBuffer, lengthToReceive);
+                    length = buffer.length();
+                }
+                retrieved = loadRaw(buffer, length);
+                if (retrieved == null) {
+                    retrieved = load(new Deserializer(buffer));
+                }
+            } catch (Exception e) {
+                metrics.increment(Counter.DecodeErrors);
+                Log.error("%s error loading event", link.name());
+            }
+            finally {
+                if (buffer != rxBuffer) {
+                    buffer.close();
+                }
+            }
+
+            rxBuffer.trim();
+            rxBeginning = true;
+
+            if (retrieved != null) {
+                metrics.increment(Counter.RxEvents);
+            }
+            if (retrieved instanceof HeartbeatEvent) {
+                // Consumed here, as it only keeps this session alive.
+                retrieved = null;
+            }
+            else if (rxResponse && retrieved != null &&
+                    !(retrieved instanceof RawEvent) &&
+                    retrieved._getWaitHandle() != 0 &&
+                    link.onResponse(retrieved)) {
+                retrieved = null;
+            }
 
-        //
-        rxBuffer.markToRead(lengthToReceive);
+            if (retrieved != null) {
+                retrieved._setHandle(handle);
 
-        Deserializer deserializer = new Deserializer(rxBuffer);
+                Log.debug("%s retrieved event %s", link.name(), retrieved.toString());
+
+                Hub.post(retrieved);
+
+                if (retrieved instanceof RawEvent) {
+                    ((RawEvent)retrieved).release();
+                }
+            }
+
+            if (rxBuffer.isEmpty()) {
+                return;
+            }
+            if (Hub.instance().saturated()) {
+                // Leave the rest to be processed once the flows drain.
+                return;
+            }
+        }
+    }
+
+    // Wraps the marked frame body in a raw event without decoding it, if its
+    // type is to be passed through.
+    private RawEvent loadRaw(Buffer buffer, int length) throws IOException {
+        if (deltaEncoding != null || !link.hasPassThrough()) {
+            return null;
+        }
+        int typeId = new Deserializer(buffer).readInt();
+        buffer.rewind();
+        if (!link.isPassThrough(typeId)) {
+            return null;
+        }
+        return new RawEvent(typeId, buffer.slice(0, length));
+    }
+
+    // Decodes an event out of the specified deserializer.
+    private Event load(Deserializer deserializer) throws IOException {
+        if (deltaEncoding != null) {
+            return deltaEncoding.deserialize(deserializer);
+        }
         Event retrieved = deserializer.create();
-        if (retrieved == null) {
+        if (retrieved != null) {
+            retrieved.deserialize(deserializer);
+        }
+        return retrieved;
+    }
+
+    // Compresses the body of the specified send buffer in place, if it is
+    // large enough and it actually gets smaller.
+    private void compress(SendBuffer sendBuffer) {
+        Compressor compressor = link.compressor();
+        Buffer buffer = sendBuffer.getBuffer();
+        int length = buffer.length();
+        if (compressor == null || length < link.compressionThreshold()) {
             return;
         }
 
-        try {
-            retrieved.deserialize(deserializer);
-        } catch (Exception e) {
-            Log.error("%s error loading event", link.name());
+        txPlain = ensureLength(txPlain, length);
+        buffer.copyTo(txPlain, 0);
+        txCompressed = ensureLength(txCompressed,
+            5 + compressor.maxCompressedLength(length));
+        byte[] compressed = txCompressed;
+        int headerLength = Serializer.writeVariableUInt(compressed, length);
+        int compressedLength = headerLength + compressor.compress(
+            txPlain, 0, length, compressed, headerLength);
+        if (compressedLength >= length) {
             return;
         }
 
-        retrieved._setHandle(handle);
+        buffer.reset();
+        buffer.put(compressed, 0, compressedLength);
+        sendBuffer.setCompressed(true);
+    }
+
+    // Decompresses the marked frame body out of the specified buffer into a
+    // new pooled buffer.
+    private Buffer decompress(Buffer buffer, int length) throws IOException {
+        Compressor compressor = link.compressor();
+        if (compressor == null) {
+            throw new IOException("no compressor");
+        }
+
+        Mutable<Integer> headerLength = new Mutable<Integer>();
+        int originalLength = Deserializer.readVariableUInt(buffer, headerLength);
+        int compressedLength = length - headerLength.get();
+        if (originalLength < 0 || compressedLength < 0) {
+            throw new IOException();
+        }
+        // Reject bogus lengths before allocating for them.
+        if (originalLength > link.maxDecompressedLength() ||
+                originalLength > compressor.maxDecompressedLength(compressedLength)) {
+            throw new IOException("decompressed length " + originalLength +
+                " out of bounds");
+        }
+
+        rxCompressedBody = ensureLength(rxCompressedBody, compressedLength);
+        buffer.get(rxCompressedBody, 0, compressedLength);
+
+        rxPlain = ensureLength(rxPlain, originalLength);
+        int n = compressor.decompress(rxCompressedBody, 0, compressedLength,
+            rxPlain, 0, originalLength);
+        if (n != originalLength) {
+            throw new IOException();
+        }
+
+        Buffer result = new Buffer();
+        result.put(rxPlain, 0, originalLength);
+        result.rewind();
+        return result;
+    }
+
+    // Returns the specified array if it holds the given length, or a new
+    // large enough one.
+    private static byte[] ensureLength(byte[] array, int length) {
+        if (array != null && array.length >= length) {
+            return array;
+        }
+        int capacity = (array != null ? array.length : Buffer.BLOCK_SIZE);
+        while (capacity < length) {
+            capacity = (capacity <= (Integer.MAX_VALUE >> 1) ?
+                capacity << 1 : length);
+        }
+        return new byte[capacity];
+    }
 
-        Log.debug("%s retrieved event %s", link.name(), retrieved.toString());
+    /** Builds the frame header value out of the body length and the flags
+     *  of the specified send buffer.
+     */
+    protected static int header(SendBuffer sendBuffer) {
+        int header = sendBuffer.length() << 2;
+        if (sendBuffer.isResponse()) {
+            header |= 2;
+        }
+        if (sendBuffer.isCompressed()) {
+            header |= 1;
+        }
+        return header;
+    }
 
-        Hub.post(retrieved);
+    /** Sets the body length to receive and the frame flags out of the
+     *  specified frame header value.
+     */
+    protected void parseHeader(int header) {
+        lengthToReceive = header >>> 2;
+        rxResponse = ((header & 2) != 0);
+        rxCompressed = ((header & 1) != 0);
     }
 
     protected abstract void buildHeader(SendBuffer sendBuffer);
     protected abstract boolean parseHeader();
 
-    protected abstract void sendInternal();
+    /** Writes out the buffers listed in txBufferList, returning true if they
+     *  have been completely written, or false if the writing is to be
+     *  completed asynchronously with a call to onSendInternal().
+     */
+    protected abstract boolean sendInternal();
+
+    /** Called when the pending send buffers have been completely written. */
+    protected void onSendInternal() {
+        endSend();
+        beginSend();
+    }
 
     private void beginSend() {
-        Log.debug("%s beginSend()", link.name());
+        while (true) {
+            Log.debug("%s beginSend()", link.name());
+
+            synchronized (syncRoot) {
+                if (eventsToSend.size() == 0 || closed) {
+                    txFlag = false;
+                    return;
+                }
+                lastSent = System.currentTimeMillis();
+                // Swap send buffers
+                List<Event> temp = eventsSending;
+                eventsSending = eventsToSend;
+                eventsToSend = temp;
+                temp = null;
+                BitSet responses = responsesSending;
+                responsesSending = responsesToSend;
+                responsesToSend = responses;
+            }
 
-        synchronized (syncRoot) {
-            if (eventsToSend.size() == 0) {
-                return;
+            // Capture send buffers.
+            txBufferList.clear();
+            int count = eventsSending.size();
+            long bytes = 0;
+
+            for (int i = 0; i < count; ++i) {
+                Event e = eventsSending.get(i);
+
+                SendBuffer sendBuffer = new SendBuffer();
+                sendBuffer.setResponse(responsesSending.get(i));
+                if (e instanceof RawEvent && deltaEncoding == null) {
+                    // Gather the received bytes as they are.
+                    sendBuffer.setSlice(((RawEvent)e).slice());
+                }
+                else {
+                    Serializer serializer = new Serializer(sendBuffer.getBuffer());
+                    if (deltaEncoding != null) {
+                        deltaEncoding.serialize(e, serializer);
+                    }
+                    else {
+                        e.serialize(serializer);
+                    }
+
+                    compress(sendBuffer);
+                }
+
+                buildHeader(sendBuffer);
+                bytes += sendBuffer.getHeaderLength() + sendBuffer.length();
+
+                sendBuffer.listOccupiedBuffers(txBufferList);
+                buffersSending.add(sendBuffer);
             }
-            // Swap send buffers
-            if (eventsSending.size() != 0) {
-                eventsSending.clear();
+
+            metrics.increment(Counter.SendBatches);
+            metrics.add(Counter.TxEvents, count);
+            metrics.add(Counter.TxFrames, count);
+            metrics.add(Counter.TxBytes, bytes);
+
+            if (!sendInternal()) {
+                return;  // to be continued with onSendInternal()
             }
-            List<Event> temp = eventsSending;
-            eventsSending = eventsToSend;
-            eventsToSend = temp;
-            temp = null;
+
+            endSend();
         }
+    }
 
-        // Capture send buffers.
+    // Releases the resources held for the events just sent.
+    private void endSend() {
+        for (int i = 0, count = buffersSending.size(); i < count; ++i) {
+            buffersSending.get(i).close();
+        }
+        buffersSending.clear();
         txBufferList.clear();
-        int lengthToSend = 0;
-        int count = eventsSending.size();
-        
-        for (int i = 0; i < count; ++i) {
-            Event e = eventsSending.get(i);
-
-            SendBuffer sendBuffer = new SendBuffer();
-            e.serialize(new Serializer(sendBuffer.getBuffer()));
-            //sendBuffer.getBuffer().flip();
 
-            buildHeader(sendBuffer);
+        release(eventsSending);
+        eventsSending.clear();
+        responsesSending.clear();
+    }
 
-            sendBuffer.listOccupiedBuffers(txBufferList);
+    // Releases the raw events in the specified list.
+    private static void release(List<Event> events) {
+        for (int i = 0, count = events.size(); i < count; ++i) {
+            Event e = events.get(i);
+            if (e instanceof RawEvent) {
+                ((RawEvent)e).release();
+            }
         }
-
-        sendInternal();
     }
 }
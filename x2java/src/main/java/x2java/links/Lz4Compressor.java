@@ -0,0 +1,203 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Pure Java compressor producing the LZ4 block format, trading compression
+ *  ratio for speed with a single-probe hash table.
+ */
+public class Lz4Compressor implements Compressor {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_DISTANCE = 0xffff;
+    // The last match must start at least 12 bytes before the end of input,
+    // and the last 5 bytes are always literals.
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+
+    private static final int HASH_LOG = 12;
+
+    private static ThreadLocal<int[]> hashTable = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    public int maxCompressedLength(int length) {
+        return length + (length / 255) + 16;
+    }
+
+    public int maxDecompressedLength(int length) {
+        // Each extra byte of a match length encodes 255 more bytes.
+        return (int)Math.min(Integer.MAX_VALUE, (long)length * 255 + 16);
+    }
+
+    public int compress(byte[] src, int srcOffset, int length,
+            byte[] dst, int dstOffset) {
+        int end = srcOffset + length;
+        int anchor = srcOffset;
+        int op = dstOffset;
+
+        if (length > MF_LIMIT) {
+            int[] table = hashTable.get();
+            // Table entries hold (position - srcOffset + 1), zero for none.
+            Arrays.fill(table, 0);
+
+            int mfLimit = end - MF_LIMIT;
+            int matchLimit = end - LAST_LITERALS;
+            int ip = srcOffset;
+
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h] - 1 + srcOffset;
+                table[h] = ip - srcOffset + 1;
+
+                if (ref < srcOffset || (ip - ref) > MAX_DISTANCE ||
+                        readInt(src, ref) != sequence) {
+                    ++ip;
+                    continue;
+                }
+
+                // Extend the match backward, and then forward.
+                while (ip > anchor && ref > srcOffset &&
+                        src[ip - 1] == src[ref - 1]) {
+                    --ip;
+                    --ref;
+                }
+                int matchLength = MIN_MATCH;
+                while ((ip + matchLength) < matchLimit &&
+                        src[ip + matchLength] == src[ref + matchLength]) {
+                    ++matchLength;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op,
+                    ip - ref, matchLength);
+
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        // Last literals
+        op = writeSequence(src, anchor, end - anchor, dst, op, 0, 0);
+        return (op - dstOffset);
+    }
+
+    public int decompress(byte[] src, int srcOffset, int length,
+            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        int ip = srcOffset;
+        int end = srcOffset + length;
+        int op = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+
+        while (ip < end) {
+            int token = src[ip++] & 0xff;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    if (ip >= end) { throw new IOException(); }
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if ((ip + literalLength) > end || (op + literalLength) > dstEnd) {
+                throw new IOException();
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+
+            if (ip >= end) {
+                break;  // last sequence
+            }
+
+            if ((ip + 2) > end) { throw new IOException(); }
+            int distance = (src[ip] & 0xff) | ((src[ip + 1] & 0xff) << 8);
+            ip += 2;
+            if (distance == 0 || (op - distance) < dstOffset) {
+                throw new IOException();
+            }
+
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (ip >= end) { throw new IOException(); }
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if ((op + matchLength) > dstEnd) {
+                throw new IOException();
+            }
+            // Byte-wise copy, since the ranges may overlap.
+            for (int ref = op - distance, i = 0; i < matchLength; ++i) {
+                dst[op++] = dst[ref + i];
+            }
+        }
+        return (op - dstOffset);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xff) |
+            ((src[offset + 1] & 0xff) << 8) |
+            ((src[offset + 2] & 0xff) << 16) |
+            ((src[offset + 3] & 0xff) << 24);
+    }
+
+    // Writes a sequence of literals optionally followed by a match, returning
+    // the resultant output position.
+    private static int writeSequence(byte[] src, int literalOffset,
+            int literalLength, byte[] dst, int op, int distance,
+            int matchLength) {
+        int tokenPosition = op++;
+        int token;
+
+        if (literalLength >= 15) {
+            token = (15 << 4);
+            op = writeLength(dst, op, literalLength - 15);
+        }
+        else {
+            token = (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        op += literalLength;
+
+        if (matchLength != 0) {
+            dst[op++] = (byte)distance;
+            dst[op++] = (byte)(distance >>> 8);
+
+            int encodedLength = matchLength - MIN_MATCH;
+            if (encodedLength >= 15) {
+                token |= 15;
+                op = writeLength(dst, op, encodedLength - 15);
+            }
+            else {
+                token |= encodedLength;
+            }
+        }
+
+        dst[tokenPosition] = (byte)token;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte)255;
+            length -= 255;
+        }
+        dst[op++] = (byte)length;
+        return op;
+    }
+}
@@ -0,0 +1,233 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import x2java.*;
+import x2java.flows.TimeFlow;
+
+/** Table of the requests awaiting their responses, keyed by wait handle.
+ *  <p>
+ *  Wait handles are allocated sequentially and mapped directly onto the
+ *  slots of a power-of-2 array, so that lookups take constant time without
+ *  boxing. The table grows only when a slot is still held by a request as
+ *  old as the table size. Timeouts are reserved on the default TimeFlow.
+ */
+public final class PendingRequests {
+    private final Object syncRoot = new Object();
+
+    private int[] waitHandles;  // 0 for an empty slot
+    private Object[] futures;
+    private long[] timeoutTokens;
+    private int mask;
+    private int size;
+    private int nextWaitHandle;
+
+    // Receives the timeout events reserved for the pending requests
+    private final Flow timeoutSink = new Flow() {
+        @Override
+        public void feed(Event e) {
+            expire(((TimeoutEvent)e).getIntParam());
+        }
+
+        @Override
+        public void shutdown() { }
+
+        @Override
+        public Flow startup() { return this; }
+    };
+
+    public PendingRequests() {
+        this(64);
+    }
+
+    /** Constructs a new table with the specified initial capacity, rounded up
+     *  to a power of 2.
+     */
+    public PendingRequests(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        allocate(n);
+    }
+
+    /** Gets the number of the pending requests. */
+    public int size() {
+        synchronized (syncRoot) {
+            return size;
+        }
+    }
+
+    /** Registers a new pending request to be completed with its response, or
+     *  with a TimeoutException after the specified milliseconds (0 for no
+     *  timeout), returning the wait handle to be sent with the request.
+     */
+    public int add(CompletableFuture<Event> future, long timeoutMillis) {
+        int waitHandle;
+        synchronized (syncRoot) {
+            do {
+                waitHandle = ++nextWaitHandle;
+                if (waitHandle <= 0) {
+                    nextWaitHandle = waitHandle = 1;
+                }
+            } while (waitHandles[waitHandle & mask] == waitHandle);
+            if (waitHandles[waitHandle & mask] != 0) {
+                grow(waitHandle);
+            }
+            int slot = waitHandle & mask;
+            waitHandles[slot] = waitHandle;
+            futures[slot] = future;
+            timeoutTokens[slot] = 0;
+            ++size;
+        }
+        if (timeoutMillis > 0) {
+            long token = TimeFlow.instance().reserve(timeoutSink,
+                new TimeoutEvent().setKey(this).setIntParam(waitHandle),
+                timeoutMillis);
+            synchronized (syncRoot) {
+                int slot = waitHandle & mask;
+                if (waitHandles[slot] == waitHandle) {
+                    timeoutTokens[slot] = token;
+                    token = 0;
+                }
+            }
+            if (token != 0) {
+                // Already completed
+                TimeFlow.instance().cancel(token);
+            }
+        }
+        return waitHandle;
+    }
+
+    /** Completes the pending request correlated with the specified response,
+     *  returning false if there is no such request.
+     */
+    public boolean complete(Event response) {
+        int waitHandle = response._getWaitHandle();
+        if (waitHandle == 0) {
+            return false;
+        }
+        CompletableFuture<Event> future = remove(waitHandle);
+        if (future == null) {
+            return false;
+        }
+        future.complete(response);
+        return true;
+    }
+
+    /** Fails all the pending requests with the specified cause. */
+    public void failAll(Throwable cause) {
+        List<CompletableFuture<Event>> failed =
+            new ArrayList<CompletableFuture<Event>>();
+        List<Long> tokens = new ArrayList<Long>();
+        synchronized (syncRoot) {
+            for (int i = 0; i < waitHandles.length; ++i) {
+                if (waitHandles[i] == 0) {
+                    continue;
+                }
+                failed.add(futureAt(i));
+                if (timeoutTokens[i] != 0) {
+                    tokens.add(timeoutTokens[i]);
+                }
+                clear(i);
+            }
+        }
+        for (int i = 0, count = tokens.size(); i < count; ++i) {
+            TimeFlow.instance().cancel(tokens.get(i));
+        }
+        for (int i = 0, count = failed.size(); i < count; ++i) {
+            failed.get(i).completeExceptionally(cause);
+        }
+    }
+
+    // Fails the specified pending request on timeout.
+    private void expire(int waitHandle) {
+        CompletableFuture<Event> future;
+        synchronized (syncRoot) {
+            int slot = waitHandle & mask;
+            if (waitHandles[slot] != waitHandle) {
+                return;
+            }
+            future = futureAt(slot);
+            timeoutTokens[slot] = 0;  // already fired
+            clear(slot);
+        }
+        future.completeExceptionally(new TimeoutException(
+            "no response for wait handle " + waitHandle));
+    }
+
+    private CompletableFuture<Event> remove(int waitHandle) {
+        CompletableFuture<Event> future;
+        long token;
+        synchronized (syncRoot) {
+            int slot = waitHandle & mask;
+            if (waitHandles[slot] != waitHandle) {
+                return null;
+            }
+            future = futureAt(slot);
+            token = timeoutTokens[slot];
+            clear(slot);
+        }
+        if (token != 0) {
+            TimeFlow.instance().cancel(token);
+        }
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Event> futureAt(int slot) {
+        return (CompletableFuture<Event>)futures[slot];
+    }
+
+    private void clear(int slot) {
+        waitHandles[slot] = 0;
+        futures[slot] = null;
+        timeoutTokens[slot] = 0;
+        --size;
+    }
+
+    private void allocate(int capacity) {
+        waitHandles = new int[capacity];
+        futures = new Object[capacity];
+        timeoutTokens = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Doubles the table until the slot for the specified wait handle is free.
+    private void grow(int waitHandle) {
+        int[] oldWaitHandles = waitHandles;
+        Object[] oldFutures = futures;
+        long[] oldTimeoutTokens = timeoutTokens;
+        int capacity = oldWaitHandles.length;
+        while (true) {
+            capacity <<= 1;
+            if (capacity <= 0) {
+                throw new IllegalStateException("too many pending requests");
+            }
+            allocate(capacity);
+            boolean collided = false;
+            for (int i = 0; i < oldWaitHandles.length; ++i) {
+                int h = oldWaitHandles[i];
+                if (h == 0) {
+                    continue;
+                }
+                int slot = h & mask;
+                if (waitHandles[slot] != 0 || slot == (waitHandle & mask)) {
+                    collided = true;
+                    break;
+                }
+                waitHandles[slot] = h;
+                futures[slot] = oldFutures[i];
+                timeoutTokens[slot] = oldTimeoutTokens[i];
+            }
+            if (!collided) {
+                return;
+            }
+        }
+    }
+}
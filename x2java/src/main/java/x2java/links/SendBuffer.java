@@ -14,17 +14,27 @@ public class SendBuffer {
     private byte[] headerBytes;
     private int headerLength;
     private Buffer buffer;
+    private Buffer.Slice slice;
+    private boolean compressed;
+    private boolean response;
 
     public SendBuffer() {
         headerBytes = new byte[5];
-        buffer = new Buffer();
     }
 
     public void close() {
-        buffer.close();
+        if (buffer != null) {
+            buffer.close();
+        }
     }
 
+    /** Gets the body buffer, acquiring it from the pool on the first call so
+     *  that sending a slice takes none.
+     */
     public Buffer getBuffer() {
+        if (buffer == null) {
+            buffer = new Buffer();
+        }
         return buffer;
     }
 
@@ -32,6 +42,47 @@ public class SendBuffer {
         return headerBytes;
     }
 
+    /** Gets the body length in bytes. */
+    public int length() {
+        if (slice != null) {
+            return slice.length();
+        }
+        return (buffer != null ? buffer.length() : 0);
+    }
+
+    /** Gets the slice to be sent as the body in place of the buffer. */
+    public Buffer.Slice getSlice() {
+        return slice;
+    }
+
+    /** Sets the slice to be sent as the body in place of the buffer. The
+     *  caller remains responsible for the reference to the slice.
+     */
+    public void setSlice(Buffer.Slice value) {
+        slice = value;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean value) {
+        compressed = value;
+    }
+
+    /** Determines whether the body is a response to a request. */
+    public boolean isResponse() {
+        return response;
+    }
+
+    public void setResponse(boolean value) {
+        response = value;
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
     public void setHeaderLength(int value) {
         headerLength = value;
     }
@@ -44,11 +95,21 @@ public class SendBuffer {
         
         list.add(byteBuffer);
 
-        buffer.listOccupiedBuffers(list);
+        if (slice != null) {
+            slice.listBuffers(list);
+        }
+        else if (buffer != null) {
+            buffer.listOccupiedBuffers(list);
+        }
     }
 
     public void reset() {
         headerLength = 0;
-        buffer.trim();
+        slice = null;
+        compressed = false;
+        response = false;
+        if (buffer != null) {
+            buffer.trim();
+        }
     }
 }
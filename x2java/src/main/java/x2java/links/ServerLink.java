@@ -7,54 +7,92 @@ import java.util.*;
 import java.util.concurrent.locks.*;
 
 import x2java.*;
+import x2java.metrics.*;
 
 /** Common base class for multi-session server links. */
 public abstract class ServerLink extends SessionBasedLink {
     protected HashMap<Integer, LinkSession> sessions;
+    // Copy-on-write array of the sessions, replaced under the write lock on
+    // every change so that iterations need neither locking nor copying
+    private volatile LinkSession[] sessionArray = new LinkSession[0];
 
     protected ServerLink(String name) {
         super(name);
         sessions = new HashMap<Integer, LinkSession>();
     }
 
-    /** Broadcasts the specified event to all the connected clients. */
+    /** Broadcasts the specified event to all the connected clients.
+     *  <p>
+     *  The event is serialized only once into a shared reference-counted
+     *  slice that every session sends out as it is, unless it goes to a
+     *  single session or the frames are to be compressed. Sessions with delta
+     *  encoding still serialize it on their own.
+     */
     public void broadcast(Event e) {
-        Lock rlock = rwlock.readLock();
-        rlock.lock();
-        ArrayList<LinkSession> snapshot;
+        LinkSession[] snapshot = sessionArray;
+        int count = snapshot.length;
+        if (count < 2 || e instanceof RawEvent || compressor() != null) {
+            for (int i = 0; i < count; ++i) {
+                snapshot[i].send(e);
+            }
+            return;
+        }
+
+        RawEvent shared = serializeOnce(e);
         try {
-            snapshot = new ArrayList<LinkSession>(sessions.values());
+            for (int i = 0; i < count; ++i) {
+                LinkSession session = snapshot[i];
+                session.send(session.deltaEncoding != null ? e : shared);
+            }
         }
         finally {
-            rlock.unlock();
-        }
-        for (int i = 0, count = snapshot.size(); i < count; ++i) {
-            snapshot.get(i).send(e);
+            // Each session holds its own reference until written out.
+            shared.release();
         }
     }
 
-    @Override
-    public void close() {
-        if (closed) { return; }
+    // Serializes the specified event into a raw event wrapping a new slice.
+    private static RawEvent serializeOnce(Event e) {
+        Buffer buffer = new Buffer();
+        try {
+            e.serialize(new Serializer(buffer));
+            return new RawEvent(e._getTypeId(), buffer.slice(0, buffer.length()));
+        }
+        finally {
+            buffer.close();
+        }
+    }
 
-        // Close all the active sessions
+    /** Gets the I/O metrics of the session with the specified handle, or
+     *  null if there is no such session.
+     */
+    public LinkMetrics metrics(int handle) {
         Lock rlock = rwlock.readLock();
         rlock.lock();
-        ArrayList<LinkSession> snapshot;
         try {
-            snapshot = new ArrayList<LinkSession>(sessions.values());
+            LinkSession session = sessions.get(handle);
+            return (session != null ? session.metrics() : null);
         }
         finally {
             rlock.unlock();
         }
-        for (int i = 0, count = snapshot.size(); i < count; ++i) {
-            snapshot.get(i).close();
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+
+        // Close all the active sessions
+        LinkSession[] snapshot = sessionArray;
+        for (int i = 0; i < snapshot.length; ++i) {
+            snapshot[i].close();
         }
 
         Lock wlock = rwlock.writeLock();
         wlock.lock();
         try {
             sessions.clear();
+            sessionArray = new LinkSession[0];
         }
         finally {
             wlock.unlock();
@@ -78,12 +116,42 @@ public abstract class ServerLink extends SessionBasedLink {
         try {
             LinkSession session = (LinkSession)context;
             sessions.put(session.handle, session);
+            updateSessionArray();
         }
         finally {
             wlock.unlock();
         }
     }
 
+    @Override
+    protected void onSessionDisconnectedInternal(int handle, Object context) {
+        Lock wlock = rwlock.writeLock();
+        wlock.lock();
+        try {
+            if (sessions.get(handle) == context) {
+                sessions.remove(handle);
+                updateSessionArray();
+            }
+        }
+        finally {
+            wlock.unlock();
+        }
+    }
+
+    @Override
+    protected void onHeartbeat() {
+        LinkSession[] snapshot = sessionArray;
+        for (int i = 0; i < snapshot.length; ++i) {
+            snapshot[i].onHeartbeat();
+        }
+    }
+
+    // Replaces the session array with the current sessions, under the write
+    // lock.
+    private void updateSessionArray() {
+        sessionArray = sessions.values().toArray(new LinkSession[sessions.size()]);
+    }
+
     /** Sends out the specified event through this link channel. */
     public void send(Event e) {
         Lock rlock = rwlock.readLock();
@@ -98,4 +166,19 @@ public abstract class ServerLink extends SessionBasedLink {
             rlock.unlock();
         }
     }
+
+    @Override
+    protected void sendResponse(Event e) {
+        Lock rlock = rwlock.readLock();
+        rlock.lock();
+        try {
+            LinkSession session = sessions.get(e._getHandle());
+            if (session != null) {
+                session.respond(e);
+            }
+        }
+        finally {
+            rlock.unlock();
+        }
+    }
 }
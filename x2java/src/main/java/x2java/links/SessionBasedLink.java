@@ -3,22 +3,193 @@
 
 package x2java.links;
 
+import java.util.*;
 import java.util.concurrent.locks.*;
 
 import x2java.*;
+import x2java.metrics.*;
 
 /** Abstract base class for session-based links. */
 public abstract class SessionBasedLink extends Link {
+    /** Default maximum decompressed frame body length in bytes. */
+    public static final int DEFAULT_MAX_DECOMPRESSED_LENGTH = 16 << 20;
+
     protected ReadWriteLock rwlock;
 
+    private DeltaEncoding deltaEncoding;
+
+    private volatile Compressor compressor;
+    private volatile int compressionThreshold;
+    private volatile int maxDecompressedLength = DEFAULT_MAX_DECOMPRESSED_LENGTH;
+
+    // Type ids of the events to be posted up undecoded, copied on write
+    private volatile Set<Integer> passThroughTypes;
+
+    private volatile int keepaliveInterval;
+    private volatile int idleTimeout;
+
+    private final LinkMetrics metrics;
+    private volatile boolean sessionMetrics;
+
     static {
-        // event factory registration here
+        EventFactory.register(HeartbeatEvent.class);
     }
 
     protected SessionBasedLink(String name) {
         super(name);
 
         rwlock = new ReentrantReadWriteLock();
+        passThroughTypes = Collections.emptySet();
+
+        metrics = new LinkMetrics(name);
+        MetricsRegistry.register(metrics);
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+
+        MetricsRegistry.unregister(metrics);
+
+        super.close();
+    }
+
+    /** Gets the I/O metrics of this link, summed up over all its sessions. */
+    public LinkMetrics metrics() {
+        return metrics;
+    }
+
+    /** Determines whether the metrics of each session are registered on
+     *  their own.
+     */
+    public boolean sessionMetrics() {
+        return sessionMetrics;
+    }
+
+    /** Sets whether the metrics of each session created afterward are
+     *  registered on their own to the MetricsRegistry, in addition to being
+     *  summed up into the link metrics. Defaults to false.
+     */
+    public SessionBasedLink sessionMetrics(boolean value) {
+        sessionMetrics = value;
+        return this;
+    }
+
+    /** Gets the frame body compressor of this link, or null if none. */
+    public Compressor compressor() {
+        return compressor;
+    }
+
+    /** Sets the frame body compressor of this link. Both ends of a link must
+     *  be configured with compatible compressors.
+     */
+    public SessionBasedLink compressor(Compressor value) {
+        compressor = value;
+        return this;
+    }
+
+    /** Gets the minimum frame body length in bytes to be compressed. */
+    public int compressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /** Sets the minimum frame body length in bytes to be compressed. */
+    public SessionBasedLink compressionThreshold(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        compressionThreshold = value;
+        return this;
+    }
+
+    /** Gets the maximum decompressed frame body length in bytes accepted. */
+    public int maxDecompressedLength() {
+        return maxDecompressedLength;
+    }
+
+    /** Sets the maximum decompressed frame body length in bytes accepted.
+     *  Compressed frames claiming more are dropped as decode errors.
+     */
+    public SessionBasedLink maxDecompressedLength(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException();
+        }
+        maxDecompressedLength = value;
+        return this;
+    }
+
+    /** Makes the received events of the specified type be posted up as
+     *  opaque raw events without being decoded, so that they can be forwarded
+     *  through other links as-is. Frames are always decoded while delta
+     *  encoding is enabled.
+     */
+    public SessionBasedLink passThrough(int typeId) {
+        synchronized (this) {
+            Set<Integer> types = new HashSet<Integer>(passThroughTypes);
+            types.add(typeId);
+            passThroughTypes = types;
+        }
+        return this;
+    }
+
+    /** Determines whether any event type is to be passed through. */
+    public boolean hasPassThrough() {
+        return !passThroughTypes.isEmpty();
+    }
+
+    /** Determines whether the events of the specified type are to be passed
+     *  through undecoded.
+     */
+    public boolean isPassThrough(int typeId) {
+        return passThroughTypes.contains(typeId);
+    }
+
+    /** Gets the keepalive interval in milliseconds. */
+    public int keepaliveInterval() {
+        return keepaliveInterval;
+    }
+
+    /** Sets the interval in milliseconds after which an idle session sends
+     *  out a heartbeat event to keep the other end alive, or 0 for none.
+     *  Checked on every HeartbeatEvent from the hub, so its effective
+     *  resolution is the hub heartbeat interval.
+     */
+    public SessionBasedLink keepaliveInterval(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        keepaliveInterval = value;
+        return this;
+    }
+
+    /** Gets the idle timeout in milliseconds. */
+    public int idleTimeout() {
+        return idleTimeout;
+    }
+
+    /** Sets the duration in milliseconds after which a session that has
+     *  received nothing is closed, or 0 for none. Checked on every
+     *  HeartbeatEvent from the hub.
+     */
+    public SessionBasedLink idleTimeout(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        idleTimeout = value;
+        return this;
+    }
+
+    /** Gets the delta encoding template for new link sessions. */
+    public DeltaEncoding deltaEncoding() {
+        return deltaEncoding;
+    }
+
+    /** Enables delta encoding with the event types registered in the specified
+     *  template, for the link sessions created afterward.
+     */
+    public SessionBasedLink deltaEncoding(DeltaEncoding value) {
+        deltaEncoding = value;
+        return this;
     }
 
     protected void onLinkSessionConnectedInternal(boolean result, Object context) {
@@ -35,6 +206,37 @@ public abstract class SessionBasedLink extends Link {
             .setContext(context));
     }
 
+    protected void onLinkSessionDisconnectedInternal(int handle, Object context) {
+        onSessionDisconnectedInternal(handle, context);
+
+        Hub.post(new LinkSessionDisconnected()
+            .setLinkName(name())
+            .setHandle(handle)
+            .setContext(context));
+    }
+
+    /** Called with each received event sent through respond(), to complete
+     *  the pending request it responds to. Returns true if the event has been
+     *  consumed, or false to post it up to the hub.
+     */
+    protected boolean onResponse(Event e) {
+        return false;
+    }
+
+    /** Sends out the specified response event, correlated with the given
+     *  request event received through this link. Only the events sent this
+     *  way are flagged as responses on the wire, and are matched against the
+     *  pending requests of the other end.
+     */
+    public void respond(Event request, Event response) {
+        response._setHandle(request._getHandle());
+        response._setWaitHandle(request._getWaitHandle());
+        sendResponse(response);
+    }
+
+    /** Sends out the specified event flagged as a response. */
+    protected abstract void sendResponse(Event e);
+
     /** Called when a new session creation attempt is completed. */
     protected void onSessionConnected(boolean result, Object context) {
     }
@@ -44,6 +246,12 @@ public abstract class SessionBasedLink extends Link {
     }
 
     protected abstract void onSessionConnectedInternal(boolean result, Object context);
+    protected abstract void onSessionDisconnectedInternal(int handle, Object context);
+
+    /** Called on each HeartbeatEvent to check the liveness of the active
+     *  link sessions.
+     */
+    protected abstract void onHeartbeat();
 
     /** Initializes this link on startup. */
     @Override
@@ -58,6 +266,11 @@ public abstract class SessionBasedLink extends Link {
                 onLinkSessionDisconnected((LinkSessionDisconnected)e);
             }
         });
+        bind(new HeartbeatEvent(), new Handler() {
+            public void invoke(Event e) {
+                onHeartbeat();
+            }
+        });
     }
 
     // LinkSessionConnected event handler
@@ -0,0 +1,343 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.shm;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import x2java.links.*;
+import x2java.util.*;
+
+/** Link between two processes on the same host, over a memory-mapped file
+ *  holding a single-producer/single-consumer ring per direction.
+ *  <p>
+ *  One end listens on a file path, preferably under /dev/shm, creating the
+ *  file; the other end connects to the same path. Events are framed and
+ *  decoded just as over TCP, but move without any system call: both ends
+ *  poll their receive rings, spinning for a while before parking, so that
+ *  an active link sees latencies of a few microseconds at the cost of a
+ *  busy core. Once the peer disconnects, the listening end waits for
+ *  another one to connect.
+ */
+public class ShmLink extends ClientLink implements Runnable {
+    /** Default capacity in bytes of each ring. */
+    public static final int DEFAULT_RING_CAPACITY = 1 << 20;
+
+    static final long PARK_NANOS = 50000;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // Layout of the file, with each control word on a cache line of its own
+    private static final long MAGIC = 0x78326a73686d3031L;  // "x2jshm01"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 64;
+    private static final int CREATOR_STATE_OFFSET = 128;
+    private static final int OPENER_STATE_OFFSET = 192;
+    private static final int RESET_OFFSET = 256;
+    private static final int HEAD0_OFFSET = 320;
+    private static final int TAIL0_OFFSET = 384;
+    private static final int HEAD1_OFFSET = 448;
+    private static final int TAIL1_OFFSET = 512;
+    private static final int DATA_OFFSET = 4096;
+
+    // Values of the state words
+    private static final long FREE = 0;
+    private static final long ATTACHED = 1;
+    private static final long DETACHED = 2;
+
+    private volatile int ringCapacity = DEFAULT_RING_CAPACITY;
+    private volatile int idleSpins = 100000;
+
+    private File file;
+    private boolean creator;
+    private MappedByteBuffer region;
+    // Ring 0 carries the creator's sends, and ring 1 the opener's.
+    private ShmRing ring0;
+    private ShmRing ring1;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile ShmSession active;
+    // Reset count at the time the opener attached
+    private long resetSeen;
+    // Whether the creator waits for the opener to detach from a closed session
+    private volatile boolean awaitingDetach;
+
+    public ShmLink(String name) {
+        super(name);
+    }
+
+    /** Gets the capacity in bytes of each ring. */
+    public int ringCapacity() {
+        return ringCapacity;
+    }
+
+    /** Sets the capacity in bytes of each ring, rounded up to a power of 2,
+     *  for the files created afterward.
+     */
+    public ShmLink ringCapacity(int value) {
+        if (value <= 0 || value > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < value) {
+            n <<= 1;
+        }
+        ringCapacity = n;
+        return this;
+    }
+
+    /** Gets the number of busy polls before an idle link starts parking. */
+    public int idleSpins() {
+        return idleSpins;
+    }
+
+    /** Sets the number of busy polls before an idle link starts parking,
+     *  trading CPU time for latency. 0 always parks between polls.
+     */
+    public ShmLink idleSpins(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        idleSpins = value;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+
+        running = false;
+        if (region != null && creator) {
+            LONGS.setRelease(region, CREATOR_STATE_OFFSET, DETACHED);
+        }
+        Thread t = thread;
+        if (t != null && t != Thread.currentThread()) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            }
+            catch (InterruptedException ie) { }
+        }
+        Log.info("%s close", name());
+
+        super.close();
+
+        if (creator && file != null) {
+            file.delete();
+        }
+    }
+
+    /** Creates the shared memory file at the specified path, replacing any
+     *  stale one, and waits for the other end to connect.
+     */
+    public void listen(String path) throws IOException {
+        file = new File(path);
+        creator = true;
+        file.delete();
+        int capacity = ringCapacity;
+        map(DATA_OFFSET + 2L * capacity);
+        region.putInt(CAPACITY_OFFSET, capacity);
+        LONGS.setRelease(region, CREATOR_STATE_OFFSET, ATTACHED);
+        LONGS.setRelease(region, OPENER_STATE_OFFSET, FREE);
+        LONGS.setRelease(region, RESET_OFFSET, 0L);
+        createRings(capacity);
+        ring0.clear();
+        ring1.clear();
+        // Published last, so that openers see a fully initialized file.
+        LONGS.setRelease(region, MAGIC_OFFSET, MAGIC);
+
+        start();
+        Log.info("%s listening on %s", name(), path);
+    }
+
+    /** Connects to the shared memory file at the specified path, waiting for
+     *  the other end to create it if it does not exist yet.
+     */
+    public void connect(String path) throws IOException {
+        file = new File(path);
+        creator = false;
+        start();
+    }
+
+    /** Determines whether the other end is attached to the current session. */
+    boolean isPeerAttached() {
+        if (!running) {
+            return false;
+        }
+        if (creator) {
+            return ((long)LONGS.getAcquire(region, OPENER_STATE_OFFSET) == ATTACHED);
+        }
+        return ((long)LONGS.getAcquire(region, CREATOR_STATE_OFFSET) == ATTACHED &&
+            (long)LONGS.getAcquire(region, RESET_OFFSET) == resetSeen);
+    }
+
+    /** Called when the specified session is closed, to let the other end know
+     *  it.
+     */
+    void onSessionClosing(ShmSession session) {
+        if (active != session) {
+            return;
+        }
+        active = null;
+        if (creator) {
+            // Make the opener close its session, then wait for it to detach.
+            awaitingDetach = true;
+            LONGS.getAndAdd(region, RESET_OFFSET, 1L);
+        }
+        else {
+            LONGS.setRelease(region, OPENER_STATE_OFFSET, DETACHED);
+            running = false;
+        }
+    }
+
+    private void start() {
+        running = true;
+        thread = newThread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void map(long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (size > 0) {
+                raf.setLength(size);
+            }
+            else {
+                size = raf.length();
+            }
+            region = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            region.order(ByteOrder.nativeOrder());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private void createRings(int capacity) {
+        ring0 = new ShmRing(region, HEAD0_OFFSET, TAIL0_OFFSET,
+            DATA_OFFSET, capacity);
+        ring1 = new ShmRing(region, HEAD1_OFFSET, TAIL1_OFFSET,
+            DATA_OFFSET + capacity, capacity);
+    }
+
+    // Attaches to the file as the opener, returning false to retry later.
+    private boolean attach() {
+        if (region == null) {
+            if (!file.exists() || file.length() < DATA_OFFSET) {
+                return false;
+            }
+            try {
+                map(0);
+            }
+            catch (IOException ioe) {
+                return false;
+            }
+        }
+        if ((long)LONGS.getAcquire(region, MAGIC_OFFSET) != MAGIC ||
+                (long)LONGS.getAcquire(region, CREATOR_STATE_OFFSET) != ATTACHED) {
+            region = null;  // not ready yet, or stale
+            return false;
+        }
+        if (ring0 == null) {
+            createRings(region.getInt(CAPACITY_OFFSET));
+        }
+        resetSeen = (long)LONGS.getAcquire(region, RESET_OFFSET);
+        if (!LONGS.compareAndSet(region, OPENER_STATE_OFFSET, FREE, ATTACHED)) {
+            return false;  // another opener is attached
+        }
+
+        Log.info("%s connected to %s", name(), file.getPath());
+        active = new ShmSession(this, ring0, ring1);
+        onConnectInternal(active);
+        return true;
+    }
+
+    // Performs a single round of work as the creator, returning false if
+    // there was nothing to do.
+    private boolean pollCreator() {
+        ShmSession session = active;
+        long openerState = (long)LONGS.getAcquire(region, OPENER_STATE_OFFSET);
+        if (session != null) {
+            if (openerState == DETACHED) {
+                session.close();
+                return true;
+            }
+            return session.poll();
+        }
+        if (awaitingDetach) {
+            if (openerState != DETACHED) {
+                return false;
+            }
+            // Re-arm for the next opener.
+            ring0.clear();
+            ring1.clear();
+            awaitingDetach = false;
+            LONGS.setRelease(region, OPENER_STATE_OFFSET, FREE);
+            return true;
+        }
+        if (openerState == ATTACHED) {
+            Log.info("%s accepted on %s", name(), file.getPath());
+            active = new ShmSession(this, ring1, ring0);
+            onConnectInternal(active);
+            return true;
+        }
+        if (openerState == DETACHED) {
+            // Detached before its session was ever set up here
+            ring0.clear();
+            ring1.clear();
+            LONGS.setRelease(region, OPENER_STATE_OFFSET, FREE);
+            return true;
+        }
+        return false;
+    }
+
+    // Performs a single round of work as the opener, returning false if
+    // there was nothing to do.
+    private boolean pollOpener() {
+        ShmSession session = active;
+        if (session == null) {
+            return attach();
+        }
+        if (!isPeerAttached()) {
+            session.close();
+            return true;
+        }
+        return session.poll();
+    }
+
+    public void run() {
+        int idle = 0;
+        try {
+            while (running) {
+                boolean busy = (creator ? pollCreator() : pollOpener());
+                if (busy) {
+                    idle = 0;
+                }
+                else if (++idle < idleSpins) {
+                    Thread.onSpinWait();
+                }
+                else {
+                    LockSupport.parkNanos(active != null ? PARK_NANOS : 10000000L);
+                }
+            }
+        }
+        catch (Exception e) {
+            Log.error("%s %s", name(), e.toString());
+        }
+        finally {
+            ShmSession session = active;
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+}
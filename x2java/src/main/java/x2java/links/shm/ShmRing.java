@@ -0,0 +1,110 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.shm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Single-producer/single-consumer byte ring in a shared memory region.
+ *  <p>
+ *  The head (write position) and the tail (read position) are ever-growing
+ *  longs on cache lines of their own, published with release/acquire
+ *  semantics, so that the producer and the consumer, which may live in
+ *  different processes, never take a lock. The capacity is a power of 2.
+ */
+final class ShmRing {
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer control;
+    private final int headOffset;
+    private final int tailOffset;
+    private final int dataOffset;
+    private final int capacity;
+    private final int mask;
+
+    // Separate views, as the producer and the consumer run concurrently
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+
+    ShmRing(ByteBuffer region, int headOffset, int tailOffset,
+            int dataOffset, int capacity) {
+        this.control = region;
+        this.headOffset = headOffset;
+        this.tailOffset = tailOffset;
+        this.dataOffset = dataOffset;
+        this.capacity = capacity;
+        mask = capacity - 1;
+        writeView = region.duplicate();
+        readView = region.duplicate();
+    }
+
+    /** Resets the ring to be empty. Only while neither end is using it. */
+    void clear() {
+        LONGS.setRelease(control, headOffset, 0L);
+        LONGS.setRelease(control, tailOffset, 0L);
+    }
+
+    /** Gets the number of bytes ready to be read. */
+    int available() {
+        long head = (long)LONGS.getAcquire(control, headOffset);
+        long tail = (long)LONGS.getOpaque(control, tailOffset);
+        return (int)(head - tail);
+    }
+
+    /** Writes as many remaining bytes of the specified buffer as fit,
+     *  returning the number of bytes written.
+     */
+    int write(ByteBuffer src) {
+        long head = (long)LONGS.getOpaque(control, headOffset);
+        long tail = (long)LONGS.getAcquire(control, tailOffset);
+        int n = Math.min(src.remaining(), capacity - (int)(head - tail));
+        if (n <= 0) {
+            return 0;
+        }
+        int index = (int)(head & mask);
+        int first = Math.min(n, capacity - index);
+        copy(src, writeView, dataOffset + index, first);
+        if (first < n) {
+            copy(src, writeView, dataOffset, n - first);
+        }
+        LONGS.setRelease(control, headOffset, head + n);
+        return n;
+    }
+
+    /** Reads as many available bytes as fit into the specified buffer,
+     *  returning the number of bytes read.
+     */
+    int read(ByteBuffer dst) {
+        long tail = (long)LONGS.getOpaque(control, tailOffset);
+        long head = (long)LONGS.getAcquire(control, headOffset);
+        int n = Math.min(dst.remaining(), (int)(head - tail));
+        if (n <= 0) {
+            return 0;
+        }
+        int index = (int)(tail & mask);
+        int first = Math.min(n, capacity - index);
+        readView.limit(dataOffset + index + first).position(dataOffset + index);
+        dst.put(readView);
+        if (first < n) {
+            readView.limit(dataOffset + n - first).position(dataOffset);
+            dst.put(readView);
+        }
+        LONGS.setRelease(control, tailOffset, tail + n);
+        return n;
+    }
+
+    // Copies the specified number of bytes out of the source buffer into the
+    // region at the given offset.
+    private static void copy(ByteBuffer src, ByteBuffer region, int offset,
+            int length) {
+        int limit = src.limit();
+        src.limit(src.position() + length);
+        region.limit(offset + length).position(offset);
+        region.put(src);
+        src.limit(limit);
+    }
+}
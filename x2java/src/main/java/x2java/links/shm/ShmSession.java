@@ -0,0 +1,134 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.shm;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+import x2java.*;
+import x2java.links.*;
+import x2java.metrics.*;
+import x2java.util.*;
+
+/** Link session over a pair of shared memory rings, carrying the same frames
+ *  as TCP sessions.
+ */
+public class ShmSession extends LinkSession {
+    private final ShmLink shmLink;
+    private final ShmRing rxRing;
+    private final ShmRing txRing;
+
+    // Whether received frames are left unprocessed for the flows to drain
+    private boolean rxPending;
+
+    ShmSession(ShmLink link, ShmRing rxRing, ShmRing txRing) {
+        super(link);
+        this.shmLink = link;
+        this.rxRing = rxRing;
+        this.txRing = txRing;
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+
+        shmLink.onSessionClosing(this);
+
+        super.close();
+    }
+
+    /** Takes in the bytes available in the receive ring, returning false if
+     *  there was nothing to do.
+     */
+    boolean poll() {
+        if (closed) {
+            return false;
+        }
+        if (Hub.instance().saturated()) {
+            return false;
+        }
+        if (rxPending) {
+            rxPending = false;
+            onReceiveInternal(0);
+            rxPending = Hub.instance().saturated();
+            return true;
+        }
+        if (rxRing.available() == 0) {
+            return false;
+        }
+
+        rxBufferList.clear();
+        rxBuffer.listAvailableBuffers(rxBufferList);
+        int bytesRead = 0;
+        for (int i = 0, count = rxBufferList.size(); i < count; ++i) {
+            ByteBuffer byteBuffer = rxBufferList.get(i);
+            bytesRead += rxRing.read(byteBuffer);
+            if (byteBuffer.hasRemaining()) {
+                break;
+            }
+        }
+        if (bytesRead != 0) {
+            onReceiveInternal(bytesRead);
+            rxPending = Hub.instance().saturated();
+        }
+        return true;
+    }
+
+    @Override
+    protected void buildHeader(SendBuffer sendBuffer) {
+        int header = header(sendBuffer);
+        sendBuffer.setHeaderLength(
+            Serializer.writeVariableUInt(sendBuffer.getHeaderBytes(), header));
+    }
+
+    @Override
+    protected boolean parseHeader() {
+        int header;
+        int headerLength;
+        try {
+            Mutable<Integer> length = new Mutable<Integer>();
+            header = Deserializer.readVariableUInt(rxBuffer, length);
+            headerLength = length.get();
+        } catch (Exception e) {
+            // need more to start
+            return false;
+        }
+        rxBuffer.shrink(headerLength);
+        parseHeader(header);
+        return true;
+    }
+
+    /** Copies the frames into the send ring, waiting while it is full. */
+    @Override
+    protected boolean sendInternal() {
+        int spins = 0;
+        long stalledAt = 0;
+        for (int i = 0, count = txBufferList.size(); i < count; ++i) {
+            ByteBuffer byteBuffer = txBufferList.get(i);
+            while (byteBuffer.hasRemaining()) {
+                if (txRing.write(byteBuffer) != 0) {
+                    continue;
+                }
+                if (closed || !shmLink.isPeerAttached()) {
+                    return true;  // dropped
+                }
+                if (stalledAt == 0) {
+                    stalledAt = System.nanoTime();
+                    metrics.increment(LinkMetrics.Counter.PartialWrites);
+                }
+                if (++spins < shmLink.idleSpins()) {
+                    Thread.onSpinWait();
+                }
+                else {
+                    LockSupport.parkNanos(ShmLink.PARK_NANOS);
+                }
+            }
+        }
+        if (stalledAt != 0) {
+            metrics.add(LinkMetrics.Counter.WriteStallNanos,
+                System.nanoTime() - stalledAt);
+        }
+        return true;
+    }
+}
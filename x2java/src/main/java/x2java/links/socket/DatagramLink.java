@@ -0,0 +1,438 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+import x2java.*;
+import x2java.metrics.*;
+import x2java.metrics.LinkMetrics.Counter;
+import x2java.util.*;
+
+/** Common base class for links sending events as datagrams.
+ *  <p>
+ *  Each datagram carries one or more frames in the TCP frame format
+ *  (uncompressed), optionally preceded by a fixed-length header of the
+ *  subclass. With batching on, the events sent while a previous batch is
+ *  being written are packed together into datagrams of up to
+ *  maxDatagramSize() bytes.
+ */
+public abstract class DatagramLink extends Link implements Runnable {
+    /** Default maximum datagram size, fitting in a 1500-byte Ethernet MTU. */
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1472;
+
+    // Parking time while the socket send buffer is full
+    private static final long STALL_NANOS = 50000;
+
+    protected volatile DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+
+    private volatile int maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+    private volatile boolean batching = true;
+
+    protected final LinkMetrics metrics;
+
+    // Send side, with the same double buffering as LinkSession
+    private final Object syncRoot = new Object();
+    private List<Event> eventsToSend = new ArrayList<Event>();
+    private List<Event> eventsSending = new ArrayList<Event>();
+    private boolean txFlag;
+    private Buffer txBuffer;
+    private ByteBuffer datagram;
+    private int datagramTarget;
+    private final byte[] headerBytes = new byte[5];
+    private final List<ByteBuffer> txBlocks = new ArrayList<ByteBuffer>();
+
+    // Receive side
+    private final Mutable<Integer> rxHeaderLength = new Mutable<Integer>();
+
+    protected DatagramLink(String name) {
+        super(name);
+        metrics = new LinkMetrics(name);
+        MetricsRegistry.register(metrics);
+    }
+
+    /** Gets the I/O metrics of this link. Send batches count datagrams. */
+    public LinkMetrics metrics() {
+        return metrics;
+    }
+
+    /** Gets the maximum size in bytes of the datagrams sent out. */
+    public int maxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /** Sets the maximum size in bytes of the datagrams sent out. Events not
+     *  fitting in a single datagram are dropped.
+     */
+    public DatagramLink maxDatagramSize(int value) {
+        if (value < 16 + headerLength() || value > 65507) {
+            throw new IllegalArgumentException();
+        }
+        maxDatagramSize = value;
+        return this;
+    }
+
+    /** Determines whether multiple events may be packed into a datagram. */
+    public boolean batching() {
+        return batching;
+    }
+
+    /** Sets whether multiple events may be packed into a datagram, or each
+     *  event is to be sent in a datagram of its own.
+     */
+    public DatagramLink batching(boolean value) {
+        batching = value;
+        return this;
+    }
+
+    /** Gets the local address this link is bound to, or null if unbound. */
+    public SocketAddress localAddress() {
+        DatagramChannel ch = channel;
+        try {
+            return (ch != null ? ch.getLocalAddress() : null);
+        }
+        catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) { return; }
+
+        DatagramChannel ch;
+        synchronized (syncRoot) {
+            ch = channel;
+            channel = null;
+        }
+        if (ch != null) {
+            try {
+                ch.close();
+                selector.close();
+            }
+            catch (IOException ioe) { }
+        }
+        Thread t = thread;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join();
+            }
+            catch (InterruptedException ie) { }
+        }
+        synchronized (syncRoot) {
+            release(eventsToSend);
+            eventsToSend.clear();
+            while (txFlag) {
+                // Let the ongoing batch finish with the buffers below.
+                try {
+                    syncRoot.wait();
+                }
+                catch (InterruptedException ie) { }
+            }
+            if (txBuffer != null) {
+                txBuffer.close();
+                txBuffer = null;
+            }
+        }
+        MetricsRegistry.unregister(metrics);
+        Log.info("%s close", name());
+
+        super.close();
+    }
+
+    /** Starts receiving datagrams on the specified bound channel. */
+    protected void start(DatagramChannel ch) throws IOException {
+        synchronized (syncRoot) {
+            if (channel != null) {
+                throw new IllegalStateException(name() + " already open");
+            }
+            ch.configureBlocking(false);
+            selector = Selector.open();
+            ch.register(selector, SelectionKey.OP_READ);
+            channel = ch;
+        }
+        Log.info("%s bound to %s", name(), ch.getLocalAddress());
+        thread = newThread(this);
+        thread.start();
+    }
+
+    /** Gets the number of bytes reserved at the beginning of each datagram
+     *  for the header of the subclass.
+     */
+    protected int headerLength() {
+        return 0;
+    }
+
+    /** Gets the interval in milliseconds at which onTick() is to be called,
+     *  or 0 for none.
+     */
+    protected int tickInterval() {
+        return 0;
+    }
+
+    /** Called on the receive thread at every tick interval. */
+    protected void onTick() {
+    }
+
+    /** Gets the destination of the specified event, passed back to
+     *  transmit(), or 0 to drop the event.
+     */
+    protected abstract int destination(Event e);
+
+    /** Writes out the specified datagram to the given destination. The
+     *  datagram is positioned at its beginning, with the space reserved for
+     *  the header to be filled in.
+     */
+    protected abstract void transmit(ByteBuffer datagram, int destination)
+        throws IOException;
+
+    /** Called on the receive thread with each datagram received. */
+    protected abstract void onDatagram(SocketAddress remote, ByteBuffer datagram);
+
+    /** Sends out the specified event. */
+    public void send(Event e) {
+        if (closed || channel == null) {
+            return;
+        }
+        if (e instanceof RawEvent) {
+            // Keep the slice alive until it is written out.
+            ((RawEvent)e).retain();
+        }
+        synchronized (syncRoot) {
+            eventsToSend.add(e);
+            if (txFlag) {
+                return;
+            }
+            txFlag = true;
+        }
+        beginSend();
+    }
+
+    private void beginSend() {
+        while (true) {
+            synchronized (syncRoot) {
+                if (eventsToSend.size() == 0 || channel == null) {
+                    txFlag = false;
+                    syncRoot.notifyAll();
+                    return;
+                }
+                List<Event> temp = eventsSending;
+                eventsSending = eventsToSend;
+                eventsToSend = temp;
+                if (txBuffer == null) {
+                    txBuffer = new Buffer();
+                    datagram = ByteBuffer.allocateDirect(65507);
+                }
+            }
+
+            clearDatagram();
+            for (int i = 0, count = eventsSending.size(); i < count; ++i) {
+                append(eventsSending.get(i));
+            }
+            flush();
+
+            release(eventsSending);
+            eventsSending.clear();
+        }
+    }
+
+    private void clearDatagram() {
+        datagram.clear();
+        datagram.limit(maxDatagramSize);
+        datagram.position(headerLength());
+        datagramTarget = 0;
+    }
+
+    // Packs the specified event into the current datagram, flushing it
+    // first if the event does not fit or goes to another destination.
+    private void append(Event e) {
+        int target = destination(e);
+        if (target == 0) {
+            Log.warn("%s no destination, dropped %s", name(), e);
+            return;
+        }
+
+        txBuffer.reset();
+        if (e instanceof RawEvent) {
+            ((RawEvent)e).slice().copyTo(txBuffer);
+        }
+        else {
+            e.serialize(new Serializer(txBuffer));
+        }
+        int length = txBuffer.length();
+        int headerLength = Serializer.writeVariableUInt(headerBytes, length << 1);
+        if (headerLength() + headerLength + length > maxDatagramSize) {
+            Log.warn("%s %d-byte event too large, dropped %s",
+                name(), length, e);
+            return;
+        }
+
+        if (datagram.position() != headerLength() &&
+                (target != datagramTarget || !batching ||
+                datagram.remaining() < headerLength + length)) {
+            flush();
+        }
+        datagramTarget = target;
+        datagram.put(headerBytes, 0, headerLength);
+        txBuffer.listOccupiedBuffers(txBlocks);
+        for (int i = 0, count = txBlocks.size(); i < count; ++i) {
+            ByteBuffer block = txBlocks.get(i);
+            datagram.put(block);
+            block.clear();  // txBuffer is reused for the next event
+        }
+        txBlocks.clear();
+        metrics.increment(Counter.TxFrames);
+        metrics.increment(Counter.TxEvents);
+    }
+
+    // Sends out the current datagram, if any.
+    private void flush() {
+        if (datagram.position() == headerLength()) {
+            return;
+        }
+        datagram.flip();
+        try {
+            transmit(datagram, datagramTarget);
+        }
+        catch (IOException ioe) {
+            Log.warn("%s send error %s", name(), ioe.toString());
+        }
+        clearDatagram();
+    }
+
+    /** Writes out the specified datagram to the given remote address,
+     *  waiting while the socket send buffer is full.
+     */
+    protected void write(ByteBuffer datagram, SocketAddress remote)
+            throws IOException {
+        DatagramChannel ch = channel;
+        if (ch == null) {
+            return;
+        }
+        int length = datagram.remaining();
+        int n = ch.send(datagram, remote);
+        if (n == 0) {
+            metrics.increment(Counter.PartialWrites);
+            long stalledAt = System.nanoTime();
+            while (n == 0 && ch.isOpen()) {
+                LockSupport.parkNanos(STALL_NANOS);
+                n = ch.send(datagram, remote);
+            }
+            metrics.add(Counter.WriteStallNanos, System.nanoTime() - stalledAt);
+        }
+        if (n != 0) {
+            metrics.add(Counter.TxBytes, length);
+            metrics.increment(Counter.SendBatches);
+        }
+    }
+
+    public void run() {
+        ByteBuffer received = ByteBuffer.allocateDirect(65507);
+        long tickNanos = tickInterval() * 1000000L;
+        long nextTick = System.nanoTime() + tickNanos;
+        try {
+            while (channel != null) {
+                while (Hub.instance().saturated() && channel != null) {
+                    // Let the datagrams meanwhile drop in the kernel.
+                    LockSupport.parkNanos(1000000L);
+                }
+
+                if (tickNanos > 0) {
+                    long wait = nextTick - System.nanoTime();
+                    selector.select(Math.max(1, wait / 1000000L));
+                }
+                else {
+                    selector.select();
+                }
+                selector.selectedKeys().clear();
+
+                DatagramChannel ch = channel;
+                while (ch != null) {
+                    received.clear();
+                    SocketAddress remote = ch.receive(received);
+                    if (remote == null) {
+                        break;
+                    }
+                    received.flip();
+                    metrics.add(Counter.RxBytes, received.remaining());
+                    onDatagram(remote, received);
+                }
+
+                if (tickNanos > 0 && System.nanoTime() - nextTick >= 0) {
+                    nextTick = System.nanoTime() + tickNanos;
+                    onTick();
+                }
+            }
+        }
+        catch (ClosedChannelException cce) {
+            //
+        }
+        catch (ClosedSelectorException cse) {
+            //
+        }
+        catch (Exception e) {
+            if (channel != null) {
+                Log.error("%s %s", name(), e.toString());
+            }
+        }
+    }
+
+    /** Decodes and posts up the events in the remaining bytes of the
+     *  specified datagram, setting the given handle on them.
+     */
+    protected void decode(int handle, ByteBuffer datagram) {
+        byte[] bytes = new byte[datagram.remaining()];
+        datagram.get(bytes);
+        Buffer buffer = new Buffer(bytes);
+        int offset = 0;
+        while (offset < bytes.length) {
+            Event retrieved = null;
+            try {
+                buffer.setPosition(offset);
+                int header = Deserializer.readVariableUInt(buffer, rxHeaderLength);
+                int length = (header >> 1) & 0x7fffffff;
+                offset += rxHeaderLength.get();
+                if ((header & 1) != 0 || offset + length > bytes.length) {
+                    throw new IOException("malformed frame");
+                }
+                metrics.increment(Counter.RxFrames);
+
+                Deserializer deserializer = new Deserializer(
+                    new Buffer(Arrays.copyOfRange(bytes, offset, offset + length)));
+                offset += length;
+                retrieved = deserializer.create();
+                if (retrieved != null) {
+                    retrieved.deserialize(deserializer);
+                }
+            }
+            catch (Exception e) {
+                metrics.increment(Counter.DecodeErrors);
+                Log.warn("%s error loading event", name());
+                return;  // the rest of the datagram is unreliable
+            }
+            if (retrieved != null) {
+                metrics.increment(Counter.RxEvents);
+                retrieved._setHandle(handle);
+                Hub.post(retrieved);
+            }
+        }
+    }
+
+    // Releases the raw events in the specified list.
+    private static void release(List<Event> events) {
+        for (int i = 0, count = events.size(); i < count; ++i) {
+            Event e = events.get(i);
+            if (e instanceof RawEvent) {
+                ((RawEvent)e).release();
+            }
+        }
+    }
+}
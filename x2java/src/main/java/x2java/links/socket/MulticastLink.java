@@ -0,0 +1,477 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x2java.*;
+import x2java.metrics.LinkMetrics.Counter;
+import x2java.util.*;
+
+/** Link distributing events to every member of an IP multicast group, for
+ *  one-to-many fan-out on a LAN where each event is serialized and sent
+ *  once regardless of the number of receivers.
+ *  <p>
+ *  Every datagram a link sends carries its random sender identifier and a
+ *  sequence number. Receivers deliver the events of each sender in order,
+ *  and request retransmission of the missing datagrams with NAKs addressed
+ *  to the sender, which keeps its last retransmitWindow() datagrams for
+ *  that. A gap that is not filled within nakTimeout() milliseconds is given
+ *  up on, counted in LostDatagrams. Heartbeats following the last datagram
+ *  let receivers detect lost tails. Receivers joining late start from the
+ *  first datagram they see.
+ *  <p>
+ *  Received events carry a handle identifying their sender. Events sent
+ *  out always go to the whole group, regardless of their handles.
+ */
+public class MulticastLink extends DatagramLink {
+    /** Default number of recent datagrams kept for retransmission. */
+    public static final int DEFAULT_RETRANSMIT_WINDOW = 1024;
+    /** Default interval in milliseconds between NAKs for the same gap. */
+    public static final int DEFAULT_NAK_INTERVAL = 20;
+    /** Default time in milliseconds before a gap is given up on. */
+    public static final int DEFAULT_NAK_TIMEOUT = 1000;
+
+    // Datagram types
+    private static final byte DATA = 1;
+    private static final byte NAK = 2;
+    private static final byte HEARTBEAT = 3;
+    // Type, sender identifier and sequence number
+    private static final int HEADER_LENGTH = 13;
+    // NAK header followed by the number of datagrams requested
+    private static final int NAK_LENGTH = HEADER_LENGTH + 4;
+    // The only destination, as every event goes to the group
+    private static final int GROUP = 1;
+
+    private static final AtomicInteger nextHandle = new AtomicInteger();
+
+    private final int senderId;
+    private volatile InetSocketAddress group;
+
+    private volatile int retransmitWindow = DEFAULT_RETRANSMIT_WINDOW;
+    private volatile int nakInterval = DEFAULT_NAK_INTERVAL;
+    private volatile int nakTimeout = DEFAULT_NAK_TIMEOUT;
+
+    // Send side, guarded by historyLock
+    private final Object historyLock = new Object();
+    private long nextSeq = 1;
+    private byte[][] history;
+    private int[] historyLengths;
+    private long[] historySeqs;
+    private volatile long lastTransmitted;
+
+    // Receive side, touched only by the receive thread
+    private final HashMap<Integer, Stream> streams = new HashMap<Integer, Stream>();
+    private final ByteBuffer control = ByteBuffer.allocateDirect(65507);
+
+    // Receive state of a remote sender
+    private static final class Stream {
+        final int sender;
+        final int handle;
+        SocketAddress source;
+        // Sequence number of the next datagram to deliver
+        long nextSeq;
+        // Highest sequence number known to have been sent
+        long highestSeq;
+        // Datagram bodies received ahead of a gap
+        final TreeMap<Long, byte[]> pending = new TreeMap<Long, byte[]>();
+        // Times in nanoseconds of the gap detection and the last NAK
+        long gapSince;
+        long lastNak;
+
+        Stream(int sender, SocketAddress source, long nextSeq) {
+            this.sender = sender;
+            handle = nextHandle.incrementAndGet();
+            this.source = source;
+            this.nextSeq = nextSeq;
+            highestSeq = nextSeq - 1;
+        }
+
+        boolean hasGap() {
+            return (highestSeq >= nextSeq);
+        }
+    }
+
+    public MulticastLink(String name) {
+        super(name);
+        int id;
+        do {
+            id = ThreadLocalRandom.current().nextInt();
+        } while (id == 0);
+        senderId = id;
+    }
+
+    /** Gets the random identifier of this link as a sender. */
+    public int senderId() {
+        return senderId;
+    }
+
+    /** Gets the multicast group this link is open on, or null. */
+    public InetSocketAddress group() {
+        return group;
+    }
+
+    /** Gets the number of recent datagrams kept for retransmission. */
+    public int retransmitWindow() {
+        return retransmitWindow;
+    }
+
+    /** Sets the number of recent datagrams kept for retransmission, rounded
+     *  up to a power of 2, before the link is opened.
+     */
+    public MulticastLink retransmitWindow(int value) {
+        if (value <= 0 || value > (1 << 20)) {
+            throw new IllegalArgumentException();
+        }
+        int n = 1;
+        while (n < value) {
+            n <<= 1;
+        }
+        retransmitWindow = n;
+        return this;
+    }
+
+    /** Gets the interval in milliseconds between NAKs for the same gap. */
+    public int nakInterval() {
+        return nakInterval;
+    }
+
+    /** Sets the interval in milliseconds between NAKs for the same gap, which
+     *  is also the heartbeat interval, before the link is opened.
+     */
+    public MulticastLink nakInterval(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException();
+        }
+        nakInterval = value;
+        return this;
+    }
+
+    /** Gets the time in milliseconds before a gap is given up on. */
+    public int nakTimeout() {
+        return nakTimeout;
+    }
+
+    /** Sets the time in milliseconds before a gap is given up on. */
+    public MulticastLink nakTimeout(int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException();
+        }
+        nakTimeout = value;
+        return this;
+    }
+
+    /** Joins the specified multicast group on the given network interface,
+     *  to send and receive events.
+     */
+    public void open(InetSocketAddress group, NetworkInterface ni)
+            throws IOException {
+        InetAddress address = group.getAddress();
+        if (!address.isMulticastAddress()) {
+            throw new IllegalArgumentException(address + " is not multicast");
+        }
+        synchronized (historyLock) {
+            int window = retransmitWindow;
+            history = new byte[window][];
+            historyLengths = new int[window];
+            historySeqs = new long[window];
+        }
+        this.group = group;
+
+        DatagramChannel ch = DatagramChannel.open(
+            address instanceof Inet6Address ?
+            StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        boolean started = false;
+        try {
+            ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            ch.bind(new InetSocketAddress(group.getPort()));
+            ch.setOption(StandardSocketOptions.IP_MULTICAST_IF, ni);
+            ch.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            ch.join(address, ni);
+            start(ch);
+            started = true;
+        }
+        finally {
+            if (!started) {
+                ch.close();
+            }
+        }
+        Log.info("%s joined %s on %s", name(), group, ni.getName());
+    }
+
+    /** Joins the specified multicast group on the named network interface,
+     *  to send and receive events.
+     */
+    public void open(String address, int port, String interfaceName)
+            throws IOException {
+        NetworkInterface ni = NetworkInterface.getByName(interfaceName);
+        if (ni == null) {
+            throw new IllegalArgumentException("no interface " + interfaceName);
+        }
+        open(new InetSocketAddress(address, port), ni);
+    }
+
+    @Override
+    protected int headerLength() {
+        return HEADER_LENGTH;
+    }
+
+    @Override
+    protected int tickInterval() {
+        return nakInterval;
+    }
+
+    @Override
+    protected int destination(Event e) {
+        return GROUP;
+    }
+
+    @Override
+    protected void transmit(ByteBuffer datagram, int destination)
+            throws IOException {
+        int length = datagram.remaining();
+        synchronized (historyLock) {
+            long seq = nextSeq++;
+            datagram.put(0, DATA);
+            datagram.putInt(1, senderId);
+            datagram.putLong(5, seq);
+
+            int slot = (int)seq & (history.length - 1);
+            byte[] bytes = history[slot];
+            if (bytes == null || bytes.length < length) {
+                bytes = history[slot] = new byte[Math.max(length, maxDatagramSize())];
+            }
+            datagram.get(bytes, 0, length);
+            datagram.position(0);
+            historyLengths[slot] = length;
+            historySeqs[slot] = seq;
+        }
+        write(datagram, group);
+        lastTransmitted = System.nanoTime();
+    }
+
+    /** Determines whether the received data datagram of the specified sender
+     *  and sequence number is to be dropped as if it were lost. Overridden
+     *  by tests to exercise retransmission.
+     */
+    protected boolean dropsData(int sender, long seq) {
+        return false;
+    }
+
+    @Override
+    protected void onDatagram(SocketAddress remote, ByteBuffer datagram) {
+        int length = datagram.remaining();
+        if (length < HEADER_LENGTH) {
+            metrics.increment(Counter.DecodeErrors);
+            return;
+        }
+        byte type = datagram.get(0);
+        int sender = datagram.getInt(1);
+        long seq = datagram.getLong(5);
+        if (type == NAK) {
+            if (sender == senderId && length >= NAK_LENGTH) {
+                retransmit(seq, datagram.getInt(HEADER_LENGTH));
+            }
+            return;
+        }
+        if (sender == senderId) {
+            return;  // looped back
+        }
+        if (type == DATA) {
+            if (dropsData(sender, seq)) {
+                return;
+            }
+            datagram.position(HEADER_LENGTH);
+            onData(remote, sender, seq, datagram);
+        }
+        else if (type == HEARTBEAT) {
+            onHeartbeat(remote, sender, seq);
+        }
+        else {
+            metrics.increment(Counter.DecodeErrors);
+        }
+    }
+
+    // Delivers the specified data datagram in order, or keeps it until the
+    // gap before it is filled.
+    private void onData(SocketAddress remote, int sender, long seq,
+            ByteBuffer body) {
+        Stream stream = streams.get(sender);
+        if (stream == null) {
+            stream = new Stream(sender, remote, seq);
+            streams.put(sender, stream);
+            Log.info("%s new sender %08x at %s", name(), sender, remote);
+        }
+        stream.source = remote;
+        if (seq < stream.nextSeq) {
+            return;  // duplicate
+        }
+        if (seq > stream.highestSeq) {
+            stream.highestSeq = seq;
+        }
+        if (seq == stream.nextSeq) {
+            ++stream.nextSeq;
+            decode(stream.handle, body);
+            deliverPending(stream);
+        }
+        else if (stream.pending.size() < retransmitWindow &&
+                !stream.pending.containsKey(seq)) {
+            byte[] bytes = new byte[body.remaining()];
+            body.get(bytes);
+            stream.pending.put(seq, bytes);
+        }
+        checkGap(stream);
+    }
+
+    private void onHeartbeat(SocketAddress remote, int sender, long lastSeq) {
+        Stream stream = streams.get(sender);
+        if (stream == null) {
+            // Nothing to recover from before joining
+            streams.put(sender, new Stream(sender, remote, lastSeq + 1));
+            return;
+        }
+        stream.source = remote;
+        if (lastSeq > stream.highestSeq) {
+            stream.highestSeq = lastSeq;
+        }
+        checkGap(stream);
+    }
+
+    // Delivers the kept datagrams that are now in order.
+    private void deliverPending(Stream stream) {
+        while (!stream.pending.isEmpty()) {
+            Map.Entry<Long, byte[]> first = stream.pending.firstEntry();
+            if (first.getKey() != stream.nextSeq) {
+                return;
+            }
+            stream.pending.pollFirstEntry();
+            ++stream.nextSeq;
+            decode(stream.handle, ByteBuffer.wrap(first.getValue()));
+        }
+    }
+
+    // Sends out a NAK as soon as a gap opens, and forgets the gap once
+    // filled.
+    private void checkGap(Stream stream) {
+        if (!stream.hasGap()) {
+            stream.gapSince = 0;
+            return;
+        }
+        if (stream.gapSince == 0) {
+            stream.gapSince = System.nanoTime();
+            sendNak(stream);
+        }
+    }
+
+    // Requests the retransmission of the datagrams missing in the first gap
+    // of the specified stream.
+    private void sendNak(Stream stream) {
+        long end = (stream.pending.isEmpty() ?
+            stream.highestSeq + 1 : stream.pending.firstKey());
+        int count = (int)Math.min(end - stream.nextSeq, retransmitWindow);
+        control.clear();
+        control.put(NAK);
+        control.putInt(stream.sender);
+        control.putLong(stream.nextSeq);
+        control.putInt(count);
+        control.flip();
+        try {
+            // To the group, as the sender may share its port with others on
+            // its host
+            write(control, group);
+            metrics.increment(Counter.Naks);
+        }
+        catch (IOException ioe) {
+            Log.warn("%s NAK error %s", name(), ioe.toString());
+        }
+        stream.lastNak = System.nanoTime();
+    }
+
+    // Sends out again the requested datagrams still kept.
+    private void retransmit(long from, int count) {
+        if (count <= 0 || history == null) {
+            return;
+        }
+        count = Math.min(count, history.length);
+        for (long seq = from; seq < from + count; ++seq) {
+            control.clear();
+            synchronized (historyLock) {
+                int slot = (int)seq & (history.length - 1);
+                if (historySeqs[slot] != seq) {
+                    continue;  // too old, or not sent yet
+                }
+                control.put(history[slot], 0, historyLengths[slot]);
+            }
+            control.flip();
+            try {
+                write(control, group);
+                metrics.increment(Counter.Retransmits);
+            }
+            catch (IOException ioe) {
+                Log.warn("%s retransmit error %s", name(), ioe.toString());
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected void onTick() {
+        long now = System.nanoTime();
+        long nakIntervalNanos = nakInterval * 1000000L;
+        long nakTimeoutNanos = nakTimeout * 1000000L;
+
+        for (Stream stream : streams.values()) {
+            if (!stream.hasGap()) {
+                continue;
+            }
+            if (now - stream.gapSince >= nakTimeoutNanos) {
+                giveUp(stream);
+            }
+            else if (now - stream.lastNak >= nakIntervalNanos) {
+                sendNak(stream);
+            }
+        }
+
+        // Heartbeats follow the last datagram until receivers would give up
+        // on its loss anyway.
+        long last = lastTransmitted;
+        if (last != 0 && now - last >= nakIntervalNanos &&
+                now - last < nakTimeoutNanos + nakIntervalNanos) {
+            long lastSeq;
+            synchronized (historyLock) {
+                lastSeq = nextSeq - 1;
+            }
+            control.clear();
+            control.put(HEARTBEAT);
+            control.putInt(senderId);
+            control.putLong(lastSeq);
+            control.flip();
+            try {
+                write(control, group);
+            }
+            catch (IOException ioe) {
+                Log.warn("%s heartbeat error %s", name(), ioe.toString());
+            }
+        }
+    }
+
+    // Skips the first gap of the specified stream.
+    private void giveUp(Stream stream) {
+        long end = (stream.pending.isEmpty() ?
+            stream.highestSeq + 1 : stream.pending.firstKey());
+        long lost = end - stream.nextSeq;
+        metrics.add(Counter.LostDatagrams, lost);
+        Log.warn("%s lost %d datagram(s) from %s", name(), lost, stream.source);
+        stream.nextSeq = end;
+        deliverPending(stream);
+        stream.gapSince = 0;
+        checkGap(stream);
+    }
+}
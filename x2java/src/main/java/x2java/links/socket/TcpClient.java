@@ -41,7 +41,7 @@ public class TcpClient extends ClientLink implements Runnable {
 
     public void connect(InetSocketAddress socketAddress) throws IOException {
         this.socketAddress = socketAddress;
-        new Thread(this).start();
+        newThread(this).start();
     }
 
     private void onConnect(SelectionKey key) {
@@ -55,9 +55,10 @@ public class TcpClient extends ClientLink implements Runnable {
         }
 
         Log.info("%s connected", name());
-        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        key.interestOps(SelectionKey.OP_READ);
 
-        LinkSession session = new TcpSession(this, channel);
+        TcpSession session = new TcpSession(this, channel);
+        session.key = key;
         onConnectInternal(session);
     }
 
@@ -91,11 +92,19 @@ public class TcpClient extends ClientLink implements Runnable {
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
                 while (iterator.hasNext()) {
                     SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
                     if (key.isConnectable()) {
                         onConnect(key);
-                    } else if (key.isReadable()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
                         onRead(key);
-                    } else if (key.isWritable()) {
+                    }
+                    if (key.isValid() && key.isWritable()) {
                         onWrite(key);
                     }
                 }
@@ -41,7 +41,7 @@ public class TcpServer extends ServerLink implements Runnable {
 
     public void listen(InetSocketAddress socketAddress) throws IOException {
         this.socketAddress = socketAddress;
-        new Thread(this).start();
+        newThread(this).start();
     }
 
     private void onAccept(SelectionKey key) {
@@ -65,8 +65,8 @@ public class TcpServer extends ServerLink implements Runnable {
 
             TcpSession session = new TcpSession(this, clientChannel);
 
-            clientChannel.register(selector,
-                SelectionKey.OP_READ | SelectionKey.OP_WRITE, session);
+            session.key = clientChannel.register(selector,
+                SelectionKey.OP_READ, session);
 
             onAcceptInternal(session);
         }
@@ -98,19 +98,24 @@ public class TcpServer extends ServerLink implements Runnable {
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
                 while (iterator.hasNext()) {
                     SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
 
                     if (key.isAcceptable()) {
                         onAccept(key);
-                    } else if (key.isReadable()) {
-                        TcpSession session = (TcpSession)key.attachment();
-                        if (session != null) {
-                            session.onRead(key);
-                        }
-                    } else if (key.isWritable()) {
-                        TcpSession session = (TcpSession)key.attachment();
-                        if (session != null) {
-                            session.onWrite(key);
-                        }
+                        continue;
+                    }
+                    TcpSession session = (TcpSession)key.attachment();
+                    if (session == null) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
+                        session.onRead(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        session.onWrite(key);
                     }
                 }
             }
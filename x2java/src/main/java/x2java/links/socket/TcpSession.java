@@ -8,10 +8,19 @@ import java.nio.channels.*;
 
 import x2java.*;
 import x2java.links.*;
+import x2java.metrics.LinkMetrics.Counter;
 import x2java.util.*;
 
 public class TcpSession extends LinkSession {
     protected SocketChannel channel;
+    protected SelectionKey key;
+
+    // Buffers being written, and whether the writing awaits OP_WRITE
+    private ByteBuffer[] txBuffers;
+    private boolean txPending;
+    // System.nanoTime() at which the pending writing started to wait
+    private long txStalledAt;
+    private final Object txLock = new Object();
 
     public TcpSession(SessionBasedLink link, SocketChannel channel) {
         super(link);
@@ -62,27 +71,75 @@ public class TcpSession extends LinkSession {
 
             Log.debug("%s bytesRead %d", link.name(), bytesRead);
 
-            if (bytesRead <= 0) {
+            if (bytesRead < 0) {
                 Log.info("%s %d closed", link.name(), handle);
-                // onclose
+                close();
+                return;
+            }
+            if (bytesRead == 0) {
+                return;
             }
 
             onReceiveInternal((int)bytesRead);
+
+            if (Hub.instance().saturated()) {
+                suspendReading();
+            }
         } catch (Exception e) {
             Log.warn("%s %d recv error %s", link.name(), handle, e.toString());
-            //onDisconnect();
+            close();
         }
     }
 
-    public void onWrite(SelectionKey key) {
+    // Stops reading from the socket until the saturated flows drain, so that
+    // TCP flow control pushes back on the sender.
+    private void suspendReading() {
+        try {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } catch (CancelledKeyException cke) {
+            return;
+        }
+        Log.debug("%s %d reading suspended", link.name(), handle);
+        Hub.instance().whenDrained(resumeReading);
+    }
 
+    // Processes the frames left received, and then resumes reading unless
+    // the flows get saturated again.
+    private final Runnable resumeReading = new Runnable() {
+        public void run() {
+            if (closed) {
+                return;
+            }
+            onReceiveInternal(0);
+            if (Hub.instance().saturated()) {
+                Hub.instance().whenDrained(this);
+                return;
+            }
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                key.selector().wakeup();
+            } catch (CancelledKeyException cke) {
+                // closed
+            }
+        }
+    };
+
+    public void onWrite(SelectionKey key) {
+        synchronized (txLock) {
+            if (!txPending || !write()) {
+                return;
+            }
+            txPending = false;
+            metrics.add(Counter.WriteStallNanos, System.nanoTime() - txStalledAt);
+        }
+        onSendInternal();
     }
 
     @Override
     protected void buildHeader(SendBuffer sendBuffer) {
-        Log.debug("%s buffer length %d", link.name(), sendBuffer.getBuffer().length());
+        Log.debug("%s buffer length %d", link.name(), sendBuffer.length());
 
-        int header = sendBuffer.getBuffer().length() << 1;
+        int header = header(sendBuffer);
 
         Log.debug("%s header %d", link.name(), header);
 
@@ -106,7 +163,7 @@ public class TcpSession extends LinkSession {
             return false;
         }
         rxBuffer.shrink(headerLength);
-        lengthToReceive = (header >> 1) & 0x7fffffff;
+        parseHeader(header);
 
         Log.debug("%s lengthToReceive %d", link.name(), lengthToReceive);
 
@@ -114,32 +171,55 @@ public class TcpSession extends LinkSession {
     }
 
     @Override
-    protected void sendInternal() {
+    protected boolean sendInternal() {
         Log.debug("%s sendInternal() with %d buffer(s)", link.name(), txBufferList.size());
 
-        try {
-            ByteBuffer[] byteBuffers = new ByteBuffer[txBufferList.size()];
-            txBufferList.toArray(byteBuffers);
-
-            for (int i = 0; i < byteBuffers.length; ++i) {
-                ByteBuffer byteBuffer = byteBuffers[i];
+        synchronized (txLock) {
+            txBuffers = new ByteBuffer[txBufferList.size()];
+            txBufferList.toArray(txBuffers);
 
-                byte[] array = byteBuffer.array();
-                int offset = byteBuffer.arrayOffset() + byteBuffer.position();
-                int length = byteBuffer.limit();
-
-                Log.debug("%d %d", offset, length);
+            if (write()) {
+                return true;
+            }
 
-                for (int j = 0; j < length; ++j) {
-                    byte b = array[offset + j];
-                    Log.debug("%02x ", b);
-                }
+            // Wait for the socket to become writable again.
+            txPending = true;
+            txStalledAt = System.nanoTime();
+            metrics.increment(Counter.PartialWrites);
+            try {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            } catch (CancelledKeyException cke) {
+                txPending = false;
+                return true;
             }
+            return false;
+        }
+    }
 
-            channel.write(byteBuffers);
+    // Writes out as many bytes as possible without blocking, returning true
+    // if there is nothing left to write, or nothing more to be written as
+    // the session has been closed on an error.
+    private boolean write() {
+        try {
+            channel.write(txBuffers);
         } catch (Exception e) {
             Log.warn("%s %d send error %s", link.name(), handle, e.toString());
-            //onDisconnect();
+            close();
+            return true;
+        }
+
+        if (txBuffers.length != 0 &&
+                txBuffers[txBuffers.length - 1].hasRemaining()) {
+            return false;
         }
+        if (txPending) {
+            try {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (CancelledKeyException cke) {
+                // closed
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,227 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.links.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x2java.*;
+import x2java.util.*;
+
+/** Connectionless link sending events as UDP datagrams, for event streams
+ *  that tolerate loss but not head-of-line blocking.
+ *  <p>
+ *  Remote endpoints are identified by link handles: the endpoints added
+ *  explicitly or heard from get a handle each, which is set on the events
+ *  received from them and selects the destination of the events sent out.
+ *  Events with no handle go to the default endpoint. Datagrams to different
+ *  endpoints are never batched together. There is no retransmission,
+ *  ordering or flow control.
+ *  <p>
+ *  The endpoints learned from received datagrams are forgotten once idle
+ *  for endpointTimeout(), and their number is capped by maxLearned(), past
+ *  which datagrams from new sources are dropped.
+ */
+public class UdpLink extends DatagramLink {
+    /** Default idle time in milliseconds before a learned endpoint expires. */
+    public static final int DEFAULT_ENDPOINT_TIMEOUT = 60000;
+    /** Default maximum number of learned endpoints. */
+    public static final int DEFAULT_MAX_LEARNED = 4096;
+
+    private static final AtomicInteger nextHandle = new AtomicInteger();
+
+    private final ConcurrentHashMap<SocketAddress, Integer> handles =
+        new ConcurrentHashMap<SocketAddress, Integer>();
+    private final ConcurrentHashMap<Integer, SocketAddress> endpoints =
+        new ConcurrentHashMap<Integer, SocketAddress>();
+    // Handles of the learned endpoints, with the time last heard from
+    private final ConcurrentHashMap<Integer, Long> learned =
+        new ConcurrentHashMap<Integer, Long>();
+    private volatile int defaultHandle;
+    private volatile int endpointTimeout = DEFAULT_ENDPOINT_TIMEOUT;
+    private volatile int maxLearned = DEFAULT_MAX_LEARNED;
+
+    public UdpLink(String name) {
+        super(name);
+    }
+
+    /** Binds this link to the specified local port, to receive datagrams. */
+    public void bind(int port) throws IOException {
+        bind(new InetSocketAddress(port));
+    }
+
+    /** Binds this link to the specified local address, to receive
+     *  datagrams.
+     */
+    public void bind(InetSocketAddress socketAddress) throws IOException {
+        DatagramChannel ch = DatagramChannel.open();
+        boolean started = false;
+        try {
+            ch.bind(socketAddress);
+            start(ch);
+            started = true;
+        }
+        finally {
+            if (!started) {
+                ch.close();
+            }
+        }
+    }
+
+    /** Adds the specified remote endpoint, making it the default one, and
+     *  returns its handle. Binds this link to an ephemeral port if unbound.
+     */
+    public int connect(InetSocketAddress remote) throws IOException {
+        if (channel == null) {
+            bind(new InetSocketAddress(0));
+        }
+        int handle = addEndpoint(remote);
+        defaultHandle = handle;
+        return handle;
+    }
+
+    /** Gets the idle time in milliseconds before a learned endpoint
+     *  expires.
+     */
+    public int endpointTimeout() {
+        return endpointTimeout;
+    }
+
+    /** Sets the idle time in milliseconds before an endpoint learned from
+     *  received datagrams expires, or 0 for never. The endpoints added
+     *  explicitly never expire.
+     */
+    public UdpLink endpointTimeout(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        endpointTimeout = value;
+        return this;
+    }
+
+    /** Gets the maximum number of learned endpoints. */
+    public int maxLearned() {
+        return maxLearned;
+    }
+
+    /** Sets the maximum number of endpoints learned from received datagrams,
+     *  or 0 to take datagrams only from the endpoints added explicitly.
+     */
+    public UdpLink maxLearned(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException();
+        }
+        maxLearned = value;
+        return this;
+    }
+
+    /** Adds the specified remote endpoint, returning its handle. */
+    public int addEndpoint(SocketAddress remote) {
+        int handle = add(remote, false);
+        // No longer subject to expiry, if learned before
+        learned.remove(handle);
+        return handle;
+    }
+
+    // Adds the specified remote endpoint unless already added, returning its
+    // handle.
+    private int add(SocketAddress remote, boolean learn) {
+        Integer handle = handles.get(remote);
+        if (handle != null) {
+            return handle;
+        }
+        Integer newHandle = nextHandle.incrementAndGet();
+        // Published as an endpoint first, so that a handle found is always
+        // sendable.
+        endpoints.put(newHandle, remote);
+        if (learn) {
+            learned.put(newHandle, System.currentTimeMillis());
+        }
+        handle = handles.putIfAbsent(remote, newHandle);
+        if (handle != null) {
+            endpoints.remove(newHandle);
+            learned.remove(newHandle);
+            return handle;
+        }
+        return newHandle;
+    }
+
+    /** Gets the remote endpoint with the specified handle, or null. */
+    public SocketAddress endpoint(int handle) {
+        return endpoints.get(handle);
+    }
+
+    /** Removes the remote endpoint with the specified handle. */
+    public void removeEndpoint(int handle) {
+        SocketAddress remote = endpoints.remove(handle);
+        if (remote != null) {
+            handles.remove(remote, handle);
+        }
+        learned.remove(handle);
+        if (defaultHandle == handle) {
+            defaultHandle = 0;
+        }
+    }
+
+    @Override
+    protected int destination(Event e) {
+        int handle = e._getHandle();
+        if (handle == 0) {
+            handle = defaultHandle;
+        }
+        return (endpoints.containsKey(handle) ? handle : 0);
+    }
+
+    @Override
+    protected void transmit(ByteBuffer datagram, int destination)
+            throws IOException {
+        SocketAddress remote = endpoints.get(destination);
+        if (remote != null) {
+            write(datagram, remote);
+        }
+    }
+
+    @Override
+    protected int tickInterval() {
+        return 1000;
+    }
+
+    // Removes the learned endpoints idle for too long.
+    @Override
+    protected void onTick() {
+        int timeout = endpointTimeout;
+        if (timeout == 0 || learned.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, Long> entry : learned.entrySet()) {
+            if (now - entry.getValue() > timeout) {
+                Log.debug("%s endpoint %d expired", name(), entry.getKey());
+                removeEndpoint(entry.getKey());
+            }
+        }
+    }
+
+    @Override
+    protected void onDatagram(SocketAddress remote, ByteBuffer datagram) {
+        Integer handle = handles.get(remote);
+        if (handle == null) {
+            if (learned.size() >= maxLearned) {
+                Log.debug("%s dropped a datagram from unknown %s", name(),
+                    remote);
+                return;
+            }
+            handle = add(remote, true);
+        }
+        else if (learned.containsKey(handle)) {
+            learned.replace(handle, System.currentTimeMillis());
+        }
+        decode(handle, datagram);
+    }
+}
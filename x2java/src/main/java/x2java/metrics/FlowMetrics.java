@@ -0,0 +1,249 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import x2java.*;
+
+/** Dispatch metrics of a flow.
+ *  <p>
+ *  Recording takes no locks but on the first sight of a handler: counters
+ *  are striped, histograms are atomic bucket arrays, and the per-type and
+ *  per-handler entries are looked up in concurrent maps keyed by the event
+ *  type tags and the handlers, compared with equals().
+ */
+public final class FlowMetrics implements FlowMetricsMXBean {
+    private final Flow flow;
+
+    private final Histogram dispatchLatency = new Histogram();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+
+    private final ConcurrentMap<Event.Tag, LongAdder> eventCounts =
+        new ConcurrentHashMap<Event.Tag, LongAdder>();
+    private final ConcurrentMap<Handler, HandlerMetrics> handlers =
+        new ConcurrentHashMap<Handler, HandlerMetrics>();
+    // Number of the handlers seen so far of each class, guarded by handlers
+    private final Map<String, Integer> handlerClasses =
+        new HashMap<String, Integer>();
+
+    /** Execution metrics of a single handler. */
+    public static final class HandlerMetrics {
+        private final Handler handler;
+        private final String name;
+        private final Histogram executionTime = new Histogram();
+        private final LongAdder exceptions = new LongAdder();
+
+        HandlerMetrics(Handler handler, String name) {
+            this.handler = handler;
+            this.name = name;
+        }
+
+        /** Gets the handler being measured. */
+        public Handler handler() {
+            return handler;
+        }
+
+        /** Gets the name of the handler, made of its class name followed by
+         *  '#' and an ordinal from the second handler of the same class on.
+         */
+        public String name() {
+            return name;
+        }
+
+        /** Gets the histogram of the execution times in nanoseconds. */
+        public Histogram executionTime() {
+            return executionTime;
+        }
+
+        /** Gets the number of the exceptions thrown by the handler. */
+        public long exceptions() {
+            return exceptions.sum();
+        }
+    }
+
+    public FlowMetrics(Flow flow) {
+        this.flow = flow;
+    }
+
+    /** Gets the flow being measured. */
+    public Flow flow() {
+        return flow;
+    }
+
+    /** Gets the histogram of the enqueue-to-dispatch latencies in
+     *  nanoseconds.
+     */
+    public Histogram dispatchLatency() {
+        return dispatchLatency;
+    }
+
+    /** Gets the number of the dispatched events. */
+    public long dispatched() {
+        return dispatched.sum();
+    }
+
+    /** Gets the number of the exceptions thrown by the handlers. */
+    public long exceptions() {
+        return exceptions.sum();
+    }
+
+    /** Gets the numbers of the dispatched events, keyed by event type id. */
+    public Map<Integer, Long> eventCounts() {
+        Map<Integer, Long> result = new TreeMap<Integer, Long>();
+        for (Map.Entry<Event.Tag, LongAdder> entry : eventCounts.entrySet()) {
+            Integer typeId = entry.getKey().getTypeId();
+            Long count = result.get(typeId);
+            result.put(typeId, entry.getValue().sum() +
+                (count != null ? count : 0));
+        }
+        return result;
+    }
+
+    /** Gets the execution metrics of the handlers run so far. */
+    public Collection<HandlerMetrics> handlers() {
+        return new ArrayList<HandlerMetrics>(handlers.values());
+    }
+
+    /** Clears all the metrics, along with the maximum queue depth. */
+    public void reset() {
+        dispatchLatency.reset();
+        dispatched.reset();
+        exceptions.reset();
+        eventCounts.clear();
+        synchronized (handlers) {
+            handlers.clear();
+            handlerClasses.clear();
+        }
+        flow.resetMaxQueueDepth();
+    }
+
+    // Recording, called by the flow on its dispatching thread
+
+    /** Records the dispatch of the specified event, queued at the given
+     *  System.nanoTime(), or 0 if unknown.
+     */
+    public void onDispatch(Event e, long enqueueTime) {
+        if (enqueueTime != 0) {
+            dispatchLatency.record(System.nanoTime() - enqueueTime);
+        }
+        dispatched.increment();
+        Event.Tag tag = (Event.Tag)e._getTypeTag();
+        LongAdder count = eventCounts.get(tag);
+        if (count == null) {
+            count = new LongAdder();
+            LongAdder existing = eventCounts.putIfAbsent(tag, count);
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.increment();
+    }
+
+    /** Records a single run of the specified handler. */
+    public void onHandled(Handler handler, long nanos, boolean failed) {
+        HandlerMetrics metrics = handlers.get(handler);
+        if (metrics == null) {
+            metrics = add(handler);
+        }
+        metrics.executionTime.record(nanos);
+        if (failed) {
+            metrics.exceptions.increment();
+            exceptions.increment();
+        }
+    }
+
+    // FlowMetricsMXBean
+
+    public String getFlowName() {
+        return flow.name();
+    }
+
+    public int getQueueDepth() {
+        return flow.queueDepth();
+    }
+
+    public int getMaxQueueDepth() {
+        return flow.maxQueueDepth();
+    }
+
+    public long getDispatched() {
+        return dispatched();
+    }
+
+    public long getExceptions() {
+        return exceptions();
+    }
+
+    public double getLatencyMeanNanos() {
+        return dispatchLatency.mean();
+    }
+
+    public long getLatencyP50Nanos() {
+        return dispatchLatency.percentile(50.0);
+    }
+
+    public long getLatencyP99Nanos() {
+        return dispatchLatency.percentile(99.0);
+    }
+
+    public long getLatencyP999Nanos() {
+        return dispatchLatency.percentile(99.9);
+    }
+
+    public long getLatencyMaxNanos() {
+        return dispatchLatency.max();
+    }
+
+    public Map<String, Long> getEventCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<Integer, Long> entry : eventCounts().entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getHandlerP99Nanos() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (HandlerMetrics metrics : handlers.values()) {
+            result.put(metrics.name, metrics.executionTime.percentile(99.0));
+        }
+        return result;
+    }
+
+    public Map<String, Long> getHandlerExceptions() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (HandlerMetrics metrics : handlers.values()) {
+            result.put(metrics.name, metrics.exceptions());
+        }
+        return result;
+    }
+
+    public void resetMetrics() {
+        reset();
+    }
+
+    // Creates the metrics entry of the specified handler on its first sight,
+    // naming it after its class uniquely within this flow.
+    private HandlerMetrics add(Handler handler) {
+        synchronized (handlers) {
+            HandlerMetrics metrics = handlers.get(handler);
+            if (metrics != null) {
+                return metrics;
+            }
+            String className = handler.getClass().getName();
+            Integer count = handlerClasses.get(className);
+            count = (count != null ? count + 1 : 1);
+            handlerClasses.put(className, count);
+            String name = (count == 1 ? className : className + "#" + count);
+            metrics = new HandlerMetrics(handler, name);
+            handlers.put(handler, metrics);
+            return metrics;
+        }
+    }
+}
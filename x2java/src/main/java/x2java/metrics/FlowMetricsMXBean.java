@@ -0,0 +1,32 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.metrics;
+
+import java.util.Map;
+
+/** JMX management interface of the dispatch metrics of a flow. Times are in
+ *  nanoseconds, and event counts are keyed by event type id.
+ */
+public interface FlowMetricsMXBean {
+    String getFlowName();
+
+    int getQueueDepth();
+    int getMaxQueueDepth();
+
+    long getDispatched();
+    long getExceptions();
+
+    double getLatencyMeanNanos();
+    long getLatencyP50Nanos();
+    long getLatencyP99Nanos();
+    long getLatencyP999Nanos();
+    long getLatencyMaxNanos();
+
+    Map<String, Long> getEventCounts();
+    Map<String, Long> getHandlerP99Nanos();
+    Map<String, Long> getHandlerExceptions();
+
+    /** Clears all the metrics. */
+    void resetMetrics();
+}
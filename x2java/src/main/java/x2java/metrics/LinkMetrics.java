@@ -0,0 +1,170 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** I/O metrics of a link or of one of its sessions.
+ *  <p>
+ *  All the counters are striped LongAdders, so that recording never
+ *  contends. Session metrics roll up into the metrics of their link as they
+ *  are recorded.
+ */
+public final class LinkMetrics implements LinkMetricsMXBean {
+    /** Counters kept for each link and link session. */
+    public static enum Counter {
+        /** Bytes received, including frame headers. */
+        RxBytes,
+        /** Bytes sent, including frame headers. */
+        TxBytes,
+        /** Frames received. */
+        RxFrames,
+        /** Frames sent. */
+        TxFrames,
+        /** Events decoded out of the received frames. */
+        RxEvents,
+        /** Events sent. */
+        TxEvents,
+        /** Send batches, each gathering the events queued meanwhile. */
+        SendBatches,
+        /** Writes that could not be completed at once, waiting for the
+         *  socket to become writable.
+         */
+        PartialWrites,
+        /** Total time in nanoseconds spent waiting for the socket to become
+         *  writable.
+         */
+        WriteStallNanos,
+        /** Received frames that failed to be decoded. */
+        DecodeErrors,
+        /** Datagrams sent again on request of receivers that lost them. */
+        Retransmits,
+        /** Retransmission requests sent for lost datagrams. */
+        Naks,
+        /** Lost datagrams given up on, no longer available to retransmit. */
+        LostDatagrams
+    }
+
+    private static final Counter[] counterValues = Counter.values();
+    // Rate sampling interval in nanoseconds
+    private static final long RATE_INTERVAL = 1000000000L;
+
+    private final String linkName;
+    private final int handle;
+    private final LinkMetrics parent;
+    private final LongAdder[] counters;
+
+    // Last rate sample, and the rates per second computed on it
+    private long sampledAt;
+    private final long[] sampled;
+    private final double[] rates;
+
+    /** Constructs new link metrics. */
+    public LinkMetrics(String linkName) {
+        this(linkName, 0, null);
+    }
+
+    /** Constructs new session metrics rolling up into the specified link
+     *  metrics.
+     */
+    public LinkMetrics(LinkMetrics parent, int handle) {
+        this(parent.linkName, handle, parent);
+    }
+
+    private LinkMetrics(String linkName, int handle, LinkMetrics parent) {
+        this.linkName = linkName;
+        this.handle = handle;
+        this.parent = parent;
+        counters = new LongAdder[counterValues.length];
+        for (int i = 0; i < counters.length; ++i) {
+            counters[i] = new LongAdder();
+        }
+        sampledAt = System.nanoTime();
+        sampled = new long[counterValues.length];
+        rates = new double[counterValues.length];
+    }
+
+    /** Gets the name of the link measured. */
+    public String linkName() {
+        return linkName;
+    }
+
+    /** Gets the handle of the session measured, or 0 for a whole link. */
+    public int handle() {
+        return handle;
+    }
+
+    /** Gets the link metrics these session metrics roll up into, or null. */
+    public LinkMetrics parent() {
+        return parent;
+    }
+
+    /** Adds the specified amount to the given counter. */
+    public void add(Counter counter, long value) {
+        counters[counter.ordinal()].add(value);
+        if (parent != null) {
+            parent.add(counter, value);
+        }
+    }
+
+    /** Increments the specified counter. */
+    public void increment(Counter counter) {
+        add(counter, 1);
+    }
+
+    /** Gets the current value of the specified counter. */
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /** Gets the rate per second of the specified counter, averaged over the
+     *  last interval of at least one second between two calls.
+     */
+    public double rate(Counter counter) {
+        synchronized (rates) {
+            long now = System.nanoTime();
+            long elapsed = now - sampledAt;
+            if (elapsed >= RATE_INTERVAL) {
+                for (int i = 0; i < counters.length; ++i) {
+                    long value = counters[i].sum();
+                    rates[i] = (value - sampled[i]) * 1e9 / elapsed;
+                    sampled[i] = value;
+                }
+                sampledAt = now;
+            }
+            return rates[counter.ordinal()];
+        }
+    }
+
+    /** Gets the average number of events per send batch. */
+    public double averageBatchSize() {
+        long batches = get(Counter.SendBatches);
+        return (batches == 0 ? 0.0 : (double)get(Counter.TxEvents) / batches);
+    }
+
+    // LinkMetricsMXBean
+
+    public String getLinkName() { return linkName; }
+    public int getHandle() { return handle; }
+
+    public long getRxBytes() { return get(Counter.RxBytes); }
+    public long getTxBytes() { return get(Counter.TxBytes); }
+    public long getRxFrames() { return get(Counter.RxFrames); }
+    public long getTxFrames() { return get(Counter.TxFrames); }
+    public long getRxEvents() { return get(Counter.RxEvents); }
+    public long getTxEvents() { return get(Counter.TxEvents); }
+    public long getSendBatches() { return get(Counter.SendBatches); }
+    public long getPartialWrites() { return get(Counter.PartialWrites); }
+    public long getWriteStallNanos() { return get(Counter.WriteStallNanos); }
+    public long getDecodeErrors() { return get(Counter.DecodeErrors); }
+    public long getRetransmits() { return get(Counter.Retransmits); }
+    public long getNaks() { return get(Counter.Naks); }
+    public long getLostDatagrams() { return get(Counter.LostDatagrams); }
+
+    public double getRxBytesPerSecond() { return rate(Counter.RxBytes); }
+    public double getTxBytesPerSecond() { return rate(Counter.TxBytes); }
+    public double getRxFramesPerSecond() { return rate(Counter.RxFrames); }
+    public double getTxFramesPerSecond() { return rate(Counter.TxFrames); }
+    public double getAverageBatchSize() { return averageBatchSize(); }
+}
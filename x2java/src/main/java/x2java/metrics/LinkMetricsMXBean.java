@@ -0,0 +1,33 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.metrics;
+
+/** JMX management interface of the I/O metrics of a link or link session.
+ *  Rates are averaged over the interval between two reads, of at least one
+ *  second.
+ */
+public interface LinkMetricsMXBean {
+    String getLinkName();
+    int getHandle();
+
+    long getRxBytes();
+    long getTxBytes();
+    long getRxFrames();
+    long getTxFrames();
+    long getRxEvents();
+    long getTxEvents();
+    long getSendBatches();
+    long getPartialWrites();
+    long getWriteStallNanos();
+    long getDecodeErrors();
+    long getRetransmits();
+    long getNaks();
+    long getLostDatagrams();
+
+    double getRxBytesPerSecond();
+    double getTxBytesPerSecond();
+    double getRxFramesPerSecond();
+    double getTxFramesPerSecond();
+    double getAverageBatchSize();
+}
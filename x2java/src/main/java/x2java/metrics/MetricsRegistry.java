@@ -0,0 +1,198 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import x2java.util.*;
+
+/** Process-wide registry of the flow and link metrics, optionally exported
+ *  as JMX MBeans named "x2java:type=Flow,name=&lt;flow name&gt;",
+ *  "x2java:type=Link,name=&lt;link name&gt;" and
+ *  "x2java:type=LinkSession,link=&lt;link name&gt;,handle=&lt;handle&gt;".
+ */
+public final class MetricsRegistry {
+    // Flow metrics keyed by flow name, link metrics keyed by link name, and
+    // link session metrics keyed by session handle
+    private static final ConcurrentMap<String, FlowMetrics> flows =
+        new ConcurrentHashMap<String, FlowMetrics>();
+    private static final ConcurrentMap<String, LinkMetrics> links =
+        new ConcurrentHashMap<String, LinkMetrics>();
+    private static final ConcurrentMap<Integer, LinkMetrics> sessions =
+        new ConcurrentHashMap<Integer, LinkMetrics>();
+    private static final Object syncRoot = new Object();
+    private static MBeanServer server;
+
+    private MetricsRegistry() { }
+
+    /** Gets the metrics of all the registered flows. */
+    public static List<FlowMetrics> flows() {
+        return new ArrayList<FlowMetrics>(flows.values());
+    }
+
+    /** Gets the metrics of the registered flow with the specified name, or
+     *  null if there is none.
+     */
+    public static FlowMetrics get(String flowName) {
+        return flows.get(flowName);
+    }
+
+    /** Gets the metrics of all the registered links, excluding those of
+     *  their sessions.
+     */
+    public static List<LinkMetrics> links() {
+        return new ArrayList<LinkMetrics>(links.values());
+    }
+
+    /** Gets the metrics of the registered link with the specified name, or
+     *  null if there is none.
+     */
+    public static LinkMetrics getLink(String linkName) {
+        return links.get(linkName);
+    }
+
+    /** Gets the metrics of the registered link session with the specified
+     *  handle, or null if there is none.
+     */
+    public static LinkMetrics getSession(int handle) {
+        return sessions.get(handle);
+    }
+
+    /** Registers the specified flow metrics, replacing those of any other
+     *  flow of the same name, and exporting them if JMX export is enabled.
+     */
+    public static void register(FlowMetrics metrics) {
+        synchronized (syncRoot) {
+            if (flows.put(metrics.flow().name(), metrics) == metrics) {
+                return;
+            }
+            if (server != null) {
+                export(metrics, objectName(metrics));
+            }
+        }
+    }
+
+    /** Unregisters the specified flow metrics. */
+    public static void unregister(FlowMetrics metrics) {
+        synchronized (syncRoot) {
+            if (!flows.remove(metrics.flow().name(), metrics)) {
+                return;
+            }
+            if (server != null) {
+                unexport(objectName(metrics));
+            }
+        }
+    }
+
+    /** Registers the specified link or link session metrics, replacing any
+     *  registered under the same link name or session handle, and exporting
+     *  them if JMX export is enabled.
+     */
+    public static void register(LinkMetrics metrics) {
+        synchronized (syncRoot) {
+            LinkMetrics previous = (metrics.parent() == null ?
+                links.put(metrics.linkName(), metrics) :
+                sessions.put(metrics.handle(), metrics));
+            if (previous == metrics) {
+                return;
+            }
+            if (server != null) {
+                export(metrics, objectName(metrics));
+            }
+        }
+    }
+
+    /** Unregisters the specified link or link session metrics. */
+    public static void unregister(LinkMetrics metrics) {
+        synchronized (syncRoot) {
+            boolean removed = (metrics.parent() == null ?
+                links.remove(metrics.linkName(), metrics) :
+                sessions.remove(metrics.handle(), metrics));
+            if (!removed) {
+                return;
+            }
+            if (server != null) {
+                unexport(objectName(metrics));
+            }
+        }
+    }
+
+    /** Exports the registered metrics, and those registered later, to the
+     *  platform MBean server.
+     */
+    public static void exportJmx() {
+        synchronized (syncRoot) {
+            if (server != null) {
+                return;
+            }
+            server = ManagementFactory.getPlatformMBeanServer();
+            for (FlowMetrics metrics : flows.values()) {
+                export(metrics, objectName(metrics));
+            }
+            for (LinkMetrics metrics : links.values()) {
+                export(metrics, objectName(metrics));
+            }
+            for (LinkMetrics metrics : sessions.values()) {
+                export(metrics, objectName(metrics));
+            }
+        }
+    }
+
+    /** Gets the JMX object name of the specified flow metrics. */
+    public static ObjectName objectName(FlowMetrics metrics) {
+        try {
+            return new ObjectName("x2java:type=Flow,name=" +
+                ObjectName.quote(metrics.flow().name()));
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** Gets the JMX object name of the specified link or link session
+     *  metrics.
+     */
+    public static ObjectName objectName(LinkMetrics metrics) {
+        try {
+            String link = ObjectName.quote(metrics.linkName());
+            if (metrics.parent() == null) {
+                return new ObjectName("x2java:type=Link,name=" + link);
+            }
+            return new ObjectName("x2java:type=LinkSession,link=" + link +
+                ",handle=" + metrics.handle());
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void export(Object mbean, ObjectName name) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        }
+        catch (Exception e) {
+            Log.warn("MetricsRegistry: error exporting %s : %s", name, e);
+        }
+    }
+
+    private static void unexport(ObjectName name) {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (Exception e) {
+            Log.warn("MetricsRegistry: error unexporting %s : %s", name, e);
+        }
+    }
+}
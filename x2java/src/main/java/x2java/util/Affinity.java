@@ -0,0 +1,124 @@
+// Copyright (c) 2016-2017 Jae-jun Kang
+// See the file LICENSE for details.
+
+package x2java.util;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.ThreadFactory;
+
+/** Pins threads to specific CPU cores, through a pluggable provider.
+ *  <p>
+ *  The default provider runs taskset(1) on Linux. Native bindings calling
+ *  sched_setaffinity(2) directly can be plugged in instead.
+ */
+public final class Affinity {
+    /** Implements the actual CPU pinning on a platform. */
+    public static interface Provider {
+        /** Pins the calling thread to the specified CPU cores, returning
+         *  false if it fails or is not supported.
+         */
+        boolean pin(int[] cpus);
+    }
+
+    private static volatile Provider provider = new TasksetProvider();
+
+    // Private constructor to prohibit explicit initialization
+    private Affinity() {}
+
+    /** Gets the current affinity provider. */
+    public static Provider provider() {
+        return provider;
+    }
+
+    /** Sets the affinity provider. */
+    public static void provider(Provider value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        provider = value;
+    }
+
+    /** Pins the calling thread to the specified CPU cores, returning false if
+     *  it fails or is not supported.
+     */
+    public static boolean pin(int... cpus) {
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        boolean result;
+        try {
+            result = provider.pin(cpus);
+        }
+        catch (Exception e) {
+            Log.warn("Affinity.pin : %s", e.toString());
+            result = false;
+        }
+        if (!result) {
+            Log.warn("Affinity.pin : failed to pin %s",
+                Thread.currentThread().getName());
+        }
+        return result;
+    }
+
+    /** Returns a thread factory whose threads pin themselves to the specified
+     *  CPU cores as they start, created through the given base factory, or as
+     *  plain threads if it is null.
+     */
+    public static ThreadFactory pinning(final ThreadFactory base,
+            final int... cpus) {
+        if (cpus.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        return new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                Runnable pinned = new Runnable() {
+                    public void run() {
+                        pin(cpus);
+                        runnable.run();
+                    }
+                };
+                return (base != null ?
+                    base.newThread(pinned) : new Thread(pinned));
+            }
+        };
+    }
+
+    // Runs taskset(1) on the native thread id of the calling thread.
+    private static final class TasksetProvider implements Provider {
+        public boolean pin(int[] cpus) {
+            String tid;
+            try {
+                tid = new File("/proc/thread-self").getCanonicalFile().getName();
+            }
+            catch (Exception e) {
+                return false;
+            }
+            for (int i = 0; i < tid.length(); ++i) {
+                if (!Character.isDigit(tid.charAt(i))) {
+                    return false;  // not Linux
+                }
+            }
+
+            StringBuilder cpuList = new StringBuilder();
+            for (int i = 0; i < cpus.length; ++i) {
+                if (i != 0) {
+                    cpuList.append(',');
+                }
+                cpuList.append(cpus[i]);
+            }
+
+            try {
+                Process process = new ProcessBuilder("taskset", "-p", "-c",
+                    cpuList.toString(), tid).redirectErrorStream(true).start();
+                InputStream output = process.getInputStream();
+                byte[] bytes = new byte[256];
+                while (output.read(bytes) >= 0) { }
+                return (process.waitFor() == 0);
+            }
+            catch (Exception e) {
+                return false;
+            }
+        }
+    }
+}
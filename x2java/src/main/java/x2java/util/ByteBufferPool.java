@@ -46,27 +46,28 @@ public class ByteBufferPool {
                     return result;
                 }
             }
-            Lock wlock = rwlock.writeLock();
-            wlock.lock();
-            try {
-                for (int i = 0, size = pools.size(); i < size; ++i) {
-                    ByteBuffer result = pools.get(i).acquire();
-                    if (result != null) {
-                        return result;
-                    }
+        }
+        finally {
+            rlock.unlock();
+        }
+        // The read lock cannot be upgraded, so another thread may have added
+        // a chunk, or released a buffer, in the meantime.
+        Lock wlock = rwlock.writeLock();
+        wlock.lock();
+        try {
+            for (int i = 0, size = pools.size(); i < size; ++i) {
+                ByteBuffer result = pools.get(i).acquire();
+                if (result != null) {
+                    return result;
                 }
-                SegmentedByteBuffer pool =
-                        new SegmentedByteBuffer(chunkSize, segmentSize);
-                pools.add(pool);
-                return pool.acquire();
-
-            }
-            finally {
-                wlock.unlock();
             }
+            SegmentedByteBuffer pool =
+                    new SegmentedByteBuffer(chunkSize, segmentSize);
+            pools.add(pool);
+            return pool.acquire();
         }
         finally {
-            rlock.unlock();
+            wlock.unlock();
         }
     }
 
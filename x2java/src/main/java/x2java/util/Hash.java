@@ -55,6 +55,16 @@ public class Hash {
         return update(seed, bits);
     }
 
+    public static int update(int seed, byte[] value) {
+        int result = seed;
+        if (value != null) {
+            for (int i = 0, count = value.length; i < count; ++i) {
+                result = update(result, value[i]);
+            }
+        }
+        return result;
+    }
+
     public static <T> int update(int seed, T[] value) {
         int result = seed;
         for (int i = 0, count = value.length; i < count; ++i) {
@@ -117,6 +127,10 @@ public class Hash {
         code = update(code, value);
     }
 
+    public void update(byte[] value) {
+        code = update(code, value);
+    }
+
     public <T> void update(T[] value) {
         code = update(code, value);
     }
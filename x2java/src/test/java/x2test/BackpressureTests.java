@@ -0,0 +1,169 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class BackpressureTests extends TestCase {
+    public BackpressureTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BackpressureTests.class);
+    }
+
+    public void testDropNewest() throws InterruptedException {
+        RecordingCase recorder = new RecordingCase();
+        SingleThreadFlow flow = newFlow(recorder,
+            EventBasedFlow.OverflowPolicy.DropNewest);
+        for (int i = 1; i <= 3; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        assertEquals(1, flow.dropped());
+        // Shedding load, the flow does not hold back the links.
+        assertFalse(Hub.instance().saturated());
+
+        flow.startup();
+        recorder.await(2);
+        flow.shutdown();
+        assertEquals(Arrays.asList(1, 2), recorder.params);
+    }
+
+    public void testDropOldest() throws InterruptedException {
+        RecordingCase recorder = new RecordingCase();
+        SingleThreadFlow flow = newFlow(recorder,
+            EventBasedFlow.OverflowPolicy.DropOldest);
+        for (int i = 1; i <= 3; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        assertEquals(1, flow.dropped());
+
+        flow.startup();
+        recorder.await(2);
+        flow.shutdown();
+        assertEquals(Arrays.asList(2, 3), recorder.params);
+    }
+
+    public void testDropByType() throws InterruptedException {
+        RecordingCase recorder = new RecordingCase();
+        SingleThreadFlow flow = newFlow(recorder,
+            EventBasedFlow.OverflowPolicy.DropByType);
+        flow.droppable(BuiltinEventType.TimeoutEvent);
+        for (int i = 1; i <= 3; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        // Not droppable, hence queued beyond the capacity
+        flow.feed(new PositionUpdate().setId(4));
+        assertEquals(1, flow.dropped());
+
+        flow.startup();
+        recorder.await(3);
+        flow.shutdown();
+        assertEquals(Arrays.asList(1, 2, 4), recorder.params);
+    }
+
+    public void testReject() throws InterruptedException {
+        final List<Event> rejected = new ArrayList<Event>();
+        RecordingCase recorder = new RecordingCase();
+        SingleThreadFlow flow = newFlow(recorder,
+            EventBasedFlow.OverflowPolicy.Reject);
+        flow.overflowHandler(new EventBasedFlow.OverflowHandler() {
+            public void onOverflow(Flow flow, Event e) {
+                rejected.add(e);
+            }
+        });
+        Event third = new TimeoutEvent().setIntParam(3);
+        flow.feed(new TimeoutEvent().setIntParam(1));
+        flow.feed(new TimeoutEvent().setIntParam(2));
+        flow.feed(third);
+        assertEquals(1, rejected.size());
+        assertSame(third, rejected.get(0));
+
+        flow.startup();
+        recorder.await(2);
+        flow.shutdown();
+    }
+
+    public void testBlock() throws InterruptedException {
+        RecordingCase recorder = new RecordingCase();
+        final SingleThreadFlow flow = newFlow(recorder,
+            EventBasedFlow.OverflowPolicy.Block);
+        Thread producer = new Thread() {
+            public void run() {
+                for (int i = 1; i <= 5; ++i) {
+                    flow.feed(new TimeoutEvent().setIntParam(i));
+                }
+            }
+        };
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertTrue(Hub.instance().saturated());
+
+        final boolean[] drained = new boolean[1];
+        Hub.instance().whenDrained(new Runnable() {
+            public void run() {
+                drained[0] = true;
+            }
+        });
+        assertFalse(drained[0]);
+
+        flow.startup();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        recorder.await(5);
+        flow.shutdown();
+        assertEquals(0, flow.dropped());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), recorder.params);
+        assertFalse(Hub.instance().saturated());
+        assertTrue(drained[0]);
+    }
+
+    private static SingleThreadFlow newFlow(RecordingCase recorder,
+            EventBasedFlow.OverflowPolicy policy) {
+        SingleThreadFlow flow = new SingleThreadFlow("BackpressureTests");
+        flow.capacity(2).overflowPolicy(policy);
+        flow.add(recorder);
+        return flow;
+    }
+
+    private static class RecordingCase extends Case {
+        final List<Integer> params = new ArrayList<Integer>();
+
+        @Override
+        protected void setup() {
+            bind(new TimeoutEvent(), new Handler() {
+                public void invoke(Event e) {
+                    record(((TimeoutEvent)e).getIntParam());
+                }
+            });
+            bind(new PositionUpdate(), new Handler() {
+                public void invoke(Event e) {
+                    record(((PositionUpdate)e).getId());
+                }
+            });
+        }
+
+        synchronized void record(int param) {
+            params.add(param);
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (params.size() < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                wait(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import x2java.*;
+
+public class BufferTests extends TestCase {
+    public BufferTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BufferTests.class);
+    }
+
+    public void testSlice() {
+        Buffer buffer = new Buffer();
+        byte[] bytes = new byte[Buffer.BLOCK_SIZE + 100];
+        new Random(7).nextBytes(bytes);
+        buffer.put(bytes, 0, bytes.length);
+
+        // A range spanning two blocks
+        Buffer.Slice slice = buffer.slice(50, Buffer.BLOCK_SIZE);
+        assertEquals(Buffer.BLOCK_SIZE, slice.length());
+
+        List<ByteBuffer> list = new ArrayList<ByteBuffer>();
+        slice.listBuffers(list);
+        assertEquals(2, list.size());
+        assertTrue(Arrays.equals(
+            Arrays.copyOfRange(bytes, 50, 50 + Buffer.BLOCK_SIZE),
+            concat(list)));
+
+        // The slice survives the buffer being rewritten and closed.
+        buffer.reset();
+        byte[] zeros = new byte[bytes.length];
+        buffer.put(zeros, 0, zeros.length);
+        buffer.close();
+
+        Buffer copy = new Buffer();
+        new Serializer(copy).writeSlice(slice);
+        assertTrue(Arrays.equals(
+            Arrays.copyOfRange(bytes, 50, 50 + Buffer.BLOCK_SIZE),
+            copy.toArray()));
+        copy.close();
+
+        slice.retain();
+        slice.release();
+        slice.release();
+        try {
+            slice.retain();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    public void testRawEvent() throws IOException {
+        EventFactory.register(PositionUpdate.class);
+
+        PositionUpdate e = new PositionUpdate()
+            .setId(3).setX(1.0f).setName("three");
+        Buffer buffer = new Buffer();
+        e.serialize(new Serializer(buffer));
+
+        RawEvent raw = new RawEvent(e._getTypeId(),
+            buffer.slice(0, buffer.length()));
+        buffer.close();
+        assertEquals(new RawEvent().setRawTypeId(e._getTypeId()).hashCode(),
+            raw.hashCode());
+
+        // Re-serializing a raw event yields the original bytes.
+        Buffer forwarded = new Buffer();
+        raw.serialize(new Serializer(forwarded));
+        raw.release();
+
+        forwarded.rewind();
+        Deserializer deserializer = new Deserializer(forwarded);
+        Event retrieved = deserializer.create();
+        retrieved.deserialize(deserializer);
+        assertEquals(e, retrieved);
+        forwarded.close();
+    }
+
+    private static byte[] concat(List<ByteBuffer> list) {
+        int length = 0;
+        for (ByteBuffer byteBuffer : list) {
+            length += byteBuffer.remaining();
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (ByteBuffer byteBuffer : list) {
+            int n = byteBuffer.remaining();
+            byteBuffer.get(result, offset, n);
+            offset += n;
+        }
+        return result;
+    }
+}
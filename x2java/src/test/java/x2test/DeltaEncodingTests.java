@@ -0,0 +1,130 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+import x2java.*;
+import x2java.links.DeltaEncoding;
+
+public class DeltaEncodingTests extends TestCase {
+    public DeltaEncodingTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(DeltaEncodingTests.class);
+    }
+
+    @Override
+    protected void setUp() {
+        EventFactory.register(PositionUpdate.class);
+    }
+
+    public void testRoundTrip() throws IOException {
+        DeltaEncoding template = new DeltaEncoding()
+            .add(new PositionUpdate().setId(0));
+        DeltaEncoding sender = new DeltaEncoding(template);
+        DeltaEncoding receiver = new DeltaEncoding(template);
+
+        PositionUpdate e = new PositionUpdate()
+            .setId(7).setX(1.0f).setY(2.0f).setName("seven");
+
+        int fullLength = transfer(sender, e, receiver, e);
+
+        // The same instance reused with a single property changed
+        e.setX(1.5f);
+        int deltaLength = transfer(sender, e, receiver, e);
+        assertTrue(deltaLength < fullLength);
+
+        // Another key starts its own series.
+        PositionUpdate other = new PositionUpdate()
+            .setId(8).setX(-1.0f).setY(-2.0f).setName("eight");
+        transfer(sender, other, receiver, other);
+
+        e.setY(3.0f);
+        transfer(sender, e, receiver, e);
+
+        sender.close();
+        receiver.close();
+    }
+
+    public void testNewlyTouched() throws IOException {
+        DeltaEncoding template = new DeltaEncoding()
+            .add(new PositionUpdate().setId(0));
+        DeltaEncoding sender = new DeltaEncoding(template);
+        DeltaEncoding receiver = new DeltaEncoding(template);
+
+        PositionUpdate e = new PositionUpdate().setId(7).setX(1.0f);
+        transfer(sender, e, receiver, e);
+
+        // Y touched for the first time, with the value it had untouched
+        PositionUpdate next = new PositionUpdate()
+            .setId(7).setX(1.0f).setY(0.0f);
+        transfer(sender, next, receiver, next);
+
+        sender.close();
+        receiver.close();
+    }
+
+    public void testEviction() throws IOException {
+        DeltaEncoding template = new DeltaEncoding()
+            .add(new PositionUpdate().setId(0))
+            .maxSeries(2);
+        DeltaEncoding sender = new DeltaEncoding(template);
+        DeltaEncoding receiver = new DeltaEncoding(template);
+        assertEquals(2, receiver.maxSeries());
+
+        PositionUpdate[] events = new PositionUpdate[3];
+        int[] fullLengths = new int[3];
+        for (int i = 0; i < 3; ++i) {
+            events[i] = new PositionUpdate()
+                .setId(i).setX(i).setY(i).setName("e" + i);
+            fullLengths[i] = transfer(sender, events[i], receiver, events[i]);
+        }
+
+        // The first series was evicted on both ends, so it is sent in full.
+        assertEquals(fullLengths[0],
+            transfer(sender, events[0], receiver, events[0]));
+        // The last one is still there.
+        events[2].setX(5.0f);
+        assertTrue(transfer(sender, events[2], receiver, events[2]) <
+            fullLengths[2]);
+
+        sender.close();
+        receiver.close();
+
+        // Closed encodings go on in full.
+        events[2].setY(6.0f);
+        assertEquals(fullLengths[2],
+            transfer(sender, events[2], receiver, events[2]));
+    }
+
+    public void testUnregisteredType() throws IOException {
+        DeltaEncoding sender = new DeltaEncoding();
+        DeltaEncoding receiver = new DeltaEncoding();
+
+        PositionUpdate e = new PositionUpdate().setId(1).setX(1.0f);
+        int length1 = transfer(sender, e, receiver, e);
+        int length2 = transfer(sender, e, receiver, e);
+        assertEquals(length1, length2);
+    }
+
+    private static int transfer(DeltaEncoding sender, Event e,
+            DeltaEncoding receiver, Event expected) throws IOException {
+        Buffer buffer = new Buffer();
+        sender.serialize(e, new Serializer(buffer));
+        int length = buffer.length();
+
+        buffer.rewind();
+        Event retrieved = receiver.deserialize(new Deserializer(buffer));
+        assertNotNull(retrieved);
+        assertEquals(expected, retrieved);
+        assertEquals(expected._getFingerprint(), retrieved._getFingerprint());
+
+        buffer.close();
+        return length;
+    }
+}
@@ -0,0 +1,134 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class ErrorHandlingTests extends TestCase {
+    public ErrorHandlingTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ErrorHandlingTests.class);
+    }
+
+    public void testFastFailException() {
+        FastFailException ex = new FastFailException("poison");
+        assertEquals(0, ex.getStackTrace().length);
+        assertEquals("poison", ex.getMessage());
+    }
+
+    public void testUnbindFailingHandler() throws Exception {
+        final AtomicInteger invoked = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(10);
+        final Handler failing = new Handler() {
+            public void invoke(Event e) {
+                invoked.incrementAndGet();
+                throw new FastFailException("poison");
+            }
+        };
+        SingleThreadFlow flow = new SingleThreadFlow("ErrorHandlingTests");
+        flow.breaker(new CircuitBreaker(3, 0));
+        flow.errorHandler(new ErrorHandler() {
+            public void onError(Flow flow, Event e, Handler handler,
+                    Exception ex) {
+                assertSame(failing, handler);
+                assertTrue(ex instanceof FastFailException);
+                errors.incrementAndGet();
+            }
+        });
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), failing);
+                bind(new TimeoutEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+
+        for (int i = 0; i < 10; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        flow.startup();
+        try {
+            // The other handler keeps going.
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            flow.shutdown();
+        }
+        assertEquals(3, invoked.get());
+        assertEquals(3, errors.get());
+        assertEquals(1, flow.breaker().trips());
+    }
+
+    public void testSuspendFailingHandler() throws Exception {
+        final AtomicInteger invoked = new AtomicInteger();
+        final AtomicInteger handled = new AtomicInteger();
+        final Handler failing = new Handler() {
+            public void invoke(Event e) {
+                invoked.incrementAndGet();
+                if (((TimeoutEvent)e).getIntParam() < 100) {
+                    throw new IllegalStateException("poison");
+                }
+            }
+        };
+        SingleThreadFlow flow = new SingleThreadFlow("ErrorHandlingTests");
+        CircuitBreaker breaker = new CircuitBreaker(2, 200);
+        flow.breaker(breaker);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), failing);
+                bind(new TimeoutEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        handled.incrementAndGet();
+                    }
+                });
+            }
+        });
+
+        flow.startup();
+        try {
+            for (int i = 0; i < 5; ++i) {
+                flow.feed(new TimeoutEvent().setIntParam(i));
+            }
+            waitUntil(handled, 5);
+            assertEquals(2, invoked.get());
+            assertTrue(breaker.isOpen(failing));
+
+            // A single trial after the cooldown, which succeeds
+            Thread.sleep(300);
+            for (int i = 100; i < 103; ++i) {
+                flow.feed(new TimeoutEvent().setIntParam(i));
+            }
+            waitUntil(handled, 8);
+            assertEquals(5, invoked.get());
+            assertFalse(breaker.isOpen(failing));
+        }
+        finally {
+            flow.shutdown();
+        }
+    }
+
+    private static void waitUntil(AtomicInteger counter, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.links.socket.*;
+
+public class FanOutTests extends TestCase {
+    public FanOutTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(FanOutTests.class);
+    }
+
+    // Multicast link dropping a fraction of the received data datagrams
+    private static class LossyMulticastLink extends MulticastLink {
+        volatile double loss;
+
+        LossyMulticastLink(String name) {
+            super(name);
+        }
+
+        @Override
+        protected boolean dropsData(int sender, long seq) {
+            return (loss > 0 && ThreadLocalRandom.current().nextDouble() < loss);
+        }
+    }
+
+    public void testBroadcast() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        final TcpServer server = new TcpServer("FanOutTests.Server");
+        TcpClient client1 = new TcpClient("FanOutTests.Client1");
+        TcpClient client2 = new TcpClient("FanOutTests.Client2");
+        final List<PositionUpdate> received = new ArrayList<PositionUpdate>();
+
+        SingleThreadFlow flow = new SingleThreadFlow("FanOutTests.Broadcast");
+        flow.add(server);
+        flow.add(client1);
+        flow.add(client2);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        PositionUpdate update = (PositionUpdate)e;
+                        if (update.getId() < 1000) {
+                            server.respond(e, new PositionUpdate()
+                                .setId(update.getId()));
+                            return;
+                        }
+                        synchronized (received) {
+                            received.add(update);
+                            received.notifyAll();
+                        }
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            server.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 17100));
+            // The server binds on its own thread.
+            Thread.sleep(200);
+            client1.connect("127.0.0.1", 17100);
+            client2.connect("127.0.0.1", 17100);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client1.session() == null || client2.session() == null) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            // Round trips make sure the server knows both sessions.
+            client1.send(new PositionUpdate().setId(1), 5000).get(5, TimeUnit.SECONDS);
+            client2.send(new PositionUpdate().setId(2), 5000).get(5, TimeUnit.SECONDS);
+
+            for (int i = 0; i < 10; ++i) {
+                server.broadcast(new PositionUpdate().setId(1000 + i)
+                    .setName("broadcast"));
+            }
+
+            await(received, 20);
+            synchronized (received) {
+                int[] counts = new int[10];
+                for (PositionUpdate update : received) {
+                    assertEquals("broadcast", update.getName());
+                    ++counts[update.getId() - 1000];
+                }
+                for (int i = 0; i < 10; ++i) {
+                    assertEquals(2, counts[i]);
+                }
+            }
+
+            // Sessions going away are no longer broadcast to.
+            client1.close();
+            Thread.sleep(200);
+            server.broadcast(new PositionUpdate().setId(1010).setName("broadcast"));
+            await(received, 21);
+            Thread.sleep(100);
+            synchronized (received) {
+                assertEquals(21, received.size());
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            client1.close();
+            client2.close();
+            server.close();
+        }
+    }
+
+    public void testMulticast() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        NetworkInterface ni = NetworkInterface.getByInetAddress(
+            InetAddress.getByName("127.0.0.1"));
+        InetSocketAddress group = new InetSocketAddress("239.255.42.99", 17101);
+
+        MulticastLink sender = new MulticastLink("FanOutTests.Sender");
+        LossyMulticastLink receiver = new LossyMulticastLink("FanOutTests.Receiver");
+        sender.nakInterval(10);
+        receiver.nakInterval(10).nakTimeout(5000);
+        final List<PositionUpdate> received = new ArrayList<PositionUpdate>();
+
+        SingleThreadFlow flow = new SingleThreadFlow("FanOutTests.Multicast");
+        flow.add(sender);
+        flow.add(receiver);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        synchronized (received) {
+                            received.add((PositionUpdate)e);
+                            received.notifyAll();
+                        }
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            try {
+                sender.open(group, ni);
+                receiver.open(group, ni);
+            }
+            catch (Exception e) {
+                System.out.println("FanOutTests: multicast unavailable, skipped");
+                return;
+            }
+
+            sender.batching(false);
+            sender.send(new PositionUpdate().setId(0).setName("multicast"));
+            await(received, 1);
+            // Force retransmissions, once the receiver has caught the stream
+            receiver.loss = 0.2;
+            for (int i = 1; i < 300; ++i) {
+                sender.send(new PositionUpdate().setId(i).setName("multicast"));
+            }
+
+            await(received, 300);
+            synchronized (received) {
+                assertEquals(300, received.size());
+                for (int i = 0; i < 300; ++i) {
+                    assertEquals(i, received.get(i).getId());
+                }
+            }
+            assertTrue(receiver.metrics().getNaks() > 0);
+            assertTrue(sender.metrics().getRetransmits() > 0);
+            assertEquals(0, receiver.metrics().getLostDatagrams());
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    private static void await(List<PositionUpdate> list, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        synchronized (list) {
+            while (list.size() < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out with " + list.size());
+                }
+                list.wait(wait);
+            }
+        }
+    }
+}
@@ -52,12 +52,13 @@ public class FingerprintTests extends TestCase {
     }
 
     public void testCreation() {
+        // length() is the serialized length: the bit count plus the bytes
         Fingerprint fp1 = new Fingerprint(1);
-        assertEquals(1, fp1.length());
+        assertEquals(2, fp1.length());
         assertFalse(fp1.get(0));
 
         Fingerprint fp2 = new Fingerprint(33);
-        assertEquals(33, fp2.length());
+        assertEquals(6, fp2.length());
         for (int i = 0; i < 33; ++i)
         {
             assertFalse(fp2.get(i));
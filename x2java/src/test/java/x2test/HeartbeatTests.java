@@ -0,0 +1,107 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class HeartbeatTests extends TestCase {
+    public HeartbeatTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(HeartbeatTests.class);
+    }
+
+    public void testCoalescing() throws InterruptedException {
+        CountingCase counter = new CountingCase();
+        SingleThreadFlow flow = new SingleThreadFlow("HeartbeatTests");
+        flow.add(counter);
+
+        // Heartbeats queued up before the flow starts are coalesced.
+        HeartbeatEvent heartbeat = new HeartbeatEvent();
+        for (int i = 0; i < 5; ++i) {
+            flow.feed(heartbeat);
+        }
+        flow.startup();
+        try {
+            flow.feed(new TimeoutEvent());
+            counter.await(1);
+            assertEquals(1, counter.heartbeats);
+
+            // Once dispatched, the next heartbeat gets through.
+            flow.feed(heartbeat);
+            flow.feed(new TimeoutEvent());
+            counter.await(2);
+            assertEquals(2, counter.heartbeats);
+        }
+        finally {
+            flow.shutdown();
+        }
+    }
+
+    public void testHubHeartbeat() throws InterruptedException {
+        CountingCase counter = new CountingCase();
+        SingleThreadFlow flow = new SingleThreadFlow("HeartbeatTests");
+        flow.add(counter);
+        Hub.instance().attach(flow).heartbeatInterval(5);
+        Hub.startup();
+        try {
+            counter.awaitHeartbeats(3);
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow).heartbeatInterval(0);
+        }
+    }
+
+    private static class CountingCase extends Case {
+        int heartbeats;
+        int timeouts;
+
+        @Override
+        protected void setup() {
+            bind(new HeartbeatEvent(), new Handler() {
+                public void invoke(Event e) {
+                    synchronized (CountingCase.this) {
+                        ++heartbeats;
+                        CountingCase.this.notifyAll();
+                    }
+                }
+            });
+            bind(new TimeoutEvent(), new Handler() {
+                public void invoke(Event e) {
+                    synchronized (CountingCase.this) {
+                        ++timeouts;
+                        CountingCase.this.notifyAll();
+                    }
+                }
+            });
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (timeouts < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                wait(wait);
+            }
+        }
+
+        synchronized void awaitHeartbeats(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (heartbeats < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                wait(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.journal.*;
+
+public class JournalTests extends TestCase {
+    public JournalTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(JournalTests.class);
+    }
+
+    public void testAppendAndReplay() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+            "x2java-JournalTests-" + System.nanoTime());
+        Journal journal = new Journal("JournalTests", dir);
+        // Small segments so that the journal rolls over
+        journal.segmentSize(4096).syncEvery(100);
+
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            for (int i = 0; i < 1000; ++i) {
+                Hub.post(new PositionUpdate().setId(i).setName("order" + i));
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+        assertEquals(1000, journal.sequence());
+        assertTrue(dir.list().length > 1);
+
+        // Appending goes on after the recovered end.
+        journal = new Journal("JournalTests", dir);
+        journal.segmentSize(4096);
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            assertEquals(1000, journal.sequence());
+            for (int i = 1000; i < 1010; ++i) {
+                Hub.post(new PositionUpdate().setId(i).setName("order" + i));
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+        assertEquals(1010, journal.sequence());
+
+        JournalReader reader = new JournalReader(dir, "JournalTests");
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1010; ++i) {
+            assertTrue(reader.next());
+            assertEquals(i, reader.sequence());
+            assertTrue(reader.timestamp() <= start);
+            assertTrue(reader.timestamp() > start - 60000);
+            PositionUpdate e = (PositionUpdate)reader.event();
+            assertEquals(e._getTypeId(), reader.typeId());
+            assertEquals(i, e.getId());
+            assertEquals("order" + i, e.getName());
+        }
+        assertFalse(reader.next());
+        reader.close();
+
+        // Replayed events reach the flows but are not journaled again.
+        final AtomicInteger count = new AtomicInteger();
+        SingleThreadFlow flow = new SingleThreadFlow("JournalTests.Replay");
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        count.incrementAndGet();
+                    }
+                });
+            }
+        });
+        journal = new Journal("JournalTests", dir);
+        Hub.instance().attach(flow).attach(journal);
+        Hub.startup();
+        try {
+            reader = new JournalReader(dir, "JournalTests");
+            assertTrue(reader.seek(10));
+            assertEquals(1000, reader.replay());
+            reader.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (count.get() < 1000) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            assertEquals(1010, journal.sequence());
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            Hub.instance().detach(journal);
+        }
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testRecordAsPosted() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+            "x2java-JournalTests-" + System.nanoTime());
+        Journal journal = new Journal("JournalTests", dir);
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            PositionUpdate e = new PositionUpdate().setId(1).setName("posted");
+            Hub.post(e);
+            // Changed before the journal thread gets to it
+            e.setName("changed");
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+
+        JournalReader reader = new JournalReader(dir, "JournalTests");
+        assertTrue(reader.next());
+        assertEquals("posted", ((PositionUpdate)reader.event()).getName());
+        assertFalse(reader.next());
+        reader.close();
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testReplayer() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+            "x2java-JournalTests-" + System.nanoTime());
+        Journal journal = new Journal("Capture", dir);
+        journal.syncInterval(0);
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            for (int i = 0; i < 10; ++i) {
+                Hub.post(new PositionUpdate().setId(i));
+            }
+            Thread.sleep(300);
+            for (int i = 10; i < 20; ++i) {
+                Hub.post(new PositionUpdate().setId(i));
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        SingleThreadFlow flow = new SingleThreadFlow("JournalTests.Replayer");
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        count.incrementAndGet();
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            // Original timing
+            Replayer replayer = new Replayer(dir, "Capture");
+            assertEquals(20, replayer.run());
+            assertTrue(replayer.elapsedNanos() >= 250000000L);
+
+            // Twice as fast, from the middle on
+            replayer.speed(2).range(5, 20);
+            assertEquals(15, replayer.run());
+            assertTrue(replayer.elapsedNanos() >= 125000000L);
+
+            // As fast as possible
+            replayer.speed(0).range(0, 20);
+            assertEquals(20, replayer.run());
+            assertTrue(replayer.elapsedNanos() < 250000000L);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (count.get() < 55) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+        }
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+}
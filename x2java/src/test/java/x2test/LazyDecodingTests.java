@@ -0,0 +1,76 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+
+public class LazyDecodingTests extends TestCase {
+    public LazyDecodingTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LazyDecodingTests.class);
+    }
+
+    @Override
+    protected void setUp() {
+        EventFactory.register(LazyPositionUpdate.class);
+    }
+
+    public void testRoundTrip() throws IOException {
+        LazyPositionUpdate e = new LazyPositionUpdate()
+            .setId(9)
+            .setPosition(new Point().setX(1.0f).setY(-2.0f))
+            .setName("nine")
+            .setPayload(new byte[] { 1, 2, 3 });
+
+        LazyPositionUpdate retrieved = (LazyPositionUpdate)transfer(e);
+        assertEquals(9, retrieved.getId());
+        assertEquals(-2.0f, retrieved.getPosition().getY());
+        assertEquals("nine", retrieved.getName());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, retrieved.getPayload()));
+        assertEquals(e, retrieved);
+
+        // Serializing an untouched lazy event yields the same event again.
+        LazyPositionUpdate forwarded = (LazyPositionUpdate)transfer(transfer(e));
+        assertEquals(e, forwarded);
+        assertEquals(e.hashCode(), forwarded.hashCode());
+    }
+
+    public void testPartialAccess() throws IOException {
+        LazyPositionUpdate e = new LazyPositionUpdate()
+            .setId(5)
+            .setName("five");
+
+        LazyPositionUpdate retrieved = (LazyPositionUpdate)transfer(e);
+        // Assigned before the pending value is ever decoded
+        retrieved.setName("changed");
+        assertEquals("changed", retrieved.getName());
+        assertEquals(5, retrieved.getId());
+        assertNull(retrieved.getPosition());
+
+        // Binding on a single property only decodes that one.
+        LazyPositionUpdate binding = new LazyPositionUpdate().setId(5);
+        assertEquals(
+            binding.hashCode(binding._getFingerprint(), binding._getTypeId()),
+            retrieved.hashCode(binding._getFingerprint(), binding._getTypeId()));
+        assertTrue(binding.equivalent(retrieved));
+    }
+
+    private static Event transfer(Event e) throws IOException {
+        Buffer buffer = new Buffer();
+        e.serialize(new Serializer(buffer));
+        buffer.rewind();
+        Deserializer deserializer = new Deserializer(buffer);
+        Event retrieved = deserializer.create();
+        retrieved.deserialize(deserializer);
+        buffer.close();
+        return retrieved;
+    }
+}
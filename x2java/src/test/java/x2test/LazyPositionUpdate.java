@@ -0,0 +1,289 @@
+// auto-generated by x2java xpiler
+
+package x2test;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class LazyPositionUpdate extends Event {
+    protected static Tag tag;
+
+    private int id_;
+    private Point position_;
+    private String name_;
+    private byte[] payload_;
+
+    private LazyProperties lazy;
+
+    public int getId() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(0)) {
+                    try {
+                        id_ = lazy.seek(0).readInt();
+                    }
+                    catch (IOException e) {
+                        Log.error("LazyPositionUpdate.getId : decoding error");
+                    }
+                }
+            }
+        }
+        return id_;
+    }
+    public LazyPositionUpdate setId(int value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        if (lazy != null) {
+            lazy.discard(0);
+        }
+        id_ = value;
+        return this;
+    }
+
+    public Point getPosition() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(1)) {
+                    try {
+                        position_ = lazy.seek(1).readCell(Point.class);
+                    }
+                    catch (IOException e) {
+                        Log.error("LazyPositionUpdate.getPosition : decoding error");
+                    }
+                }
+            }
+        }
+        return position_;
+    }
+    public LazyPositionUpdate setPosition(Point value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        if (lazy != null) {
+            lazy.discard(1);
+        }
+        position_ = value;
+        return this;
+    }
+
+    public String getName() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(2)) {
+                    try {
+                        name_ = lazy.seek(2).readString();
+                    }
+                    catch (IOException e) {
+                        Log.error("LazyPositionUpdate.getName : decoding error");
+                    }
+                }
+            }
+        }
+        return name_;
+    }
+    public LazyPositionUpdate setName(String value) {
+        fingerprint.touch(tag.getOffset() + 2);
+        if (lazy != null) {
+            lazy.discard(2);
+        }
+        name_ = value;
+        return this;
+    }
+
+    public byte[] getPayload() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(3)) {
+                    try {
+                        payload_ = lazy.seek(3).readBytes();
+                    }
+                    catch (IOException e) {
+                        Log.error("LazyPositionUpdate.getPayload : decoding error");
+                    }
+                }
+            }
+        }
+        return payload_;
+    }
+    public LazyPositionUpdate setPayload(byte[] value) {
+        fingerprint.touch(tag.getOffset() + 3);
+        if (lazy != null) {
+            lazy.discard(3);
+        }
+        payload_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, LazyPositionUpdate.class, 4, 102);
+    }
+
+    public LazyPositionUpdate() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected LazyPositionUpdate(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        id_ = 0;
+        position_ = null;
+        name_ = "";
+        payload_ = null;
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        LazyPositionUpdate o = (LazyPositionUpdate)other;
+        if (getId() != o.getId()) {
+            return false;
+        }
+        if (!Objects.equals(getPosition(), o.getPosition())) {
+            return false;
+        }
+        if (!Objects.equals(getName(), o.getName())) {
+            return false;
+        }
+        if (!Arrays.equals(getPayload(), o.getPayload())) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(getId());
+        }
+        if (touched.get(1)) {
+            hash.update(getPosition());
+        }
+        if (touched.get(2)) {
+            hash.update(getName());
+        }
+        if (touched.get(3)) {
+            hash.update(getPayload());
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        LazyPositionUpdate o = (LazyPositionUpdate)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (getId() != o.getId()) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (!Objects.equals(getPosition(), o.getPosition())) {
+                return false;
+            }
+        }
+        if (touched.get(2)) {
+            if (!Objects.equals(getName(), o.getName())) {
+                return false;
+            }
+        }
+        if (touched.get(3)) {
+            if (!Arrays.equals(getPayload(), o.getPayload())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" Id: ");
+        sb.append(getId());
+        sb.append(", Position: ");
+        sb.append(getPosition());
+        sb.append(", Name: ");
+        sb.append(getName());
+        sb.append(", Payload: ");
+        sb.append(getPayload());
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        lazy = new LazyProperties(deserializer, 4);
+        if (touched.get(0)) {
+            lazy.mark(0);
+            deserializer.skipInt();
+        }
+        if (touched.get(1)) {
+            lazy.mark(1);
+            deserializer.skipCell();
+        }
+        if (touched.get(2)) {
+            lazy.mark(2);
+            deserializer.skipString();
+        }
+        if (touched.get(3)) {
+            lazy.mark(3);
+            deserializer.skipBytes();
+        }
+        lazy.capture();
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthInt(getId());
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthCell(getPosition());
+        }
+        if (touched.get(2)) {
+            length += Serializer.lengthString(getName());
+        }
+        if (touched.get(3)) {
+            length += Serializer.lengthBytes(getPayload());
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeInt(getId());
+        }
+        if (touched.get(1)) {
+            serializer.writeCell(getPosition());
+        }
+        if (touched.get(2)) {
+            serializer.writeString(getName());
+        }
+        if (touched.get(3)) {
+            serializer.writeBytes(getPayload());
+        }
+    }
+}
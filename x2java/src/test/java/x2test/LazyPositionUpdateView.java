@@ -0,0 +1,127 @@
+// auto-generated by x2java xpiler
+
+package x2test;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class LazyPositionUpdateView extends EventView {
+    private int[] offsets;
+    private PointView position_;
+
+    public LazyPositionUpdateView() {
+        offsets = new int[4];
+    }
+
+    public boolean hasId() {
+        return (offsets[0] >= 0);
+    }
+    public int getId() {
+        if (offsets[0] < 0) {
+            return 0;
+        }
+        try {
+            deserializer.position(offsets[0]);
+            return deserializer.readInt();
+        }
+        catch (IOException e) {
+            Log.error("LazyPositionUpdateView.getId : decoding error");
+            return 0;
+        }
+    }
+
+    public boolean hasPosition() {
+        return (offsets[1] >= 0);
+    }
+    public PointView getPosition() {
+        if (offsets[1] < 0) {
+            return null;
+        }
+        try {
+            deserializer.position(offsets[1]);
+            if (deserializer.readNonnegativeInt() == 0) {
+                return null;
+            }
+            if (position_ == null) {
+                position_ = new PointView();
+            }
+            position_.wrap(buffer, deserializer.position());
+            return position_;
+        }
+        catch (IOException e) {
+            Log.error("LazyPositionUpdateView.getPosition : decoding error");
+            return null;
+        }
+    }
+
+    public boolean hasName() {
+        return (offsets[2] >= 0);
+    }
+    public String getName() {
+        if (offsets[2] < 0) {
+            return "";
+        }
+        try {
+            deserializer.position(offsets[2]);
+            return deserializer.readString();
+        }
+        catch (IOException e) {
+            Log.error("LazyPositionUpdateView.getName : decoding error");
+            return "";
+        }
+    }
+
+    public boolean hasPayload() {
+        return (offsets[3] >= 0);
+    }
+    public byte[] getPayload() {
+        if (offsets[3] < 0) {
+            return null;
+        }
+        try {
+            deserializer.position(offsets[3]);
+            return deserializer.readBytes();
+        }
+        catch (IOException e) {
+            Log.error("LazyPositionUpdateView.getPayload : decoding error");
+            return null;
+        }
+    }
+
+    @Override
+    protected void walk() throws IOException {
+        super.walk();
+        int offset = LazyPositionUpdate.tag.getOffset();
+        if (touched(offset + 0)) {
+            offsets[0] = deserializer.position();
+            deserializer.skipInt();
+        }
+        else {
+            offsets[0] = -1;
+        }
+        if (touched(offset + 1)) {
+            offsets[1] = deserializer.position();
+            deserializer.skipCell();
+        }
+        else {
+            offsets[1] = -1;
+        }
+        if (touched(offset + 2)) {
+            offsets[2] = deserializer.position();
+            deserializer.skipString();
+        }
+        else {
+            offsets[2] = -1;
+        }
+        if (touched(offset + 3)) {
+            offsets[3] = deserializer.position();
+            deserializer.skipBytes();
+        }
+        else {
+            offsets[3] = -1;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.links.*;
+
+public class Lz4CompressorTests extends TestCase {
+    public Lz4CompressorTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(Lz4CompressorTests.class);
+    }
+
+    public void testRoundTrip() throws IOException {
+        Compressor compressor = new Lz4Compressor();
+        Random random = new Random(42);
+
+        // Empty, short, incompressible and highly repetitive inputs
+        int[] lengths = { 0, 1, 12, 13, 100, 4096, 70000 };
+        for (int length : lengths) {
+            byte[] noise = new byte[length];
+            random.nextBytes(noise);
+            assertRoundTrip(compressor, noise);
+
+            byte[] repetitive = new byte[length];
+            for (int i = 0; i < length; ++i) {
+                repetitive[i] = (byte)"position update ".charAt(i % 16);
+            }
+            int compressedLength = assertRoundTrip(compressor, repetitive);
+            if (length >= 100) {
+                assertTrue(compressedLength < (length / 2));
+            }
+        }
+    }
+
+    public void testHighlyCompressible() throws IOException {
+        Compressor compressor = new Lz4Compressor();
+        assertRoundTrip(compressor, new byte[1 << 20]);
+    }
+
+    public void testMalformed() {
+        Compressor compressor = new Lz4Compressor();
+        // A match referring before the start of output
+        byte[] src = { (byte)0x10, (byte)'a', (byte)0x05, (byte)0x00 };
+        byte[] dst = new byte[16];
+        try {
+            compressor.decompress(src, 0, src.length, dst, 0, dst.length);
+            fail("expected IOException");
+        } catch (IOException e) {
+        }
+    }
+
+    private static int assertRoundTrip(Compressor compressor, byte[] plain)
+            throws IOException {
+        byte[] compressed = new byte[compressor.maxCompressedLength(plain.length)];
+        int compressedLength = compressor.compress(
+            plain, 0, plain.length, compressed, 0);
+
+        byte[] restored = new byte[plain.length];
+        int n = compressor.decompress(compressed, 0, compressedLength,
+            restored, 0, restored.length);
+        assertEquals(plain.length, n);
+        assertTrue(Arrays.equals(plain, restored));
+        // Receivers bound the claimed length with it.
+        assertTrue(n <= compressor.maxDecompressedLength(compressedLength));
+        return compressedLength;
+    }
+}
@@ -0,0 +1,210 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.metrics.*;
+
+public class MetricsTests extends TestCase {
+    public MetricsTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(MetricsTests.class);
+    }
+
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000L, histogram.max());
+        assertEquals(500500.0, histogram.mean(), 0.001);
+
+        // Within the 12.5% bucket resolution
+        long p50 = histogram.percentile(50.0);
+        assertTrue(p50 >= 500000 && p50 <= 562500);
+        long p99 = histogram.percentile(99.0);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000L, histogram.percentile(100.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99.0));
+    }
+
+    public void testFlowMetrics() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(10);
+        final Handler failing = new Handler() {
+            public void invoke(Event e) {
+                latch.countDown();
+                if (((TimeoutEvent)e).getIntParam() % 2 == 0) {
+                    throw new IllegalStateException("even");
+                }
+            }
+        };
+        SingleThreadFlow flow = new SingleThreadFlow("MetricsTests");
+        flow.metrics(true);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), failing);
+            }
+        });
+
+        // Queued before the flow starts
+        for (int i = 0; i < 10; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        flow.feed(new HeartbeatEvent());
+        assertEquals(11, flow.queueDepth());
+
+        flow.startup();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        flow.shutdown();
+
+        FlowMetrics metrics = flow.metrics();
+        assertSame(metrics, MetricsRegistry.get("MetricsTests"));
+        assertEquals(11, metrics.dispatched());
+        assertEquals(5, metrics.exceptions());
+        assertEquals(11, flow.maxQueueDepth());
+        assertEquals(0, flow.queueDepth());
+        assertEquals(Long.valueOf(10),
+            metrics.eventCounts().get(BuiltinEventType.TimeoutEvent));
+        assertEquals(Long.valueOf(1),
+            metrics.eventCounts().get(BuiltinEventType.HeartbeatEvent));
+        assertEquals(11, metrics.dispatchLatency().count());
+
+        Collection<FlowMetrics.HandlerMetrics> handlers = metrics.handlers();
+        assertEquals(1, handlers.size());
+        FlowMetrics.HandlerMetrics handlerMetrics = handlers.iterator().next();
+        assertSame(failing, handlerMetrics.handler());
+        assertEquals(failing.getClass().getName(), handlerMetrics.name());
+        assertEquals(10, handlerMetrics.executionTime().count());
+        assertEquals(5, handlerMetrics.exceptions());
+
+        MetricsRegistry.exportJmx();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = MetricsRegistry.objectName(metrics);
+        assertEquals(11L, server.getAttribute(name, "Dispatched"));
+        assertEquals(5L, server.getAttribute(name, "Exceptions"));
+
+        flow.metrics(false);
+        assertNull(flow.metrics());
+        assertNull(MetricsRegistry.get("MetricsTests"));
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void testQueueTimestamps() {
+        BlockingQueue<String> queue = new BlockingQueue<String>(2);
+        queue.enqueue("a", 1);
+        queue.timestamps(true);
+        queue.enqueue("b", 1);
+        queue.enqueue("c", 0);
+
+        List<String> values = new ArrayList<String>();
+        assertEquals(3, queue.dequeue(values));
+        assertEquals(Arrays.asList("c", "a", "b"), values);
+        // Queued before timestamps were enabled
+        assertEquals(0, queue.enqueueTime(1));
+        assertTrue(queue.enqueueTime(2) != 0);
+        assertTrue(queue.enqueueTime(0) - queue.enqueueTime(2) >= 0);
+    }
+
+    public void testSharedEvent() throws Exception {
+        // The same instance is fed to both flows, as the hub does.
+        final CountDownLatch latch = new CountDownLatch(2);
+        SingleThreadFlow flow1 = new SingleThreadFlow("MetricsTests.1");
+        SingleThreadFlow flow2 = new SingleThreadFlow("MetricsTests.2");
+        final Handler handler = new Handler() {
+            public void invoke(Event e) {
+                latch.countDown();
+            }
+        };
+        final Handler idle = new Handler() {
+            public void invoke(Event e) { }
+        };
+        flow1.metrics(true).add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), handler);
+                bind(new TimeoutEvent(), idle);
+            }
+        });
+        flow2.metrics(true).add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), handler);
+            }
+        });
+        flow1.startup();
+        flow2.startup();
+        try {
+            TimeoutEvent e = new TimeoutEvent();
+            flow1.feed(e);
+            flow2.feed(e);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            flow1.shutdown();
+            flow2.shutdown();
+        }
+        assertEquals(1, flow1.metrics().dispatchLatency().count());
+        assertEquals(1, flow2.metrics().dispatchLatency().count());
+        Set<String> names = flow1.metrics().getHandlerExceptions().keySet();
+        assertEquals(2, names.size());
+        assertTrue(names.contains(handler.getClass().getName()));
+        flow1.metrics(false);
+        flow2.metrics(false);
+    }
+
+    public void testLinkMetrics() throws Exception {
+        LinkMetrics link = new LinkMetrics("MetricsTests");
+        LinkMetrics session1 = new LinkMetrics(link, 1);
+        LinkMetrics session2 = new LinkMetrics(link, 2);
+
+        session1.add(LinkMetrics.Counter.TxEvents, 6);
+        session1.add(LinkMetrics.Counter.SendBatches, 2);
+        session2.add(LinkMetrics.Counter.TxEvents, 2);
+        session2.increment(LinkMetrics.Counter.SendBatches);
+        session2.increment(LinkMetrics.Counter.DecodeErrors);
+
+        assertEquals(3.0, session1.averageBatchSize(), 0.001);
+        assertEquals(8, link.get(LinkMetrics.Counter.TxEvents));
+        assertEquals(3, link.getSendBatches());
+        assertEquals(1, link.getDecodeErrors());
+        assertEquals(0, session1.getDecodeErrors());
+
+        MetricsRegistry.register(link);
+        MetricsRegistry.register(session1);
+        try {
+            assertSame(link, MetricsRegistry.getLink("MetricsTests"));
+            assertSame(session1, MetricsRegistry.getSession(1));
+            assertNull(MetricsRegistry.getSession(2));
+            MetricsRegistry.exportJmx();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(6L, server.getAttribute(
+                MetricsRegistry.objectName(session1), "TxEvents"));
+            assertEquals(8L, server.getAttribute(
+                MetricsRegistry.objectName(link), "TxEvents"));
+        }
+        finally {
+            MetricsRegistry.unregister(session1);
+            MetricsRegistry.unregister(link);
+        }
+        assertNull(MetricsRegistry.getLink("MetricsTests"));
+    }
+}
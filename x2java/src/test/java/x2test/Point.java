@@ -0,0 +1,188 @@
+// auto-generated by x2java xpiler
+
+package x2test;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class Point extends Cell {
+    protected static Tag tag;
+
+    private float x_;
+    private float y_;
+
+    private LazyProperties lazy;
+
+    public float getX() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(0)) {
+                    try {
+                        x_ = lazy.seek(0).readFloat();
+                    }
+                    catch (IOException e) {
+                        Log.error("Point.getX : decoding error");
+                    }
+                }
+            }
+        }
+        return x_;
+    }
+    public Point setX(float value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        if (lazy != null) {
+            lazy.discard(0);
+        }
+        x_ = value;
+        return this;
+    }
+
+    public float getY() {
+        if (lazy != null) {
+            synchronized (lazy) {
+                if (lazy.isPending(1)) {
+                    try {
+                        y_ = lazy.seek(1).readFloat();
+                    }
+                    catch (IOException e) {
+                        Log.error("Point.getY : decoding error");
+                    }
+                }
+            }
+        }
+        return y_;
+    }
+    public Point setY(float value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        if (lazy != null) {
+            lazy.discard(1);
+        }
+        y_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(null, Point.class, 2);
+    }
+
+    public Point() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected Point(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        x_ = .0f;
+        y_ = .0f;
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        Point o = (Point)other;
+        if (getX() != o.getX()) {
+            return false;
+        }
+        if (getY() != o.getY()) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(getX());
+        }
+        if (touched.get(1)) {
+            hash.update(getY());
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        Point o = (Point)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (getX() != o.getX()) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (getY() != o.getY()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Tag _getTypeTag() { return tag; }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" X: ");
+        sb.append(getX());
+        sb.append(", Y: ");
+        sb.append(getY());
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        lazy = new LazyProperties(deserializer, 2);
+        if (touched.get(0)) {
+            lazy.mark(0);
+            deserializer.skipFloat();
+        }
+        if (touched.get(1)) {
+            lazy.mark(1);
+            deserializer.skipFloat();
+        }
+        lazy.capture();
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthFloat(getX());
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthFloat(getY());
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeFloat(getX());
+        }
+        if (touched.get(1)) {
+            serializer.writeFloat(getY());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// auto-generated by x2java xpiler
+
+package x2test;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class PointView extends CellView {
+    private int[] offsets;
+
+    public PointView() {
+        offsets = new int[2];
+    }
+
+    public boolean hasX() {
+        return (offsets[0] >= 0);
+    }
+    public float getX() {
+        if (offsets[0] < 0) {
+            return .0f;
+        }
+        try {
+            deserializer.position(offsets[0]);
+            return deserializer.readFloat();
+        }
+        catch (IOException e) {
+            Log.error("PointView.getX : decoding error");
+            return .0f;
+        }
+    }
+
+    public boolean hasY() {
+        return (offsets[1] >= 0);
+    }
+    public float getY() {
+        if (offsets[1] < 0) {
+            return .0f;
+        }
+        try {
+            deserializer.position(offsets[1]);
+            return deserializer.readFloat();
+        }
+        catch (IOException e) {
+            Log.error("PointView.getY : decoding error");
+            return .0f;
+        }
+    }
+
+    @Override
+    protected void walk() throws IOException {
+        super.walk();
+        int offset = Point.tag.getOffset();
+        if (touched(offset + 0)) {
+            offsets[0] = deserializer.position();
+            deserializer.skipFloat();
+        }
+        else {
+            offsets[0] = -1;
+        }
+        if (touched(offset + 1)) {
+            offsets[1] = deserializer.position();
+            deserializer.skipFloat();
+        }
+        else {
+            offsets[1] = -1;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+// auto-generated by x2java xpiler
+
+package x2test;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+import x2java.util.*;
+
+public class PositionUpdate extends Event {
+    protected static Tag tag;
+
+    private int id_;
+    private float x_;
+    private float y_;
+    private String name_;
+
+    public int getId() {
+        return id_;
+    }
+    public PositionUpdate setId(int value) {
+        fingerprint.touch(tag.getOffset() + 0);
+        id_ = value;
+        return this;
+    }
+
+    public float getX() {
+        return x_;
+    }
+    public PositionUpdate setX(float value) {
+        fingerprint.touch(tag.getOffset() + 1);
+        x_ = value;
+        return this;
+    }
+
+    public float getY() {
+        return y_;
+    }
+    public PositionUpdate setY(float value) {
+        fingerprint.touch(tag.getOffset() + 2);
+        y_ = value;
+        return this;
+    }
+
+    public String getName() {
+        return name_;
+    }
+    public PositionUpdate setName(String value) {
+        fingerprint.touch(tag.getOffset() + 3);
+        name_ = value;
+        return this;
+    }
+
+    static {
+        tag = new Tag(Event.tag, PositionUpdate.class, 4, 101);
+    }
+
+    public PositionUpdate() {
+        super(tag.getNumProps());
+        init();
+    }
+
+    protected PositionUpdate(int length) {
+        super(length + tag.getNumProps());
+        init();
+    }
+
+    private void init() {
+        id_ = 0;
+        x_ = .0f;
+        y_ = .0f;
+        name_ = "";
+    }
+
+    @Override
+    protected boolean equalsTo(Cell other) {
+        if (!super.equalsTo(other)) {
+            return false;
+        }
+        PositionUpdate o = (PositionUpdate)other;
+        if (id_ != o.id_) {
+            return false;
+        }
+        if (x_ != o.x_) {
+            return false;
+        }
+        if (y_ != o.y_) {
+            return false;
+        }
+        if (!Objects.equals(name_, o.name_)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(Fingerprint fingerprint) {
+        Hash hash = new Hash(super.hashCode(fingerprint));
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            hash.update(id_);
+        }
+        if (touched.get(1)) {
+            hash.update(x_);
+        }
+        if (touched.get(2)) {
+            hash.update(y_);
+        }
+        if (touched.get(3)) {
+            hash.update(name_);
+        }
+        return hash.code();
+    }
+
+    @Override
+    protected boolean isEquivalent(Cell other, Fingerprint fingerprint) {
+        if (!super.isEquivalent(other, fingerprint)) {
+            return false;
+        }
+        PositionUpdate o = (PositionUpdate)other;
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            if (id_ != o.id_) {
+                return false;
+            }
+        }
+        if (touched.get(1)) {
+            if (x_ != o.x_) {
+                return false;
+            }
+        }
+        if (touched.get(2)) {
+            if (y_ != o.y_) {
+                return false;
+            }
+        }
+        if (touched.get(3)) {
+            if (!Objects.equals(name_, o.name_)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Cell.Tag _getTypeTag() { return tag; }
+
+    @Override
+    public int _getTypeId() { return tag.getTypeId(); }
+
+    @Override
+    protected void describe(StringBuilder sb) {
+        super.describe(sb);
+        sb.append(" Id: ");
+        sb.append(id_);
+        sb.append(", X: ");
+        sb.append(x_);
+        sb.append(", Y: ");
+        sb.append(y_);
+        sb.append(", Name: ");
+        sb.append(name_);
+    }
+
+    // Serialization
+
+    @Override
+    public void deserialize(Deserializer deserializer) throws IOException {
+        super.deserialize(deserializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            id_ = deserializer.readInt();
+        }
+        if (touched.get(1)) {
+            x_ = deserializer.readFloat();
+        }
+        if (touched.get(2)) {
+            y_ = deserializer.readFloat();
+        }
+        if (touched.get(3)) {
+            name_ = deserializer.readString();
+        }
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            length += Serializer.lengthInt(id_);
+        }
+        if (touched.get(1)) {
+            length += Serializer.lengthFloat(x_);
+        }
+        if (touched.get(2)) {
+            length += Serializer.lengthFloat(y_);
+        }
+        if (touched.get(3)) {
+            length += Serializer.lengthString(name_);
+        }
+        return length;
+    }
+
+    @Override
+    public void serialize(Serializer serializer) {
+        super.serialize(serializer);
+        Capo touched = fingerprint.capo(tag.getOffset());
+        if (touched.get(0)) {
+            serializer.writeInt(id_);
+        }
+        if (touched.get(1)) {
+            serializer.writeFloat(x_);
+        }
+        if (touched.get(2)) {
+            serializer.writeFloat(y_);
+        }
+        if (touched.get(3)) {
+            serializer.writeString(name_);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class PriorityTests extends TestCase {
+    public PriorityTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(PriorityTests.class);
+    }
+
+    public void testWeightedDrain() {
+        BlockingQueue<String> queue = new BlockingQueue<String>(2);
+        queue.weight(1, 2);
+        queue.enqueue("b1", 1);
+        queue.enqueue("b2", 1);
+        queue.enqueue("b3", 1);
+        queue.enqueue("a1", 0);
+
+        List<String> values = new ArrayList<String>();
+        assertEquals(3, queue.dequeue(values));
+        assertEquals(Arrays.asList("a1", "b1", "b2"), values);
+        assertEquals("b3", queue.tryDequeue());
+        assertNull(queue.tryDequeue());
+    }
+
+    public void testFlowLanes() throws InterruptedException {
+        final List<String> trace = new ArrayList<String>();
+        SingleThreadFlow flow = new SingleThreadFlow("PriorityTests");
+        flow.priority(101, Event.Priority.Low);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        record(trace, "T" + ((TimeoutEvent)e).getIntParam());
+                    }
+                });
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        record(trace, "P");
+                    }
+                });
+                bind(new HeartbeatEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        record(trace, "H");
+                    }
+                });
+            }
+        });
+
+        // Queued before the flow starts, so that they are drained together
+        for (int i = 1; i <= 300; ++i) {
+            flow.feed(new TimeoutEvent().setIntParam(i));
+        }
+        flow.feed(new PositionUpdate());
+        flow.feed(new HeartbeatEvent());
+
+        flow.startup();
+        synchronized (trace) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (trace.size() < 302) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                trace.wait(wait);
+            }
+        }
+        flow.shutdown();
+
+        assertEquals("H", trace.get(0));
+        assertEquals("T1", trace.get(1));
+        assertEquals("T256", trace.get(256));
+        assertEquals("P", trace.get(257));
+        assertEquals("T257", trace.get(258));
+        assertEquals("T300", trace.get(301));
+    }
+
+    private static void record(List<String> trace, String step) {
+        synchronized (trace) {
+            trace.add(step);
+            trace.notifyAll();
+        }
+    }
+}
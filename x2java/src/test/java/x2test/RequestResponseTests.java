@@ -0,0 +1,152 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.concurrent.*;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.links.*;
+import x2java.links.socket.*;
+
+public class RequestResponseTests extends TestCase {
+    public RequestResponseTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(RequestResponseTests.class);
+    }
+
+    public void testWaitHandleSerialization() throws IOException {
+        EventFactory.register(PositionUpdate.class);
+
+        PositionUpdate e = new PositionUpdate().setId(1);
+        e._setWaitHandle(300);
+        Buffer buffer = new Buffer();
+        e.serialize(new Serializer(buffer));
+        assertEquals(e.length(), buffer.length());
+
+        buffer.rewind();
+        Deserializer deserializer = new Deserializer(buffer);
+        Event retrieved = deserializer.create();
+        retrieved.deserialize(deserializer);
+        assertEquals(300, retrieved._getWaitHandle());
+        assertEquals(e, retrieved);
+        // Bindings without a wait handle still match.
+        assertTrue(new PositionUpdate().setId(1).equivalent(retrieved));
+        buffer.close();
+    }
+
+    public void testComplete() throws Exception {
+        PendingRequests pending = new PendingRequests(4);
+        CompletableFuture<Event> future = new CompletableFuture<Event>();
+        int waitHandle = pending.add(future, 0);
+        assertEquals(1, pending.size());
+
+        PositionUpdate unrelated = new PositionUpdate();
+        unrelated._setWaitHandle(waitHandle + 1);
+        assertFalse(pending.complete(unrelated));
+
+        PositionUpdate response = new PositionUpdate().setId(2);
+        response._setWaitHandle(waitHandle);
+        assertTrue(pending.complete(response));
+        assertSame(response, future.get());
+        assertEquals(0, pending.size());
+        assertFalse(pending.complete(response));
+    }
+
+    public void testGrowth() throws Exception {
+        PendingRequests pending = new PendingRequests(4);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[100];
+        int[] waitHandles = new int[futures.length];
+        for (int i = 0; i < futures.length; ++i) {
+            CompletableFuture<Event> future = new CompletableFuture<Event>();
+            futures[i] = future;
+            waitHandles[i] = pending.add(future, 0);
+        }
+        assertEquals(futures.length, pending.size());
+        for (int i = futures.length - 1; i >= 0; --i) {
+            PositionUpdate response = new PositionUpdate().setId(i);
+            response._setWaitHandle(waitHandles[i]);
+            assertTrue(pending.complete(response));
+            assertSame(response, futures[i].get());
+        }
+        assertEquals(0, pending.size());
+    }
+
+    public void testTimeoutAndFailure() throws Exception {
+        PendingRequests pending = new PendingRequests();
+        CompletableFuture<Event> timedOut = new CompletableFuture<Event>();
+        CompletableFuture<Event> failed = new CompletableFuture<Event>();
+        pending.add(timedOut, 20);
+        pending.add(failed, 60000);
+
+        try {
+            timedOut.get(5, TimeUnit.SECONDS);
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, pending.size());
+
+        pending.failAll(new IOException("closed"));
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, pending.size());
+    }
+
+    public void testRebroadcastRequest() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        final TcpServer server = new TcpServer("RequestResponseTests.Server");
+        TcpClient client = new TcpClient("RequestResponseTests.Client");
+
+        SingleThreadFlow flow = new SingleThreadFlow("RequestResponseTests");
+        flow.add(server);
+        flow.add(client);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        PositionUpdate request = (PositionUpdate)e;
+                        if (request.getId() >= 1000) {
+                            return;
+                        }
+                        // The request echoed back still carries its wait
+                        // handle, but it is no response.
+                        server.broadcast(request);
+                        server.respond(e, new PositionUpdate()
+                            .setId(1000 + request.getId()));
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            server.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 17102));
+            // The server binds on its own thread.
+            Thread.sleep(200);
+            client.connect("127.0.0.1", 17102);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client.session() == null) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            Event response = client.send(new PositionUpdate().setId(1), 5000)
+                .get(5, TimeUnit.SECONDS);
+            assertEquals(1001, ((PositionUpdate)response).getId());
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            client.close();
+            server.close();
+        }
+    }
+}
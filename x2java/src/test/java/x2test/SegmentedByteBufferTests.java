@@ -5,7 +5,10 @@ import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
 import java.nio.ByteBuffer;
+import java.util.*;
 
+import x2java.Buffer;
+import x2java.util.ByteBufferPool;
 import x2java.util.SegmentedByteBuffer;
 
 public class SegmentedByteBufferTests extends TestCase {
@@ -58,4 +61,18 @@ public class SegmentedByteBufferTests extends TestCase {
         assertFalse(segmented1.release(b21));
         assertTrue(segmented2.release(b21));
     }
+
+    public void testPoolGrowth() {
+        // One more than a chunk holds, so that the pool has to grow
+        int count = (1 << Buffer.SIZE_EXPONENT) + 1;
+        List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(count);
+        for (int i = 0; i < count; ++i) {
+            ByteBuffer buffer = ByteBufferPool.acquire();
+            assertNotNull(buffer);
+            buffers.add(buffer);
+        }
+        for (int i = 0; i < count; ++i) {
+            ByteBufferPool.release(buffers.get(i));
+        }
+    }
 }
@@ -54,22 +54,23 @@ public class SerializationTests extends TestCase {
 
         buffer.trim();
 
-        serializer.writeInt(0x0000ef80 >> 1);  // 2
-        serializer.writeInt(0x001fc000 >> 1);  // 3
-        serializer.writeInt(0x0fe00000 >> 1);  // 4
+        // Zigzag encoding doubles the magnitude.
+        serializer.writeInt(0x00001f80 >> 1);  // 2
+        serializer.writeInt(0x000fc000 >> 1);  // 3
+        serializer.writeInt(0x07e00000 >> 1);  // 4
 
         buffer.rewind();
 
         i = deserializer.readVariableInt(bytes);
-        assertEquals(0x0000ef80 >> 1, i);
+        assertEquals(0x00001f80 >> 1, i);
         assertEquals(2, bytes.get().intValue());
 
         i = deserializer.readVariableInt(bytes);
-        assertEquals(0x001fc000 >> 1, i);
+        assertEquals(0x000fc000 >> 1, i);
         assertEquals(3, bytes.get().intValue());
 
         i = deserializer.readVariableInt(bytes);
-        assertEquals(0x0fe00000 >> 1, i);
+        assertEquals(0x07e00000 >> 1, i);
         assertEquals(4, bytes.get().intValue());
     }
 
@@ -0,0 +1,91 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.links.shm.*;
+
+public class ShmLinkTests extends TestCase {
+    public ShmLinkTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ShmLinkTests.class);
+    }
+
+    public void testRoundTrip() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        File dir = new File("/dev/shm");
+        if (!dir.isDirectory()) {
+            dir = new File(System.getProperty("java.io.tmpdir"));
+        }
+        String path = new File(dir, "x2java-ShmLinkTests").getPath();
+
+        final ShmLink server = new ShmLink("ShmLinkTests.Server");
+        ShmLink client = new ShmLink("ShmLinkTests.Client");
+        // Small rings so that frames wrap around and writers wait
+        server.ringCapacity(256);
+        server.idleSpins(1000);
+        client.idleSpins(1000);
+
+        SingleThreadFlow flow = new SingleThreadFlow("ShmLinkTests");
+        flow.add(server);
+        flow.add(client);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        PositionUpdate request = (PositionUpdate)e;
+                        server.respond(e, new PositionUpdate()
+                            .setId(request.getId())
+                            .setName(request.getName() + "!"));
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            server.listen(path);
+            client.connect(path);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (client.session() == null || server.session() == null) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+
+            for (int i = 1; i <= 200; ++i) {
+                Event response = client.send(new PositionUpdate()
+                    .setId(i).setName("event" + i), 5000)
+                    .get(5, TimeUnit.SECONDS);
+                assertEquals(i, ((PositionUpdate)response).getId());
+                assertEquals("event" + i + "!",
+                    ((PositionUpdate)response).getName());
+            }
+            assertEquals(200, server.metrics().getRxEvents());
+
+            // The server notices the client going away.
+            client.close();
+            deadline = System.currentTimeMillis() + 5000;
+            while (server.session() != null) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            server.close();
+        }
+        assertFalse(new File(path).exists());
+    }
+}
@@ -0,0 +1,131 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.*;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.journal.*;
+
+public class SnapshotTests extends TestCase {
+    public SnapshotTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SnapshotTests.class);
+    }
+
+    // Counts the position updates and sums up their ids.
+    private static class Counter extends Case implements Snapshotable {
+        volatile int count;
+        volatile int sum;
+
+        @Override
+        protected void setup() {
+            bind(new PositionUpdate(), new Handler() {
+                public void invoke(Event e) {
+                    sum += ((PositionUpdate)e).getId();
+                    ++count;
+                }
+            });
+        }
+
+        public Class<? extends Cell> stateClass() {
+            return Point.class;
+        }
+
+        public Cell captureState() {
+            return new Point().setX(count).setY(sum);
+        }
+
+        public void restoreState(Cell state) {
+            Point point = (Point)state;
+            count = (int)point.getX();
+            sum = (int)point.getY();
+        }
+    }
+
+    public void testRestore() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+            "x2java-SnapshotTests-" + System.nanoTime());
+
+        Counter counter = new Counter();
+        Journal journal = new Journal("SnapshotTests", dir);
+        Snapshotter snapshotter = new Snapshotter("SnapshotTests", dir, journal)
+            .add("counter", counter);
+        SingleThreadFlow flow = new SingleThreadFlow("SnapshotTests");
+        flow.add(counter).add(snapshotter);
+        journal.forward(flow);
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            assertEquals(0, snapshotter.replayed());
+            for (int i = 0; i < 100; ++i) {
+                Hub.post(new PositionUpdate().setId(i));
+            }
+            snapshotter.snapshot();
+            waitUntil(snapshotter, 1);
+            for (int i = 100; i < 150; ++i) {
+                Hub.post(new PositionUpdate().setId(i));
+            }
+            waitUntil(counter, 150);
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+        assertEquals(149 * 150 / 2, counter.sum);
+
+        // A fresh case gets the snapshot state plus the journal tail.
+        counter = new Counter();
+        journal = new Journal("SnapshotTests", dir);
+        snapshotter = new Snapshotter("SnapshotTests", dir, journal)
+            .add("counter", counter);
+        flow = new SingleThreadFlow("SnapshotTests");
+        // The replay fits in neither the capacity nor the policy.
+        flow.capacity(10).overflowPolicy(EventBasedFlow.OverflowPolicy.Block);
+        flow.add(counter).add(snapshotter);
+        journal.forward(flow);
+        Hub.instance().attach(journal);
+        Hub.startup();
+        try {
+            assertEquals(50, snapshotter.replayed());
+            assertFalse(Hub.instance().saturated());
+            waitUntil(counter, 150);
+            assertEquals(149 * 150 / 2, counter.sum);
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(journal);
+        }
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static void waitUntil(Counter counter, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.count < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitUntil(Snapshotter snapshotter, int saved)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (snapshotter.saved() < saved) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class StartupTests extends TestCase {
+    public StartupTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(StartupTests.class);
+    }
+
+    // Case taking a while to set up, recording when it did.
+    private static class SlowCase extends Case {
+        final String name;
+        final List<String> log;
+        volatile long setupStart;
+        volatile long setupEnd;
+
+        SlowCase(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        protected void setup() {
+            setupStart = System.nanoTime();
+            try {
+                Thread.sleep(200);
+            }
+            catch (InterruptedException ie) { }
+            setupEnd = System.nanoTime();
+        }
+
+        @Override
+        protected void teardown() {
+            log.add(name);
+        }
+    }
+
+    public void testParallelFlows() {
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        SlowCase a = new SlowCase("a", log);
+        SlowCase b = new SlowCase("b", log);
+        SlowCase c = new SlowCase("c", log);
+        Flow flowA = new SingleThreadFlow("StartupTests.A").add(a);
+        Flow flowB = new SingleThreadFlow("StartupTests.B").add(b);
+        Flow flowC = new SingleThreadFlow("StartupTests.C").add(c)
+            .dependsOn(flowA);
+
+        Hub hub = Hub.instance().parallelism(4);
+        hub.attach(flowC).attach(flowA).attach(flowB);
+        long start = System.nanoTime();
+        Hub.startup();
+        long elapsed = System.nanoTime() - start;
+        try {
+            // a and b at once, then c
+            assertTrue(c.setupStart >= a.setupEnd);
+            assertTrue(b.setupStart < a.setupEnd);
+            assertTrue(elapsed < 550000000L);
+
+            Map<Flow, Long> times = hub.startupTimes();
+            assertEquals(3, times.size());
+            assertTrue(times.get(flowC) >= 200000000L);
+        }
+        finally {
+            Hub.shutdown();
+            hub.detach(flowA).detach(flowB).detach(flowC);
+            hub.parallelism(1);
+        }
+        // c stops before a.
+        assertEquals(3, log.size());
+        assertTrue(log.indexOf("c") < log.indexOf("a"));
+    }
+
+    public void testParallelCases() {
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        SlowCase a = new SlowCase("a", log);
+        SlowCase b = new SlowCase("b", log);
+        SlowCase c = new SlowCase("c", log);
+        SingleThreadFlow flow = new SingleThreadFlow("StartupTests");
+        flow.add(c, a).add(a).add(b);
+        flow.setupParallelism(3);
+        flow.startup();
+        try {
+            assertTrue(c.setupStart >= a.setupEnd);
+            assertTrue(b.setupStart < a.setupEnd);
+            assertEquals(3, flow.setupTimes().size());
+        }
+        finally {
+            flow.shutdown();
+        }
+        assertEquals(3, log.size());
+        assertTrue(log.indexOf("c") < log.indexOf("a"));
+    }
+
+    public void testParallelSetupError() {
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        SingleThreadFlow flow = new SingleThreadFlow("StartupTests");
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                throw new Error("setup");
+            }
+        }).add(new SlowCase("b", log));
+        flow.setupParallelism(2);
+        // Rethrown on this thread instead of hanging the startup
+        try {
+            flow.startup();
+            fail();
+        }
+        catch (Error e) {
+            assertEquals("setup", e.getMessage());
+        }
+        flow.shutdown();
+    }
+
+    public void testSerialOrder() {
+        List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        SingleThreadFlow flow = new SingleThreadFlow("StartupTests");
+        SlowCase a = new SlowCase("a", log);
+        SlowCase b = new SlowCase("b", log);
+        // b goes first for its dependent, the rest in the order added
+        flow.add(a, b).add(b).add(new SlowCase("c", log));
+        flow.startup();
+        flow.shutdown();
+        assertEquals(Arrays.asList("c", "a", "b"), log);
+    }
+
+    public void testCycle() {
+        Flow flowA = new SingleThreadFlow("StartupTests.A");
+        Flow flowB = new SingleThreadFlow("StartupTests.B").dependsOn(flowA);
+        flowA.dependsOn(flowB);
+        Hub.instance().attach(flowA).attach(flowB);
+        try {
+            Hub.startup();
+            fail();
+        }
+        catch (IllegalStateException ise) {
+        }
+        finally {
+            Hub.instance().detach(flowA).detach(flowB);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.util.concurrent.ThreadFactory;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.util.*;
+
+public class ThreadFactoryTests extends TestCase {
+    public ThreadFactoryTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ThreadFactoryTests.class);
+    }
+
+    public void testPinnedFlowThread() throws InterruptedException {
+        final List<String> pinned = Collections.synchronizedList(new ArrayList<String>());
+        final int[] created = new int[1];
+        Affinity.Provider original = Affinity.provider();
+        Affinity.provider(new Affinity.Provider() {
+            public boolean pin(int[] cpus) {
+                pinned.add(Thread.currentThread().getName() + " " + Arrays.toString(cpus));
+                return true;
+            }
+        });
+        ThreadFactory base = new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                ++created[0];
+                Thread thread = new Thread(runnable);
+                thread.setPriority(Thread.MAX_PRIORITY);
+                return thread;
+            }
+        };
+
+        final String[] handlerThread = new String[1];
+        SingleThreadFlow flow = new SingleThreadFlow("ThreadFactoryTests");
+        flow.threadFactory(Affinity.pinning(base, 2, 3));
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent(), new Handler() {
+                    public void invoke(Event e) {
+                        synchronized (handlerThread) {
+                            handlerThread[0] = Thread.currentThread().getName();
+                            handlerThread.notifyAll();
+                        }
+                    }
+                });
+            }
+        });
+        try {
+            flow.startup();
+            flow.feed(new TimeoutEvent());
+            synchronized (handlerThread) {
+                if (handlerThread[0] == null) {
+                    handlerThread.wait(5000);
+                }
+            }
+            flow.shutdown();
+        }
+        finally {
+            Affinity.provider(original);
+        }
+
+        assertEquals(1, created[0]);
+        assertEquals("ThreadFactoryTests", handlerThread[0]);
+        assertEquals(Arrays.asList("ThreadFactoryTests [2, 3]"), pinned);
+    }
+
+    public void testNamedByFactory() throws InterruptedException {
+        final Thread[] created = new Thread[1];
+        SingleThreadFlow flow = new SingleThreadFlow("ThreadFactoryTests");
+        flow.threadFactory(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                created[0] = new Thread(runnable, "worker");
+                return created[0];
+            }
+        });
+        flow.startup();
+        flow.shutdown();
+        // The name given by the factory is kept.
+        assertEquals("worker", created[0].getName());
+    }
+}
@@ -0,0 +1,107 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class TimeFlowTests extends TestCase {
+    public TimeFlowTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TimeFlowTests.class);
+    }
+
+    public void testReserveAndCancel() throws InterruptedException {
+        TimeFlow timeFlow = new TimeFlow("TimeFlowTests", 1, 8);
+        RecordingFlow target = new RecordingFlow();
+        timeFlow.startup();
+        try {
+            // Each delay spans the 8-slot wheel several times.
+            timeFlow.reserve(target, new TimeoutEvent().setIntParam(2), 30);
+            long token = timeFlow.reserve(target,
+                new TimeoutEvent().setIntParam(0), 20);
+            timeFlow.reserve(target, new TimeoutEvent().setIntParam(1), 25);
+            assertEquals(3, timeFlow.reserved());
+
+            assertTrue(timeFlow.cancel(token));
+            assertFalse(timeFlow.cancel(token));
+
+            target.await(2);
+            assertEquals(1, target.params.get(0).intValue());
+            assertEquals(2, target.params.get(1).intValue());
+            assertEquals(0, timeFlow.reserved());
+        }
+        finally {
+            timeFlow.shutdown();
+        }
+    }
+
+    public void testRepetition() throws InterruptedException {
+        TimeFlow timeFlow = new TimeFlow("TimeFlowTests", 1, 8);
+        RecordingFlow target = new RecordingFlow();
+        timeFlow.startup();
+        try {
+            long token = timeFlow.reserveRepetition(target,
+                new TimeoutEvent().setIntParam(7), 5);
+            target.await(3);
+            assertTrue(timeFlow.cancel(token));
+            assertEquals(0, timeFlow.reserved());
+        }
+        finally {
+            timeFlow.shutdown();
+        }
+    }
+
+    public void testEntryReuse() {
+        TimeFlow timeFlow = new TimeFlow();
+        TimeoutEvent e = new TimeoutEvent();
+        long[] tokens = new long[100000];
+        for (int i = 0; i < tokens.length; ++i) {
+            tokens[i] = timeFlow.reserve(null, e, 60000);
+        }
+        assertEquals(tokens.length, timeFlow.reserved());
+        for (int i = 0; i < tokens.length; ++i) {
+            assertTrue(timeFlow.cancel(tokens[i]));
+        }
+        assertEquals(0, timeFlow.reserved());
+
+        // A stale token does not cancel the reservation reusing its entry.
+        long token = timeFlow.reserve(null, e, 60000);
+        assertFalse(timeFlow.cancel(tokens[tokens.length - 1]));
+        assertTrue(timeFlow.cancel(token));
+    }
+
+    private static class RecordingFlow extends Flow {
+        final List<Integer> params = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void feed(Event e) {
+            params.add(((TimeoutEvent)e).getIntParam());
+            notifyAll();
+        }
+
+        synchronized void await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (params.size() < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                wait(wait);
+            }
+        }
+
+        @Override
+        public void shutdown() { }
+
+        @Override
+        public Flow startup() { return this; }
+    }
+}
@@ -0,0 +1,160 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.net.*;
+import java.util.*;
+
+import x2java.*;
+import x2java.flows.*;
+import x2java.links.socket.*;
+
+public class UdpLinkTests extends TestCase {
+    public UdpLinkTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(UdpLinkTests.class);
+    }
+
+    public void testExchange() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        final UdpLink server = new UdpLink("UdpLinkTests.Server");
+        final UdpLink client = new UdpLink("UdpLinkTests.Client");
+        final List<PositionUpdate> serverReceived = new ArrayList<PositionUpdate>();
+        final List<PositionUpdate> clientReceived = new ArrayList<PositionUpdate>();
+
+        SingleThreadFlow flow = new SingleThreadFlow("UdpLinkTests");
+        flow.add(server);
+        flow.add(client);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        PositionUpdate update = (PositionUpdate)e;
+                        List<PositionUpdate> list = (update.getId() < 100 ?
+                            serverReceived : clientReceived);
+                        synchronized (list) {
+                            list.add(update);
+                            list.notifyAll();
+                        }
+                        if (update.getId() < 100) {
+                            // Echo back to the endpoint it came from
+                            PositionUpdate echo = new PositionUpdate()
+                                .setId(update.getId() + 100);
+                            echo._setHandle(update._getHandle());
+                            server.send(echo);
+                        }
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.connect((InetSocketAddress)server.localAddress());
+
+            for (int i = 1; i <= 10; ++i) {
+                client.send(new PositionUpdate().setId(i).setName("udp"));
+            }
+            // Too large for a datagram, dropped at the sender
+            client.send(new PositionUpdate().setId(11)
+                .setName(new String(new char[2000])));
+
+            await(clientReceived, 10);
+            synchronized (serverReceived) {
+                assertEquals(10, serverReceived.size());
+                int handle = serverReceived.get(0)._getHandle();
+                assertTrue(handle != 0);
+                assertEquals(
+                    ((InetSocketAddress)client.localAddress()).getPort(),
+                    ((InetSocketAddress)server.endpoint(handle)).getPort());
+                assertEquals("udp", serverReceived.get(0).getName());
+            }
+            assertEquals(10, client.metrics().getTxEvents());
+            assertEquals(10, server.metrics().getRxEvents());
+            assertEquals(0, server.metrics().getDecodeErrors());
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            server.close();
+            client.close();
+        }
+    }
+
+    public void testMaxLearned() throws Exception {
+        EventFactory.register(PositionUpdate.class);
+
+        final UdpLink server = new UdpLink("UdpLinkTests.Server");
+        UdpLink client = new UdpLink("UdpLinkTests.Client");
+        final List<PositionUpdate> received = new ArrayList<PositionUpdate>();
+        // Taking datagrams only from the endpoints added explicitly
+        server.maxLearned(0);
+
+        SingleThreadFlow flow = new SingleThreadFlow("UdpLinkTests");
+        flow.add(server);
+        flow.add(client);
+        flow.add(new Case() {
+            @Override
+            protected void setup() {
+                bind(new PositionUpdate(), new Handler() {
+                    public void invoke(Event e) {
+                        synchronized (received) {
+                            received.add((PositionUpdate)e);
+                            received.notifyAll();
+                        }
+                    }
+                });
+            }
+        });
+        Hub.instance().attach(flow);
+        Hub.startup();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            client.connect((InetSocketAddress)server.localAddress());
+
+            client.send(new PositionUpdate().setId(1));
+            Thread.sleep(200);
+            synchronized (received) {
+                assertEquals(0, received.size());
+            }
+
+            int handle = server.addEndpoint(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(),
+                ((InetSocketAddress)client.localAddress()).getPort()));
+            client.send(new PositionUpdate().setId(2));
+            await(received, 1);
+            synchronized (received) {
+                assertEquals(2, received.get(0).getId());
+                assertEquals(handle, received.get(0)._getHandle());
+            }
+        }
+        finally {
+            Hub.shutdown();
+            Hub.instance().detach(flow);
+            server.close();
+            client.close();
+        }
+    }
+
+    private static void await(List<PositionUpdate> list, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (list) {
+            while (list.size() < count) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    fail("timed out");
+                }
+                list.wait(wait);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.*;
+
+import x2java.*;
+
+public class ViewTests extends TestCase {
+    public ViewTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ViewTests.class);
+    }
+
+    public void testEventView() throws IOException {
+        LazyPositionUpdate e = new LazyPositionUpdate()
+            .setId(7)
+            .setPosition(new Point().setX(3.0f).setY(4.0f))
+            .setPayload(new byte[] { 5, 6 });
+        Buffer buffer = new Buffer();
+        e.serialize(new Serializer(buffer));
+
+        LazyPositionUpdateView view = new LazyPositionUpdateView();
+        assertEquals(buffer.length(), view.wrap(buffer, 0));
+        assertEquals(e._getTypeId(), view._getTypeId());
+        assertTrue(view.hasId());
+        assertEquals(7, view.getId());
+        assertFalse(view.hasName());
+        assertEquals("", view.getName());
+        assertTrue(Arrays.equals(new byte[] { 5, 6 }, view.getPayload()));
+
+        PointView position = view.getPosition();
+        assertEquals(3.0f, position.getX());
+        assertEquals(4.0f, position.getY());
+        // Accessors may be called repeatedly and in any order.
+        assertEquals(7, view.getId());
+        assertSame(position, view.getPosition());
+        buffer.close();
+    }
+
+    public void testRewrap() throws IOException {
+        LazyPositionUpdateView view = new LazyPositionUpdateView();
+        for (int i = 0; i < 3; ++i) {
+            LazyPositionUpdate e = new LazyPositionUpdate()
+                .setId(i)
+                .setName("name" + i);
+            Buffer buffer = new Buffer();
+            e.serialize(new Serializer(buffer));
+            RawEvent raw = new RawEvent(e._getTypeId(),
+                buffer.slice(0, buffer.length()));
+            buffer.close();
+
+            view.wrap(raw);
+            assertEquals(i, view.getId());
+            assertEquals("name" + i, view.getName());
+            assertFalse(view.hasPosition());
+            assertNull(view.getPosition());
+            raw.release();
+        }
+    }
+
+    public void testRewrapAcrossBlocks() throws IOException {
+        LazyPositionUpdateView view = new LazyPositionUpdateView();
+        for (int i = 0; i < 3; ++i) {
+            LazyPositionUpdate e = new LazyPositionUpdate()
+                .setId(i)
+                .setPosition(new Point().setX(i).setY(-i))
+                .setPayload(new byte[100]);
+            Buffer buffer = new Buffer();
+            // Let the event straddle the first block boundary.
+            int padding = Buffer.BLOCK_SIZE - 10 - i;
+            buffer.put(new byte[padding], 0, padding);
+            e.serialize(new Serializer(buffer));
+            RawEvent raw = new RawEvent(e._getTypeId(),
+                buffer.slice(padding, buffer.length() - padding));
+            buffer.close();
+
+            view.wrap(raw);
+            assertEquals(i, view.getId());
+            assertEquals((float)-i, view.getPosition().getY());
+            assertEquals(100, view.getPayload().length);
+            raw.release();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package x2test;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import x2java.*;
+import x2java.flows.*;
+
+public class VirtualThreadFlowTests extends TestCase {
+    public VirtualThreadFlowTests(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(VirtualThreadFlowTests.class);
+    }
+
+    public void testBlockingHandler() throws Exception {
+        final List<String> trace = Collections.synchronizedList(new ArrayList<String>());
+        final CompletableFuture<String> lookup = new CompletableFuture<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final VirtualThreadFlow flow = new VirtualThreadFlow("VirtualThreadFlowTests");
+
+        flow.add(new Case() {
+            private int running;  // handlers running at a time
+
+            @Override
+            protected void setup() {
+                bind(new TimeoutEvent().setIntParam(1), new Handler() {
+                    public void invoke(Event e) {
+                        enter("begin 1");
+                        try {
+                            --running;
+                            String result = VirtualThreadFlow.await(lookup);
+                            enter("end 1 " + result);
+                            assertSame(flow, Flow.current());
+                        }
+                        catch (Exception ex) {
+                            trace.add(ex.toString());
+                        }
+                        --running;
+                        done.countDown();
+                    }
+                });
+                bind(new TimeoutEvent().setIntParam(2), new Handler() {
+                    public void invoke(Event e) {
+                        enter("2");
+                        lookup.complete("found");
+                        --running;
+                    }
+                });
+            }
+
+            private void enter(String step) {
+                if (++running != 1) {
+                    trace.add("overlapped");
+                }
+                trace.add(step);
+            }
+        });
+
+        flow.startup();
+        try {
+            flow.feed(new TimeoutEvent().setIntParam(1));
+            flow.feed(new TimeoutEvent().setIntParam(2));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            flow.shutdown();
+        }
+        assertEquals(Arrays.asList("begin 1", "2", "end 1 found"), trace);
+    }
+}
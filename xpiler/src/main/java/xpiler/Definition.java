@@ -78,6 +78,7 @@ class CellDef extends Definition {
 /** Represents an event definition. */
 class EventDef extends CellDef {
     public String id;
+    public String priority;  // null to inherit
 
     @Override
     public boolean isEvent() { return true; }
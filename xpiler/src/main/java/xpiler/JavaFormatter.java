@@ -33,24 +33,39 @@ class JavaFormatter implements Formatter {
 
         boolean result = true;
         for (Definition def : definitions) {
-            if (!format(doc, def, outDir)) {
+            if (!format(doc, def, outDir, false)) {
                 result = false;
             }
+            if (Main.getOptions().hasViews() && (def instanceof CellDef) &&
+                    !((CellDef)def).isLocal) {
+                if (!format(doc, def, outDir, true)) {
+                    result = false;
+                }
+            }
         }
         return result;
     }
 
-    private boolean format(Document doc, Definition def, String outDir) {
+    private boolean format(Document doc, Definition def, String outDir,
+            boolean view) {
         PrintStream out = null;
         try {
-            String targetName = PathUtil.join(outDir, def.name + extension);
+            String name = (view ? def.name + "View" : def.name);
+            String targetName = PathUtil.join(outDir, name + extension);
             File file = new File(targetName);
             out = new PrintStream(new FileOutputStream(file), true, "UTF-8");
             Context context = new Context();
             context.out = out;
             context.doc = doc;
             formatHeader(context);
-            def.format(context);
+            if (view) {
+                // Formatted after the cell itself, with its properties
+                // already preprocessed
+                context.formatCellView((CellDef)def);
+            }
+            else {
+                def.format(context);
+            }
         } catch (Exception e) {
             System.err.format("error: %s\n", e.getMessage());
             return false;
@@ -106,6 +121,7 @@ class JavaFormatter implements Formatter {
 
         private static final String tab = "    ";
         private int baseIndentation = 0;
+        private boolean lazy;
 
         @Override
         public void formatCell(CellDef def) {
@@ -113,6 +129,7 @@ class JavaFormatter implements Formatter {
             if (StringUtil.isNullOrEmpty(def.baseClass)) {
                 def.baseClass = (def.isEvent() ? "Event" : "Cell");
             }
+            lazy = Main.getOptions().isLazy() && !def.isLocal && def.hasProperties();
             indent(0); out.format("public class %s extends %s {\n",
                     def.name, def.baseClass);
             indent();
@@ -125,6 +142,120 @@ class JavaFormatter implements Formatter {
             indent(0); out.println('}');
         }
 
+        public void formatCellView(CellDef def) {
+            String baseView = def.base;
+            if (StringUtil.isNullOrEmpty(baseView)) {
+                baseView = (def.isEvent() ? "Event" : "Cell");
+            }
+            indent(0); out.format("public class %sView extends %sView {\n",
+                    def.name, baseView);
+            indent();
+            if (def.hasProperties()) {
+                indent(0); out.println("private int[] offsets;");
+                for (CellDef.Property prop : def.getProperties()) {
+                    if (!Types.isBuiltin(prop.typeSpec.type)) {
+                        indent(0); out.format("private %sView %s;",
+                                prop.nativeType, prop.nativeName);
+                        out.println();
+                    }
+                }
+                out.println();
+                indent(0); out.format("public %sView() {", def.name);
+                out.println();
+                indent(1); out.format("offsets = new int[%d];",
+                        def.getProperties().size());
+                out.println();
+                indent(0); out.println("}");
+            }
+            for (CellDef.Property prop : def.getProperties()) {
+                formatViewAccessors(def, prop);
+            }
+            formatWalk(def);
+            unindent();
+            indent(0); out.println('}');
+        }
+
+        private void formatViewAccessors(CellDef def, CellDef.Property prop) {
+            String type = prop.typeSpec.type;
+            if (Types.isCollection(type)) {
+                return;  // not supported by views
+            }
+            out.println();
+            indent(0); out.format("public boolean has%s() {", prop.name);
+            out.println();
+            indent(1); out.format("return (offsets[%d] >= 0);", prop.index);
+            out.println();
+            indent(0); out.println("}");
+
+            boolean nested = !Types.isBuiltin(type);
+            String returnType = (nested ? prop.nativeType + "View" : prop.nativeType);
+            String defaultValue = (nested ? "null" : prop.defaultValue);
+            indent(0); out.format("public %s get%s() {", returnType, prop.name);
+            out.println();
+            indent(1); out.format("if (offsets[%d] < 0) {", prop.index);
+            out.println();
+            indent(2); out.format("return %s;", defaultValue);
+            out.println();
+            indent(1); out.println("}");
+            indent(1); out.println("try {");
+            indent(2); out.format("deserializer.position(offsets[%d]);", prop.index);
+            out.println();
+            if (nested) {
+                indent(2); out.println("if (deserializer.readNonnegativeInt() == 0) {");
+                indent(3); out.println("return null;");
+                indent(2); out.println("}");
+                indent(2); out.format("if (%s == null) {", prop.nativeName);
+                out.println();
+                indent(3); out.format("%s = new %s();", prop.nativeName, returnType);
+                out.println();
+                indent(2); out.println("}");
+                indent(2); out.format("%s.wrap(buffer, deserializer.position());",
+                        prop.nativeName);
+                out.println();
+                indent(2); out.format("return %s;", prop.nativeName);
+                out.println();
+            }
+            else {
+                indent(2); out.format("return deserializer.%s;", formatReadMethod(prop));
+                out.println();
+            }
+            indent(1); out.println("}");
+            indent(1); out.println("catch (IOException e) {");
+            indent(2); out.format("Log.error(\"%sView.get%s : decoding error\");",
+                    def.name, prop.name);
+            out.println();
+            indent(2); out.format("return %s;", defaultValue);
+            out.println();
+            indent(1); out.println("}");
+            indent(0); out.println("}");
+        }
+
+        private void formatWalk(CellDef def) {
+            if (!def.hasProperties()) {
+                return;
+            }
+            out.println();
+            indent(0); out.println("@Override");
+            indent(0); out.println("protected void walk() throws IOException {");
+            indent(1); out.println("super.walk();");
+            indent(1); out.format("int offset = %s.tag.getOffset();", def.name);
+            out.println();
+            for (CellDef.Property prop : def.getProperties()) {
+                indent(1); out.format("if (touched(offset + %d)) {", prop.index);
+                out.println();
+                indent(2); out.format("offsets[%d] = deserializer.position();", prop.index);
+                out.println();
+                indent(2); out.format("deserializer.%s;", formatSkipMethod(prop));
+                out.println();
+                indent(1); out.println("}");
+                indent(1); out.println("else {");
+                indent(2); out.format("offsets[%d] = -1;", prop.index);
+                out.println();
+                indent(1); out.println("}");
+            }
+            indent(0); out.println("}");
+        }
+
         @Override
         public void formatConsts(ConstsDef def) {
             if (typeTraits.containsKey(def.type)) {
@@ -172,6 +303,10 @@ class JavaFormatter implements Formatter {
                 indent(0); out.format("private %s %s;", prop.nativeType, prop.nativeName);
                 out.println();
             }
+            if (lazy) {
+                out.println();
+                indent(0); out.println("private LazyProperties lazy;");
+            }
         }
 
         private void formatProperties(CellDef def) {
@@ -180,6 +315,9 @@ class JavaFormatter implements Formatter {
                 indent(0); out.format("public %s get%s() {",
                         prop.nativeType, prop.name);
                 out.println();
+                if (lazy) {
+                    formatLazyDecode(def, prop);
+                }
                 indent(1); out.format("return %s;", prop.nativeName);
                 out.println();
                 indent(0); out.println("}");
@@ -188,6 +326,12 @@ class JavaFormatter implements Formatter {
                 out.println();
                 indent(1); out.format("fingerprint.touch(tag.getOffset() + %d);", prop.index);
                 out.println();
+                if (lazy) {
+                    indent(1); out.println("if (lazy != null) {");
+                    indent(2); out.format("lazy.discard(%d);", prop.index);
+                    out.println();
+                    indent(1); out.println("}");
+                }
                 indent(1); out.format("%s = value;", prop.nativeName);
                 out.println();
                 indent(1); out.println("return this;");
@@ -195,6 +339,26 @@ class JavaFormatter implements Formatter {
             }
         }
 
+        private void formatLazyDecode(CellDef def, CellDef.Property prop) {
+            indent(1); out.println("if (lazy != null) {");
+            indent(2); out.println("synchronized (lazy) {");
+            indent(3); out.format("if (lazy.isPending(%d)) {", prop.index);
+            out.println();
+            indent(4); out.println("try {");
+            indent(5); out.format("%s = lazy.seek(%d).%s;", prop.nativeName,
+                    prop.index, formatReadMethod(prop));
+            out.println();
+            indent(4); out.println("}");
+            indent(4); out.println("catch (IOException e) {");
+            indent(5); out.format("Log.error(\"%s.get%s : decoding error\");",
+                    def.name, prop.name);
+            out.println();
+            indent(4); out.println("}");
+            indent(3); out.println("}");
+            indent(2); out.println("}");
+            indent(1); out.println("}");
+        }
+
         private void formatMethods(CellDef def) {
             formatStaticInitializer(def);
             formatConstructor(def);
@@ -230,7 +394,12 @@ class JavaFormatter implements Formatter {
             indent(1); out.print(String.format("tag = new Tag(%s, %s.class, %d",
                 baseTag, def.name, def.getProperties().size()));
             if (def.isEvent()) {
-                out.print(String.format(", %s", ((EventDef)def).id));
+                EventDef eventDef = (EventDef)def;
+                out.print(String.format(", %s", eventDef.id));
+                if (!StringUtil.isNullOrEmpty(eventDef.priority)) {
+                    out.print(String.format(", Event.Priority.%s",
+                        StringUtil.firstToUpper(eventDef.priority)));
+                }
             }
             out.println(");");
             indent(0); out.println("}");
@@ -277,8 +446,7 @@ class JavaFormatter implements Formatter {
                 indent(1); out.format("%s o = (%s)other;", def.name, def.name);
                 out.println();
                 for (CellDef.Property prop : def.getProperties()) {
-                    indent(1); out.format("if (%s != o.%s) {",
-                            prop.nativeName, prop.nativeName);
+                    indent(1); out.format("if (%s) {", formatInequality(prop, lazy));
                     out.println();
                     indent(2); out.println("return false;");
                     indent(1); out.println("}");
@@ -298,7 +466,7 @@ class JavaFormatter implements Formatter {
                 for (CellDef.Property prop : def.getProperties()) {
                     indent(1); out.format("if (touched.get(%d)) {", prop.index);
                     out.println();
-                    indent(2); out.format("hash.update(%s);", prop.nativeName);
+                    indent(2); out.format("hash.update(%s);", formatValue(prop, lazy));
                     out.println();
                     indent(1); out.println("}");
                 }
@@ -323,7 +491,7 @@ class JavaFormatter implements Formatter {
                 for (CellDef.Property prop : def.getProperties()) {
                     indent(1); out.format("if (touched.get(%d)) {", prop.index);
                     out.println();
-                    indent(2); out.format("if (%s != o.%s) {", prop.nativeName, prop.nativeName);
+                    indent(2); out.format("if (%s) {", formatInequality(prop, lazy));
                     out.println();
                     indent(3); out.println("return false;");
                     indent(2); out.println("}");
@@ -363,7 +531,7 @@ class JavaFormatter implements Formatter {
                 out.print(": \"");
                 out.println(");");
                 indent(1); out.print("sb.append(");
-                out.print(prop.nativeName);
+                out.print(formatValue(prop, lazy));
                 out.println(");");
             }
             indent(0); out.println("}");
@@ -374,7 +542,24 @@ class JavaFormatter implements Formatter {
             indent(0); out.println("@Override");
             indent(0); out.println("public void deserialize(Deserializer deserializer) throws IOException {");
             indent(1); out.println("super.deserialize(deserializer);");
-            if (def.hasProperties()) {
+            if (lazy) {
+                // Mark the property offsets, and decode them on demand.
+                indent(1); out.println("Capo touched = fingerprint.capo(tag.getOffset());");
+                indent(1); out.format("lazy = new LazyProperties(deserializer, %d);",
+                        def.getProperties().size());
+                out.println();
+                for (CellDef.Property prop : def.getProperties()) {
+                    indent(1); out.format("if (touched.get(%d)) {", prop.index);
+                    out.println();
+                    indent(2); out.format("lazy.mark(%d);", prop.index);
+                    out.println();
+                    indent(2); out.format("deserializer.%s;", formatSkipMethod(prop));
+                    out.println();
+                    indent(1); out.println("}");
+                }
+                indent(1); out.println("lazy.capture();");
+            }
+            else if (def.hasProperties()) {
                 indent(1); out.println("Capo touched = fingerprint.capo(tag.getOffset());");
                 for (CellDef.Property prop : def.getProperties()) {
                     indent(1); out.format("if (touched.get(%d)) {", prop.index);
@@ -399,7 +584,7 @@ class JavaFormatter implements Formatter {
                     indent(1); out.format("if (touched.get(%d)) {", prop.index);
                     out.println();
                     indent(2); out.format("length += Serializer.%s(%s);",
-                            formatLengthMethod(prop), prop.nativeName);
+                            formatLengthMethod(prop), formatValue(prop, lazy));
                     out.println();
                     indent(1); out.println("}");
                 }
@@ -419,7 +604,7 @@ class JavaFormatter implements Formatter {
                     indent(1); out.format("if (touched.get(%d)) {", prop.index);
                     out.println();
                     indent(2); out.format("serializer.%s(%s);",
-                            formatWriteMethod(prop), prop.nativeName);
+                            formatWriteMethod(prop), formatValue(prop, lazy));
                     out.println();
                     indent(1); out.println("}");
                 }
@@ -485,6 +670,33 @@ class JavaFormatter implements Formatter {
             return sb.toString();
         }
 
+        private static String formatInequality(CellDef.Property prop, boolean lazy) {
+            String nativeType = prop.nativeType;
+            String value = formatValue(prop, lazy);
+            if (nativeType.equals("byte[]")) {
+                return String.format("!Arrays.equals(%s, o.%s)", value, value);
+            }
+            if (Character.isUpperCase(nativeType.charAt(0))) {
+                // Reference types are compared by value, not by identity.
+                return String.format("!Objects.equals(%s, o.%s)", value, value);
+            }
+            return String.format("%s != o.%s", value, value);
+        }
+
+        // Lazy cells access their property values through the getters, which
+        // decode them on demand.
+        private static String formatValue(CellDef.Property prop, boolean lazy) {
+            return (lazy ? String.format("get%s()", prop.name) : prop.nativeName);
+        }
+
+        private static String formatSkipMethod(CellDef.Property prop) {
+            String type = prop.typeSpec.type;
+            if (!Types.isBuiltin(type)) {
+                return "skipCell()";
+            }
+            return String.format("skip%s()", ((TypeTrait)prop.trait).typeName);
+        }
+
         private static String formatReadMethod(CellDef.Property prop) {
             String type = prop.typeSpec.type;
             if (!Types.isBuiltin(type)) {
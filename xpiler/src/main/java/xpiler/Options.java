@@ -12,12 +12,16 @@ class Options {
     private String spec = DEFAULT_SPEC;
     private String outDir;
     private boolean forced;
+    private boolean lazy;
     private boolean recursive;
+    private boolean views;
 
     public String getSpec() { return spec; }
     public String getOutDir() { return outDir; }
     public boolean isForced() { return forced; }
+    public boolean isLazy() { return lazy; }
     public boolean isRecursive() { return recursive; }
+    public boolean hasViews() { return views; }
 
     public int parse(String[] args) {
         Getopt.Option[] longopts = new Getopt.Option[] {
@@ -25,10 +29,12 @@ class Options {
             new Getopt.Option("out-dir", Getopt.REQUIRED_ARGUMENT, 'o'),
             new Getopt.Option("recursive", Getopt.NO_ARGUMENT, 'r'),
             new Getopt.Option("force", Getopt.NO_ARGUMENT, 'f'),
+            new Getopt.Option("lazy", Getopt.NO_ARGUMENT, 'l'),
+            new Getopt.Option("views", Getopt.NO_ARGUMENT, 'v'),
             new Getopt.Option("help", Getopt.NO_ARGUMENT, 'h')
         };
 
-        Getopt getopt = new Getopt(args, "s:o:rfh", longopts);
+        Getopt getopt = new Getopt(args, "s:o:rflvh", longopts);
         while (getopt.next() != -1) {
             switch (getopt.getOpt()) {
             case 's':
@@ -47,6 +53,12 @@ class Options {
             case 'f':
                 forced = true;
                 break;
+            case 'l':
+                lazy = true;
+                break;
+            case 'v':
+                views = true;
+                break;
             case 'h':
                 printUsage();
                 System.exit(2);
@@ -64,8 +76,10 @@ class Options {
         out.println(" options:");
         out.println("  -f (--force)       : force all to be recompiled");
         out.println("  -h (--help)        : print this message and quit");
+        out.println("  -l (--lazy)        : decode cell properties on first access");
         out.println("  -o (--out-dir) dir : specifies the output root directory");
         out.println("  -r (--recursive)   : process subdirectories recursively");
+        out.println("  -v (--views)       : generate read-only flyweight views as well");
         out.println("  -s (--spec) spec   : specifies the target formatter");
 
         for (Map.Entry<String, Formatter> entry : Main.getFormatters().entrySet()) {
@@ -222,6 +222,7 @@ class XmlHandler implements Handler {
             def.name = attributes.getValue("name");
             def.base = attributes.getValue("base");
             def.id = attributes.getValue("id");
+            def.priority = attributes.getValue("priority");
             
             String local = attributes.getValue("local");
             if (local != null && local.endsWith("rue")) {